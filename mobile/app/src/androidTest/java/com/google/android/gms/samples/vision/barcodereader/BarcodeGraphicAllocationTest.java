@@ -0,0 +1,117 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Point;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.google.android.gms.samples.vision.barcodereader.ui.camera.GraphicOverlay;
+import com.google.android.gms.vision.CameraSource;
+import com.google.android.gms.vision.barcode.Barcode;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Counts the objects allocated while the overlay draws barcode graphics, which happens on the UI
+ * thread for every redraw.
+ */
+@RunWith(AndroidJUnit4.class)
+@SuppressWarnings("deprecation")
+public class BarcodeGraphicAllocationTest {
+    private static final int DRAWS = 200;
+
+    private GraphicOverlay<BarcodeGraphic> mOverlay;
+    private Canvas mCanvas;
+
+    @Before
+    public void createOverlay() {
+        mOverlay = new GraphicOverlay<>(InstrumentationRegistry.getTargetContext(), null);
+        mCanvas = new Canvas(Bitmap.createBitmap(1080, 1920, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void redrawingDoesNotAllocate() {
+        mOverlay.setCameraInfo(1024, 1600, CameraSource.CAMERA_FACING_BACK);
+        BarcodeGraphic graphic = new BarcodeGraphic(mOverlay);
+        graphic.updateItem(barcode("0012345678905", 412, 230, 880, 356));
+        mOverlay.add(graphic);
+
+        // The first draw lays out the graphic and sets up the transform.
+        mOverlay.draw(mCanvas);
+        assertEquals(0, countAllocations(new Runnable() {
+            @Override
+            public void run() {
+                mOverlay.draw(mCanvas);
+            }
+        }));
+    }
+
+    @Test
+    public void drawingNewBarcodesDoesNotAllocate() {
+        // Mirrored, as for the front-facing camera.
+        mOverlay.setCameraInfo(1024, 1600, CameraSource.CAMERA_FACING_FRONT);
+        final BarcodeGraphic graphic = new BarcodeGraphic(mOverlay);
+        final Barcode[] barcodes = {
+                barcode("0012345678905", 412, 230, 880, 356),
+                barcode("0012345678905", 420, 236, 886, 360),
+                barcode("4006381333931", 100, 900, 520, 1010),
+        };
+        graphic.updateItem(barcodes[0]);
+        mOverlay.add(graphic);
+        mOverlay.draw(mCanvas);
+
+        // Each draw shows a barcode the graphic hasn't laid out yet, as when every redraw follows
+        // a detection.
+        assertEquals(0, countAllocations(new Runnable() {
+            private int mNext = 1;
+
+            @Override
+            public void run() {
+                graphic.updateItem(barcodes[mNext]);
+                mNext = (mNext + 1) % barcodes.length;
+                mOverlay.draw(mCanvas);
+            }
+        }));
+    }
+
+    /**
+     * Returns the number of objects allocated on this thread while drawing repeatedly.
+     */
+    private static int countAllocations(Runnable draw) {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            for (int i = 0; i < DRAWS; ++i) {
+                draw.run();
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        return Debug.getThreadAllocCount();
+    }
+
+    private static Barcode barcode(String value, int left, int top, int right, int bottom) {
+        Barcode barcode = new Barcode();
+        barcode.format = Barcode.EAN_13;
+        barcode.rawValue = value;
+        barcode.displayValue = value;
+        barcode.cornerPoints = new Point[]{
+                new Point(left, top),
+                new Point(right, top),
+                new Point(right, bottom),
+                new Point(left, bottom),
+        };
+        return barcode;
+    }
+}
@@ -30,11 +30,18 @@ import android.content.pm.PackageManager;
 import android.hardware.Camera;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.design.widget.Snackbar;
 import android.support.v4.app.ActivityCompat;
+import android.support.v4.content.LocalBroadcastManager;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
@@ -43,24 +50,35 @@ import android.widget.Toast;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
+import com.google.android.gms.samples.vision.barcodereader.ui.camera.Camera2Source;
 import com.google.android.gms.samples.vision.barcodereader.ui.camera.CameraSource;
 import com.google.android.gms.samples.vision.barcodereader.ui.camera.CameraSourcePreview;
 
 import com.google.android.gms.samples.vision.barcodereader.ui.camera.GraphicOverlay;
+import com.google.android.gms.samples.vision.barcodereader.ui.camera.OverlaySurfaceView;
+import com.google.android.gms.samples.vision.barcodereader.ui.camera.ReplayFrameSource;
+import com.google.android.gms.samples.vision.barcodereader.ui.camera.ScanCameraSource;
+import com.google.android.gms.samples.vision.barcodereader.ui.camera.TierStats;
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
 import com.google.android.gms.vision.MultiProcessor;
 import com.google.android.gms.vision.barcode.Barcode;
 import com.google.android.gms.vision.barcode.BarcodeDetector;
 
+import org.qccoders.qcvoc.BuildConfig;
 import org.qccoders.qcvoc.R;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Locale;
 
 /**
  * Activity for the multi-tracker app.  This app detects barcodes and displays the value with the
  * rear facing camera. During detection overlay graphics are drawn to indicate the position,
  * size, and ID of each barcode.
  */
-public final class BarcodeCaptureActivity extends AppCompatActivity implements BarcodeGraphicTracker.BarcodeUpdateListener {
+public final class BarcodeCaptureActivity extends AppCompatActivity
+        implements BarcodeResultChannel.Listener {
     private static final String TAG = "Barcode-reader";
 
     // intent request code to handle updating play services if needed.
@@ -69,21 +87,83 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
     // permission request codes need to be < 256
     private static final int RC_HANDLE_CAMERA_PERM = 2;
 
+    // upper bound on parallel barcode detectors; each one holds its own native detector instance.
+    private static final int MAX_DETECTOR_WORKERS = 4;
+
+    // in continuous mode, a card is reported again only once it has been out of view for this long.
+    // At most this many recent cards are remembered.
+    private static final long RECENT_BARCODE_TTL_MILLIS = 5000;
+    private static final int RECENT_BARCODE_CAPACITY = 32;
+
     // constants used to pass extra data in the intent
     public static final String AutoFocus = "AutoFocus";
     public static final String UseFlash = "UseFlash";
+    public static final String UseCamera2 = "UseCamera2";
+    public static final String ScanRequestedAt = "ScanRequestedAt";
+    public static final String ScanProfileName = "ScanProfile";
+    public static final String Continuous = "Continuous";
+    // draws the overlay on a surface of its own, from a render thread, with boxes gliding between
+    // detections, rather than on the UI thread.
+    public static final String OverlayOnSurface = "OverlayOnSurface";
+    // probes the camera at every start instead of configuring it from the profile cached by an
+    // earlier start, to compare how long the camera takes to open either way.
+    public static final String ProbeCamera = "ProbeCamera";
+
+    // extras that replay frames recorded earlier in place of the camera's: the directory of the
+    // recording, the quarter turns that make its frames upright, and whether to replay them at the
+    // pace they were recorded at rather than as fast as possible.
+    public static final String ReplayFrames = "ReplayFrames";
+    public static final String ReplayRotation = "ReplayRotation";
+    public static final String ReplayRealTime = "ReplayRealTime";
+
+    // action of the local broadcast that carries each barcode in continuous mode, with the barcode
+    // in the BarcodeObject extra.
+    public static final String BarcodeScanned =
+            "com.google.android.gms.samples.vision.barcodereader.BARCODE_SCANNED";
     public static final String BarcodeObject = "Barcode";
 
-    private CameraSource mCameraSource;
+    private ScanCameraSource mCameraSource;
     private CameraSourcePreview mPreview;
     private GraphicOverlay<BarcodeGraphic> mGraphicOverlay;
+    private OverlaySurfaceView overlaySurface;
 
     // helper objects for detecting taps and pinches.
     private ScaleGestureDetector scaleGestureDetector;
     private GestureDetector gestureDetector;
 
-    private String currentBarcode;
-    private int frameCounter = 0;
+    // decides when a barcode has been read reliably enough to return it.  Along with the recent
+    // barcodes and the fields below it, only used on the detector thread.
+    private BarcodeConfirmer confirmer;
+
+    // in continuous mode the scanner stays open, and broadcasts each barcode as it is confirmed.
+    private boolean continuous;
+    private final RecentBarcodeCache recentBarcodes =
+            new RecentBarcodeCache(RECENT_BARCODE_CAPACITY, RECENT_BARCODE_TTL_MILLIS);
+
+    // when the scan was requested, in elapsed realtime milliseconds, whether anything has been
+    // decoded since, and whether the barcode that ends the scan has been confirmed.
+    private long scanRequestedAt;
+    private boolean firstDecodeLogged;
+    private boolean resultConfirmed;
+
+    // confirmed barcodes are posted to the UI thread to be delivered, where the last delivery
+    // time is kept.
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private long lastDeliveredAt;
+    private boolean usingSharedDetector;
+
+    // camera settings and scan window of this scan.
+    private ScanProfile scanProfile;
+
+    // creates the trackers that draw barcodes on the overlay, and reuses them once they're done.
+    private BarcodeTrackerFactory trackerFactory;
+
+    // batches the barcodes of each frame processed by the detector.
+    private BarcodeResultChannel resultChannel;
+
+    // garbage collections so far when the scan session started, or -1 where that isn't known.
+    private long gcCountAtStart = -1;
+    private long blockingGcCountAtStart = -1;
 
     /**
      * Initializes the UI and creates the detector pipeline.
@@ -91,14 +171,34 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
     @Override
     public void onCreate(Bundle icicle) {
         super.onCreate(icicle);
+        if (BuildConfig.DEBUG) {
+            // The camera is only ever worked on off the main thread; flag it if that slips.
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .detectCustomSlowCalls()
+                    .penaltyLog()
+                    .build());
+        }
         setContentView(R.layout.barcode_capture);
 
         mPreview = (CameraSourcePreview) findViewById(R.id.preview);
         mGraphicOverlay = (GraphicOverlay<BarcodeGraphic>) findViewById(R.id.graphicOverlay);
+        if (getIntent().getBooleanExtra(OverlayOnSurface, false)) {
+            overlaySurface = new OverlaySurfaceView(this);
+            mPreview.addView(overlaySurface);
+            mGraphicOverlay.setSurface(overlaySurface);
+        }
 
         // read parameters from the intent used to launch the activity.
         boolean autoFocus = getIntent().getBooleanExtra(AutoFocus, false);
         boolean useFlash = getIntent().getBooleanExtra(UseFlash, false);
+        scanRequestedAt = getIntent().getLongExtra(ScanRequestedAt,
+                SystemClock.elapsedRealtime());
+        scanProfile = ScanProfiles.get(this, getIntent().getStringExtra(ScanProfileName));
+        confirmer = new BarcodeConfirmer(scanProfile.getConfirmationThreshold());
+        continuous = getIntent().getBooleanExtra(Continuous, false);
+        lastDeliveredAt = scanRequestedAt;
 
         // Check for the camera permission before accessing the camera.  If the
         // permission is not granted yet, request permission.
@@ -169,16 +269,32 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
      */
     @SuppressLint("InlinedApi")
     private void createCameraSource(boolean autoFocus, boolean useFlash) {
-        Context context = getApplicationContext();
+        final Context context = getApplicationContext();
 
         // A barcode detector is created to track barcodes.  An associated multi-processor instance
         // is set to receive the barcode detection results, track the barcodes, and maintain
         // graphics for each barcode on screen.  The factory is used by the multi-processor to
         // create a separate tracker instance for each barcode.
-        BarcodeDetector barcodeDetector = new BarcodeDetector.Builder(context).build();
-        BarcodeTrackerFactory barcodeFactory = new BarcodeTrackerFactory(mGraphicOverlay, this);
-        barcodeDetector.setProcessor(
-                new MultiProcessor.Builder<>(barcodeFactory).build());
+        //
+        // The app keeps a warmed up detector around for this, which is handed back when the
+        // camera source is released.  Only if it is still in use by another scan, or hasn't
+        // finished warming up after a short wait, does this one get a detector of its own.
+        Detector<Barcode> barcodeDetector = SharedBarcodeDetector.acquire(context);
+        usingSharedDetector = (barcodeDetector != null);
+        if (barcodeDetector == null) {
+            barcodeDetector = new BarcodeDetector.Builder(context).build();
+        }
+        // The trackers report the barcodes of each frame to the result channel, which hands them
+        // over as one batch.
+        resultChannel = new BarcodeResultChannel(this);
+        trackerFactory = new BarcodeTrackerFactory(mGraphicOverlay, resultChannel);
+        MultiProcessor<Barcode> multiProcessor =
+                new MultiProcessor.Builder<>(trackerFactory).build();
+        resultChannel.setDelegate(multiProcessor);
+
+        // Detection only runs on the scan window, so barcode positions are mapped back to the
+        // full frame before they reach the multi-processor.
+        ScanWindowProcessor scanWindowProcessor = new ScanWindowProcessor(resultChannel);
 
         if (!barcodeDetector.isOperational()) {
             // Note: The first time that an app using the barcode or face API is installed on a
@@ -190,7 +306,9 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
             // isOperational() can be used to check if the required native libraries are currently
             // available.  The detectors will automatically become operational once the library
             // downloads complete on device.
-            Log.w(TAG, "Detector dependencies are not yet available.");
+            //
+            // Until then, the camera source detects with the bundled ZXing decoder instead.
+            Log.w(TAG, "Detector dependencies are not yet available, falling back to ZXing.");
 
             // Check for low storage.  If there is low storage, the native library will not be
             // downloaded, so detection will not become operational.
@@ -203,13 +321,74 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
             }
         }
 
+        // The camera2 source has none of the frame pipeline stages below, so it is only used when
+        // the web app asks for it with camera=camera2 in the scan request.  The original
+        // camera API remains the fallback wherever camera2 is only a legacy layer, and while the
+        // detector isn't operational, since only the original camera source falls back to ZXing.
+        String replayFrames = getIntent().getStringExtra(ReplayFrames);
+        if (getIntent().getBooleanExtra(UseCamera2, false)
+                && (replayFrames == null)
+                && barcodeDetector.isOperational()
+                && Camera2Source.isSupported(context, CameraSource.CAMERA_FACING_BACK)) {
+            barcodeDetector.setProcessor(scanWindowProcessor);
+            mCameraSource = new Camera2Source.Builder(context, barcodeDetector)
+                    .setFacing(CameraSource.CAMERA_FACING_BACK)
+                    .setRequestedPreviewSize(scanProfile.getPreviewWidth(),
+                            scanProfile.getPreviewHeight())
+                    .setRequestedFps(15.0f)
+                    .setAutoFocus(autoFocus)
+                    .setTorch(useFlash)
+                    .build();
+            scanWindowProcessor.setCameraSource(mCameraSource);
+            return;
+        }
+
         // Creates and starts the camera.  Note that this uses a higher resolution in comparison
         // to other detection examples to enable the barcode detector to detect small barcodes
         // at long distances.
-        CameraSource.Builder builder = new CameraSource.Builder(getApplicationContext(), barcodeDetector)
-                .setFacing(CameraSource.CAMERA_FACING_BACK)
-                .setRequestedPreviewSize(1600, 1024)
-                .setRequestedFps(15.0f);
+        CameraSource.Builder builder =
+                new CameraSource.Builder(getApplicationContext(), barcodeDetector)
+                        .setFacing(CameraSource.CAMERA_FACING_BACK)
+                        .setRequestedPreviewSize(scanProfile.getPreviewWidth(),
+                                scanProfile.getPreviewHeight())
+                        .setRequestedFps(15.0f)
+                        .setFpsGovernor(true)
+                        .setCameraProfileCache(!getIntent().getBooleanExtra(ProbeCamera, false))
+                        .setScanWindow(scanProfile.getScanWindowWidth(),
+                                scanProfile.getScanWindowHeight())
+                        .setFallbackDetector(new ZxingBarcodeDetector(Barcode.ALL_FORMATS))
+                        .setResolutionCascade(true)
+                        .setSharpnessGate(true);
+
+        // Recorded frames can be run through the same pipeline instead of the camera's, which lets
+        // its throughput and confirmation latency be measured on an emulator.
+        if (replayFrames != null) {
+            try {
+                builder = builder.setReplay(ReplayFrameSource.open(new File(replayFrames),
+                        getIntent().getIntExtra(ReplayRotation, Frame.ROTATION_90),
+                        getIntent().getBooleanExtra(ReplayRealTime, true)));
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to replay recorded frames, using the camera instead.", e);
+            }
+        }
+
+        // On devices with cores to spare, run detection on several frames in parallel so that
+        // fewer frames are dropped at this resolution.  Results still reach the multi-processor
+        // in frame order.
+        int workers = Math.min(MAX_DETECTOR_WORKERS,
+                Runtime.getRuntime().availableProcessors() / 2);
+        if (workers > 1) {
+            builder = builder.setDetectorWorkers(workers,
+                    new CameraSource.DetectorFactory<Barcode>() {
+                        @Override
+                        public Detector<Barcode> create() {
+                            return new BarcodeDetector.Builder(context).build();
+                        }
+                    },
+                    scanWindowProcessor);
+        } else {
+            builder = builder.setProcessor(scanWindowProcessor);
+        }
 
         // make sure that auto focus is an available option
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
@@ -220,6 +399,7 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
         mCameraSource = builder
                 .setFlashMode(useFlash ? Camera.Parameters.FLASH_MODE_TORCH : null)
                 .build();
+        scanWindowProcessor.setCameraSource(mCameraSource);
     }
 
     /**
@@ -228,6 +408,8 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
     @Override
     protected void onResume() {
         super.onResume();
+        gcCountAtStart = getGcCount("art.gc.gc-count");
+        blockingGcCountAtStart = getGcCount("art.gc.blocking-gc-count");
         startCameraSource();
     }
 
@@ -240,6 +422,53 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
         if (mPreview != null) {
             mPreview.stop();
         }
+
+        if (mCameraSource instanceof CameraSource) {
+            CameraSource cameraSource = (CameraSource) mCameraSource;
+            for (TierStats stats : cameraSource.getResolutionTierStats()) {
+                Log.i(TAG, stats.toString());
+            }
+            Log.i(TAG, "Skipped as blurred: " + cameraSource.getSharpnessSkipRatio() * 100 + "%");
+            Log.i(TAG, "Frame pipeline, " + scanProfile + " profile: "
+                    + cameraSource.getFrameMetrics());
+        }
+        if (trackerFactory != null) {
+            Log.i(TAG, trackerFactory.toString());
+        }
+        if (resultChannel != null) {
+            int frames = resultChannel.getFrameCount();
+            int redraws = mGraphicOverlay.getRedrawCount();
+            Log.i(TAG, String.format(Locale.US,
+                    "Overlay on %s: %d redraws for %d detector frames (%.2f per frame), "
+                            + "mean draw time %.2f ms",
+                    (overlaySurface != null) ? "surface" : "view", redraws, frames,
+                    (frames > 0) ? (float) redraws / frames : 0,
+                    mGraphicOverlay.getMeanDrawTimeMillis()));
+        }
+        if (overlaySurface != null) {
+            Log.i(TAG, overlaySurface.toString());
+        }
+        if (gcCountAtStart >= 0) {
+            Log.i(TAG, "Garbage collections during scan session: "
+                    + (getGcCount("art.gc.gc-count") - gcCountAtStart) + ", blocking: "
+                    + (getGcCount("art.gc.blocking-gc-count") - blockingGcCountAtStart));
+        }
+    }
+
+    /**
+     * Returns a garbage collection count kept by the runtime, or -1 if it isn't available, as
+     * before Marshmallow.
+     */
+    private static long getGcCount(String stat) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return -1;
+        }
+        String value = Debug.getRuntimeStat(stat);
+        try {
+            return (value != null) ? Long.parseLong(value) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     /**
@@ -320,14 +549,10 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
             dlg.show();
         }
 
+        // The camera is opened on the camera source's own thread; failures are logged by the
+        // preview, and the camera source is released with it.
         if (mCameraSource != null) {
-            try {
-                mPreview.start(mCameraSource, mGraphicOverlay);
-            } catch (IOException e) {
-                Log.e(TAG, "Unable to start camera source.", e);
-                mCameraSource.release();
-                mCameraSource = null;
-            }
+            mPreview.start(mCameraSource, mGraphicOverlay);
         }
     }
 
@@ -350,6 +575,10 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
         float bestDistance = Float.MAX_VALUE;
         for (BarcodeGraphic graphic : mGraphicOverlay.getGraphics()) {
             Barcode barcode = graphic.getBarcode();
+            if (barcode == null) {
+                // The graphic was recycled for another barcode since it was listed.
+                continue;
+            }
             if (barcode.getBoundingBox().contains((int) x, (int) y)) {
                 // Exact hit, no need to keep looking.
                 best = barcode;
@@ -365,15 +594,36 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
         }
 
         if (best != null) {
-            Intent data = new Intent();
-            data.putExtra(BarcodeObject, best);
-            setResult(Activity.RESULT_OK, data);
-            finish();
+            deliver(best);
             return true;
         }
         return false;
     }
 
+    /**
+     * Returns a barcode to the caller, on the UI thread.  Normally the activity finishes with the
+     * barcode as its result.  In continuous mode, the barcode is broadcast instead, and the scanner
+     * stays open for the next one, so that scanning a line of cards doesn't reopen the camera for
+     * every card.
+     */
+    private void deliver(Barcode barcode) {
+        Intent data = new Intent();
+        data.putExtra(BarcodeObject, barcode);
+        if (!continuous) {
+            setResult(Activity.RESULT_OK, data);
+            finish();
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        Log.i(TAG, "Scan cycle time: " + (now - lastDeliveredAt) + " ms");
+        lastDeliveredAt = now;
+
+        data.setAction(BarcodeScanned);
+        LocalBroadcastManager.getInstance(this).sendBroadcast(data);
+        Snackbar.make(mGraphicOverlay, barcode.displayValue, Snackbar.LENGTH_SHORT).show();
+    }
+
     private class CaptureGestureListener extends GestureDetector.SimpleOnGestureListener {
         @Override
         public boolean onSingleTapConfirmed(MotionEvent e) {
@@ -435,19 +685,49 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
         }
     }
 
+    /**
+     * Confirms the barcodes read from a frame, on the detector thread, so that the UI thread only
+     * hears of the barcodes that are to be delivered.
+     */
     @Override
-    public void onBarcodeDetected(Barcode barcode) {
-        if (barcode.displayValue.equals(currentBarcode)) {
-            frameCounter++;
-            if (frameCounter == 5) {
-                Intent data = new Intent();
-                data.putExtra(BarcodeObject, barcode);
-                setResult(Activity.RESULT_OK, data);
-                finish();
+    public void onBarcodesDetected(SparseArray<Barcode> barcodes) {
+        if (!firstDecodeLogged) {
+            firstDecodeLogged = true;
+            Log.i(TAG, "Time to first decode: " + (SystemClock.elapsedRealtime() - scanRequestedAt)
+                    + " ms, " + (usingSharedDetector ? "shared" : "new") + " detector, "
+                    + scanProfile + " profile");
+        }
+        if (resultConfirmed) {
+            // The activity is finishing with the barcode confirmed before.
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        Barcode confirmed = null;
+        for (int i = 0; i < barcodes.size(); ++i) {
+            Barcode barcode = confirmer.offer(barcodes.keyAt(i), barcodes.valueAt(i), now);
+            if (barcode != null && confirmed == null) {
+                confirmed = barcode;
             }
-        } else {
-            currentBarcode = barcode.displayValue;
-            frameCounter = 0;
         }
+        if (confirmed == null) {
+            return;
+        }
+        if (continuous && !recentBarcodes.offer(confirmed.rawValue, now)) {
+            // This card was reported already, and is still in view or has only just left it.
+            return;
+        }
+        resultConfirmed = !continuous;
+
+        Log.i(TAG, "Confirmed, " + scanProfile + " profile: " + confirmer);
+        final Barcode result = confirmed;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!isFinishing()) {
+                    deliver(result);
+                }
+            }
+        });
     }
 }
@@ -0,0 +1,306 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader;
+
+import android.graphics.Rect;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.vision.barcode.Barcode;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Decides when a barcode has been read reliably enough to be returned, from the reads of all
+ * frames so far.
+ * <p/>
+ * Every read of a value counts as a piece of evidence for it.  How much a read counts depends on
+ * how well its format protects against misreads, and on how little the barcode moved since the
+ * previous read of the same value: a barcode that jumps around is more likely to be a different
+ * barcode, or a bad read.  A read whose check digit is wrong doesn't count at all.  Reads of other
+ * values weaken the evidence for a value.  The value is confirmed once its confidence reaches the
+ * threshold, so a clean, steady read of a well protected format confirms after a few frames, and a
+ * shaky read of a weak one takes longer.
+ * <p/>
+ * Time to confirm and the share of misreads are tracked together, since lowering the threshold
+ * trades one against the other.  A misread is a read, by the tracker that confirmed a value, of
+ * another value; reads of other barcodes in view don't count against it.
+ * <p/>
+ * Not thread safe; reads must be offered from one thread at a time.
+ */
+final class BarcodeConfirmer {
+    /**
+     * Default confidence a value needs to be confirmed.
+     */
+    static final float DEFAULT_THRESHOLD = 0.9f;
+
+    /**
+     * How much a single read counts for formats whose decoders reject nearly all misreads: those
+     * with a mandatory check character, a check digit, or error correction.
+     */
+    private static final float STRONG_READ = 0.6f;
+
+    /**
+     * How much a single read counts for formats without any mandatory check, where a misread bar
+     * simply becomes a different value.
+     */
+    private static final float WEAK_READ = 0.35f;
+
+    /**
+     * Share of a read's weight that depends on the barcode's bounding box overlapping its
+     * previous one.  A read at the same place counts fully, a read elsewhere counts for the rest.
+     */
+    private static final float STABILITY_WEIGHT = 0.4f;
+
+    /**
+     * A read of another value takes away this share of each candidate's confidence.
+     */
+    private static final float CONFLICT_DECAY = 0.5f;
+
+    /**
+     * Candidates that haven't been read for this long are forgotten.
+     */
+    private static final long CANDIDATE_TIMEOUT_MILLIS = 1000;
+
+    private final float mThreshold;
+    private final Map<String, Candidate> mCandidates = new HashMap<>();
+
+    // Since the last confirmation.
+    private long mFirstReadMillis = -1;
+    private final Map<Integer, Integer> mTrackerReads = new HashMap<>();
+
+    // Since this confirmer was created.
+    private int mConfirmedCount;
+    private long mTotalTimeToConfirmMillis;
+    private int mTotalReads;
+    private int mTotalMisreads;
+
+    /**
+     * @param threshold the confidence a value needs to be confirmed, in (0, 1)
+     */
+    BarcodeConfirmer(float threshold) {
+        if (!(threshold > 0 && threshold < 1)) {
+            throw new IllegalArgumentException("Invalid confirmation threshold: " + threshold);
+        }
+        mThreshold = threshold;
+    }
+
+    /**
+     * Adds a read of a barcode.
+     *
+     * @param trackerId  the id of the tracker that read the barcode
+     * @param barcode    the barcode read from a frame
+     * @param nowMillis  the time of the read
+     * @return the barcode if this read confirmed it, otherwise null
+     */
+    @Nullable
+    Barcode offer(int trackerId, Barcode barcode, long nowMillis) {
+        if (mFirstReadMillis < 0) {
+            mFirstReadMillis = nowMillis;
+        }
+        increment(mTrackerReads, trackerId);
+
+        String key = barcode.format + ":" + barcode.rawValue;
+        Iterator<Map.Entry<String, Candidate>> it = mCandidates.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Candidate> entry = it.next();
+            Candidate other = entry.getValue();
+            if (nowMillis - other.mLastReadMillis > CANDIDATE_TIMEOUT_MILLIS) {
+                it.remove();
+            } else if (!entry.getKey().equals(key)) {
+                other.mDoubt = 1 - (1 - other.mDoubt) * (1 - CONFLICT_DECAY);
+            }
+        }
+
+        if (!hasValidCheckDigit(barcode)) {
+            return null;
+        }
+
+        Candidate candidate = mCandidates.get(key);
+        if (candidate == null) {
+            candidate = new Candidate();
+            mCandidates.put(key, candidate);
+        }
+        Rect box = barcode.getBoundingBox();
+        float weight = isStrongFormat(barcode.format) ? STRONG_READ : WEAK_READ;
+        if (candidate.mBox != null) {
+            weight *= 1 - STABILITY_WEIGHT + STABILITY_WEIGHT * overlap(candidate.mBox, box);
+        }
+        candidate.mDoubt *= 1 - weight;
+        increment(candidate.mTrackerReads, trackerId);
+        candidate.mLastReadMillis = nowMillis;
+        candidate.mBox = (box != null) ? new Rect(box) : null;
+
+        if (1 - candidate.mDoubt < mThreshold) {
+            return null;
+        }
+
+        // Every read of anything but the confirmed value, by the tracker that confirmed it, was a
+        // misread.
+        int trackerReads = mTrackerReads.get(trackerId);
+        mConfirmedCount++;
+        mTotalTimeToConfirmMillis += nowMillis - mFirstReadMillis;
+        mTotalReads += trackerReads;
+        mTotalMisreads += trackerReads - candidate.mTrackerReads.get(trackerId);
+        reset();
+        return barcode;
+    }
+
+    /**
+     * Forgets all reads since the last confirmation, such as when the scan is interrupted.
+     */
+    void reset() {
+        mCandidates.clear();
+        mFirstReadMillis = -1;
+        mTrackerReads.clear();
+    }
+
+    int getConfirmedCount() {
+        return mConfirmedCount;
+    }
+
+    /**
+     * Returns the mean time from the first read to the confirmation.
+     */
+    float getMeanTimeToConfirmMillis() {
+        return (mConfirmedCount > 0) ? (float) mTotalTimeToConfirmMillis / mConfirmedCount : 0;
+    }
+
+    /**
+     * Returns the share of reads by the confirming tracker, up to each confirmation, that were of
+     * another value than the one confirmed.
+     */
+    float getMisreadRate() {
+        return (mTotalReads > 0) ? (float) mTotalMisreads / mTotalReads : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "%d confirmed, mean time to confirm %.0f ms, misread rate %.1f%%",
+                mConfirmedCount, getMeanTimeToConfirmMillis(), getMisreadRate() * 100);
+    }
+
+    private static void increment(Map<Integer, Integer> counts, int trackerId) {
+        Integer count = counts.get(trackerId);
+        counts.put(trackerId, (count != null) ? count + 1 : 1);
+    }
+
+    private static boolean isStrongFormat(int format) {
+        switch (format) {
+            case Barcode.CODE_39:
+            case Barcode.CODABAR:
+            case Barcode.ITF:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Returns whether the check digit of an EAN or UPC barcode is right.  Other formats have no
+     * check digit that can be verified here, and always pass.
+     */
+    private static boolean hasValidCheckDigit(Barcode barcode) {
+        String value = barcode.rawValue;
+        switch (barcode.format) {
+            case Barcode.EAN_13:
+            case Barcode.EAN_8:
+            case Barcode.UPC_A:
+                return isValidMod10(value);
+            case Barcode.UPC_E:
+                String upcA = expandUpcE(value);
+                return (upcA != null) && isValidMod10(upcA);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Checks the GS1 mod 10 check digit at the end of a string of digits: from the right, the
+     * digits are weighted 3, 1, 3, 1, ... starting with the one next to the check digit.
+     */
+    private static boolean isValidMod10(@Nullable String value) {
+        if ((value == null) || (value.length() < 2)) {
+            return false;
+        }
+        int sum = 0;
+        int last = value.length() - 1;
+        for (int i = 0; i < last; ++i) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            sum += ((last - i) % 2 == 1) ? 3 * digit : digit;
+        }
+        int check = value.charAt(last) - '0';
+        return (check >= 0) && (check <= 9) && ((sum + check) % 10 == 0);
+    }
+
+    /**
+     * Expands an 8 digit UPC-E value (number system, six digits, check digit) to the UPC-A value it
+     * stands for, whose check digit it shares.
+     */
+    @Nullable
+    private static String expandUpcE(@Nullable String value) {
+        if ((value == null) || (value.length() != 8)) {
+            return null;
+        }
+        char numberSystem = value.charAt(0);
+        String d = value.substring(1, 7);
+        char check = value.charAt(7);
+        String body;
+        switch (d.charAt(5)) {
+            case '0':
+            case '1':
+            case '2':
+                body = d.substring(0, 2) + d.charAt(5) + "0000" + d.substring(2, 5);
+                break;
+            case '3':
+                body = d.substring(0, 3) + "00000" + d.substring(3, 5);
+                break;
+            case '4':
+                body = d.substring(0, 4) + "00000" + d.charAt(4);
+                break;
+            default:
+                body = d.substring(0, 5) + "0000" + d.charAt(5);
+                break;
+        }
+        return numberSystem + body + check;
+    }
+
+    /**
+     * Returns the intersection over union of two boxes, from 0 for disjoint boxes to 1 for equal
+     * ones.  Missing boxes count as not overlapping.
+     */
+    private static float overlap(@Nullable Rect a, @Nullable Rect b) {
+        if ((a == null) || (b == null)) {
+            return 0;
+        }
+        int width = Math.min(a.right, b.right) - Math.max(a.left, b.left);
+        int height = Math.min(a.bottom, b.bottom) - Math.max(a.top, b.top);
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        float intersection = (float) width * height;
+        float union = (float) a.width() * a.height() + (float) b.width() * b.height()
+                - intersection;
+        return (union > 0) ? intersection / union : 0;
+    }
+
+    /**
+     * The evidence for one value.  The doubt is the product of one minus the weight of each read,
+     * so the confidence, one minus the doubt, grows with every read and never exceeds one.
+     */
+    private static final class Candidate {
+        float mDoubt = 1;
+        final Map<Integer, Integer> mTrackerReads = new HashMap<>();
+        long mLastReadMillis;
+        Rect mBox;
+    }
+}
@@ -20,45 +20,98 @@ package com.google.android.gms.samples.vision.barcodereader;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Point;
 import android.graphics.RectF;
 
 import com.google.android.gms.samples.vision.barcodereader.ui.camera.GraphicOverlay;
 import com.google.android.gms.vision.barcode.Barcode;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Graphic instance for rendering barcode position, size, and ID within an associated graphic
  * overlay view.
+ * <p/>
+ * The overlay is redrawn more often than the detector delivers a new barcode, so the box and the
+ * label width are worked out once per barcode, on the first draw that shows it, and later draws
+ * only map the box to the view.  Nothing is allocated while drawing.  The area drawn, outline and
+ * label included, is reported to the overlay so that a change only redraws that area.
+ * <p/>
+ * When the overlay is animated, the box glides from where it was shown to each new barcode's box
+ * over about the time between detections, instead of jumping at camera rate.
  */
 public class BarcodeGraphic extends GraphicOverlay.Graphic {
 
     private int mId;
 
+    private static final float STROKE_WIDTH = 4.0f;
+
+    // Bounds on how long the box takes to move to a new barcode, when animated.
+    private static final long MIN_MOVE_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+    private static final long MAX_MOVE_NANOS = TimeUnit.MILLISECONDS.toNanos(150);
+    private static final float TEXT_SIZE = 36.0f;
+
     private static final int COLOR_CHOICES[] = {
             Color.BLUE,
             Color.CYAN,
             Color.GREEN
     };
 
+    // Paints are shared by all graphics of the same color, rather than created for each one.
+    private static final Paint[] RECT_PAINTS = new Paint[COLOR_CHOICES.length];
+    private static final Paint[] TEXT_PAINTS = new Paint[COLOR_CHOICES.length];
+
+    static {
+        for (int i = 0; i < COLOR_CHOICES.length; ++i) {
+            RECT_PAINTS[i] = new Paint();
+            RECT_PAINTS[i].setColor(COLOR_CHOICES[i]);
+            RECT_PAINTS[i].setStyle(Paint.Style.STROKE);
+            RECT_PAINTS[i].setStrokeWidth(STROKE_WIDTH);
+
+            TEXT_PAINTS[i] = new Paint();
+            TEXT_PAINTS[i].setColor(COLOR_CHOICES[i]);
+            TEXT_PAINTS[i].setTextSize(TEXT_SIZE);
+        }
+    }
+
     private static int mCurrentColorIndex = 0;
 
     private Paint mRectPaint;
     private Paint mTextPaint;
     private volatile Barcode mBarcode;
 
+    // The barcode last drawn, with its box in preview and in view coordinates, the width of its
+    // label, and the area drawn.  Only used on the thread that draws the overlay.
+    private Barcode mLaidOutBarcode;
+    private final RectF mPreviewBox = new RectF();
+    // The box the current move started from, in preview coordinates, and when it started.
+    private final RectF mFromBox = new RectF();
+    private long mMoveStartNanos;
+    private long mMoveDurationNanos;
+    private final RectF mViewBox = new RectF();
+    private float mLabelWidth;
+    private final RectF mDrawnBounds = new RectF();
+
     BarcodeGraphic(GraphicOverlay overlay) {
         super(overlay);
+        selectNextColor();
+    }
 
-        mCurrentColorIndex = (mCurrentColorIndex + 1) % COLOR_CHOICES.length;
-        final int selectedColor = COLOR_CHOICES[mCurrentColorIndex];
-
-        mRectPaint = new Paint();
-        mRectPaint.setColor(selectedColor);
-        mRectPaint.setStyle(Paint.Style.STROKE);
-        mRectPaint.setStrokeWidth(4.0f);
+    /**
+     * Readies the graphic to show another barcode, once the overlay no longer draws it.
+     */
+    void recycle() {
+        mId = 0;
+        mBarcode = null;
+        selectNextColor();
+        // The overlay no longer draws the graphic, so no other thread reads this.
+        mLaidOutBarcode = null;
+    }
 
-        mTextPaint = new Paint();
-        mTextPaint.setColor(selectedColor);
-        mTextPaint.setTextSize(36.0f);
+    private void selectNextColor() {
+        mCurrentColorIndex = (mCurrentColorIndex + 1) % COLOR_CHOICES.length;
+        mRectPaint = RECT_PAINTS[mCurrentColorIndex];
+        mTextPaint = TEXT_PAINTS[mCurrentColorIndex];
     }
 
     public int getId() {
@@ -74,8 +127,8 @@ public class BarcodeGraphic extends GraphicOverlay.Graphic {
     }
 
     /**
-     * Updates the barcode instance from the detection of the most recent frame.  Invalidates the
-     * relevant portions of the overlay to trigger a redraw.
+     * Updates the barcode instance from the detection of the most recent frame.  Schedules the
+     * relevant portions of the overlay to be redrawn on the next display frame.
      */
     void updateItem(Barcode barcode) {
         mBarcode = barcode;
@@ -89,18 +142,120 @@ public class BarcodeGraphic extends GraphicOverlay.Graphic {
     public void draw(Canvas canvas) {
         Barcode barcode = mBarcode;
         if (barcode == null) {
+            mDrawnBounds.setEmpty();
+            setDrawnBounds(mDrawnBounds);
             return;
         }
 
+        if (barcode != mLaidOutBarcode) {
+            layOut(barcode);
+        }
+
         // Draws the bounding box around the barcode.
-        RectF rect = new RectF(barcode.getBoundingBox());
-        rect.left = translateX(rect.left);
-        rect.top = translateY(rect.top);
-        rect.right = translateX(rect.right);
-        rect.bottom = translateY(rect.bottom);
-        canvas.drawRect(rect, mRectPaint);
+        boolean moving = getShownBox(mViewBox);
+        mapRect(mViewBox);
+        canvas.drawRect(mViewBox, mRectPaint);
 
         // Draws a label at the bottom of the barcode indicate the barcode value that was detected.
-        canvas.drawText(barcode.rawValue, rect.left, rect.bottom, mTextPaint);
+        canvas.drawText(barcode.rawValue, mViewBox.left, mViewBox.bottom, mTextPaint);
+
+        mDrawnBounds.set(mViewBox);
+        addStrokeAndLabel(mDrawnBounds, mLabelWidth);
+        setDrawnBounds(mDrawnBounds);
+
+        if (moving) {
+            requestNextFrame();
+        }
+    }
+
+    /**
+     * Writes the area the graphic will cover when drawn with the current barcode.
+     */
+    @Override
+    public boolean getBounds(RectF bounds) {
+        Barcode barcode = mBarcode;
+        if (barcode == null) {
+            bounds.setEmpty();
+            return true;
+        }
+
+        float labelWidth;
+        if (barcode == mLaidOutBarcode) {
+            bounds.set(mPreviewBox);
+            labelWidth = mLabelWidth;
+        } else {
+            setBox(barcode, bounds);
+            labelWidth = mTextPaint.measureText(barcode.rawValue);
+        }
+        mapRect(bounds);
+        addStrokeAndLabel(bounds, labelWidth);
+        return true;
+    }
+
+    /**
+     * Works out the box of a barcode and the width of its label, once per barcode drawn.
+     */
+    private void layOut(Barcode barcode) {
+        long now = getFrameTimeNanos();
+        if (isAnimated() && (mLaidOutBarcode != null)) {
+            // Moves on from wherever the box is shown now, taking as long as the detector took to
+            // deliver this barcode after the last one.
+            getShownBox(mFromBox);
+            mMoveDurationNanos = Math.min(Math.max(now - mMoveStartNanos, MIN_MOVE_NANOS),
+                    MAX_MOVE_NANOS);
+        } else {
+            mMoveDurationNanos = 0;
+        }
+        mMoveStartNanos = now;
+
+        mLaidOutBarcode = barcode;
+        setBox(barcode, mPreviewBox);
+        mLabelWidth = mTextPaint.measureText(barcode.rawValue);
+    }
+
+    /**
+     * Sets a box, in preview coordinates, to where the barcode is shown in the frame being drawn.
+     *
+     * @return whether the box is still moving towards the barcode's box
+     */
+    private boolean getShownBox(RectF box) {
+        float t = (mMoveDurationNanos > 0)
+                ? Math.min(1, (float) (getFrameTimeNanos() - mMoveStartNanos) / mMoveDurationNanos)
+                : 1;
+        box.set(mFromBox.left + (mPreviewBox.left - mFromBox.left) * t,
+                mFromBox.top + (mPreviewBox.top - mFromBox.top) * t,
+                mFromBox.right + (mPreviewBox.right - mFromBox.right) * t,
+                mFromBox.bottom + (mPreviewBox.bottom - mFromBox.bottom) * t);
+        return t < 1;
+    }
+
+    /**
+     * Grows a box in view coordinates to the area drawn for it: the box's outline, and the label
+     * whose baseline is at the bottom of the box.
+     */
+    private void addStrokeAndLabel(RectF box, float labelWidth) {
+        float left = box.left;
+        float bottom = box.bottom;
+        // Half the outline is drawn outside the box, and a pixel allows for rounding.
+        float outset = STROKE_WIDTH / 2 + 1;
+        box.inset(-outset, -outset);
+        box.union(left, bottom + mTextPaint.ascent(), left + labelWidth,
+                bottom + mTextPaint.descent());
+    }
+
+    /**
+     * Sets a box, in preview coordinates, to the bounds of a barcode's corner points, as {@link
+     * Barcode#getBoundingBox()} does but without creating a rectangle.
+     */
+    private static void setBox(Barcode barcode, RectF box) {
+        Point[] cornerPoints = barcode.cornerPoints;
+        if ((cornerPoints == null) || (cornerPoints.length == 0)) {
+            box.setEmpty();
+            return;
+        }
+        box.set(cornerPoints[0].x, cornerPoints[0].y, cornerPoints[0].x, cornerPoints[0].y);
+        for (int i = 1; i < cornerPoints.length; ++i) {
+            box.union(cornerPoints[i].x, cornerPoints[i].y);
+        }
     }
 }
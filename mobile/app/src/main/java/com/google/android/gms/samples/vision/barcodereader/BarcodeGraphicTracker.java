@@ -17,9 +17,6 @@
 
 package com.google.android.gms.samples.vision.barcodereader;
 
-import android.content.Context;
-import android.support.annotation.UiThread;
-
 import com.google.android.gms.samples.vision.barcodereader.ui.camera.GraphicOverlay;
 import com.google.android.gms.vision.Detector;
 import com.google.android.gms.vision.Tracker;
@@ -34,46 +31,38 @@ import com.google.android.gms.vision.barcode.Barcode;
 public class BarcodeGraphicTracker extends Tracker<Barcode> {
     private GraphicOverlay<BarcodeGraphic> mOverlay;
     private BarcodeGraphic mGraphic;
+    private int mId;
 
-    private BarcodeUpdateListener mBarcodeUpdateListener;
-
-    /**
-     * Consume the item instance detected from an Activity or Fragment level by implementing the
-     * BarcodeUpdateListener interface method onBarcodeDetected.
-     */
-    public interface BarcodeUpdateListener {
-        @UiThread
-        void onBarcodeDetected(Barcode barcode);
-    }
+    private BarcodeResultChannel mResultChannel;
+    private BarcodeTrackerFactory mFactory;
 
     BarcodeGraphicTracker(GraphicOverlay<BarcodeGraphic> mOverlay, BarcodeGraphic mGraphic,
-                          Context context) {
+                          BarcodeResultChannel resultChannel, BarcodeTrackerFactory factory) {
         this.mOverlay = mOverlay;
         this.mGraphic = mGraphic;
-        if (context instanceof BarcodeUpdateListener) {
-            this.mBarcodeUpdateListener = (BarcodeUpdateListener) context;
-        } else {
-            throw new RuntimeException("Hosting activity must implement BarcodeUpdateListener");
-        }
+        this.mResultChannel = resultChannel;
+        this.mFactory = factory;
     }
 
     /**
-     * Start tracking the detected item instance within the item overlay.
+     * Start tracking the detected item instance within the item overlay.  The multi-processor
+     * follows this with {@link #onUpdate} for the same frame, which reports the read.
      */
     @Override
     public void onNewItem(int id, Barcode item) {
+        mId = id;
         mGraphic.setId(id);
-        mBarcodeUpdateListener.onBarcodeDetected(item);
     }
 
     /**
-     * Update the position/characteristics of the item within the overlay.
+     * Update the position/characteristics of the item within the overlay, and report it as read
+     * in the current frame.
      */
     @Override
     public void onUpdate(Detector.Detections<Barcode> detectionResults, Barcode item) {
         mOverlay.add(mGraphic);
         mGraphic.updateItem(item);
-        mBarcodeUpdateListener.onBarcodeDetected(item);
+        mResultChannel.add(mId, item);
     }
 
     /**
@@ -88,10 +77,27 @@ public class BarcodeGraphicTracker extends Tracker<Barcode> {
 
     /**
      * Called when the item is assumed to be gone for good. Remove the graphic annotation from
-     * the overlay.
+     * the overlay, and hand the tracker back to the factory to be reused.
      */
     @Override
     public void onDone() {
         mOverlay.remove(mGraphic);
+        mFactory.release(this);
+    }
+
+    /**
+     * Returns whether the overlay may still draw the tracker's graphic, in which case the graphic
+     * must not change for another barcode yet.
+     */
+    boolean isDrawn() {
+        return mOverlay.isDrawn(mGraphic);
+    }
+
+    /**
+     * Readies the tracker and its graphic to track another barcode, once {@link #isDrawn()} is
+     * false.
+     */
+    void recycle() {
+        mGraphic.recycle();
     }
 }
@@ -0,0 +1,92 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader;
+
+import android.support.annotation.WorkerThread;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.barcode.Barcode;
+
+/**
+ * Processor which gathers the barcodes that the trackers report for one frame into a single
+ * batch, and hands the batch to a listener once the frame has been processed.  A frame with
+ * several barcodes then makes one call rather than one per barcode, and the listener sees every
+ * read of the frame at once.  Each tracker contributes at most one read per frame, however often
+ * it reports.
+ * <p/>
+ * Frames are processed one at a time, each on whichever detector thread delivered it, so there is
+ * only ever one producer.  The listener runs on that thread too, and is expected to keep anything
+ * that must run on the UI thread to the decisions that come out of the batch.
+ */
+final class BarcodeResultChannel implements Detector.Processor<Barcode> {
+    /**
+     * Receives the barcodes read from each frame.
+     */
+    interface Listener {
+        /**
+         * Called once per frame in which any barcode was read, with the reads keyed by the id of
+         * the tracker that reported them.  The array is reused for the next frame, so it must not
+         * be kept beyond this call.
+         */
+        @WorkerThread
+        void onBarcodesDetected(SparseArray<Barcode> barcodes);
+    }
+
+    private final Listener mListener;
+    private Detector.Processor<Barcode> mDelegate;
+
+    // Only touched by the thread processing the current frame.
+    private final SparseArray<Barcode> mBatch = new SparseArray<>();
+
+    // Written by the thread processing the current frame, read by any.
+    private volatile int mFrameCount;
+
+    BarcodeResultChannel(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Sets the processor whose trackers {@link #add(int, Barcode)} the barcodes they see.  The trackers
+     * are created with this channel, so their processor is only set after the channel is built.
+     * It must be set before the first frame is processed.
+     */
+    void setDelegate(Detector.Processor<Barcode> delegate) {
+        mDelegate = delegate;
+    }
+
+    @Override
+    public void receiveDetections(Detector.Detections<Barcode> detections) {
+        mFrameCount++;
+        mBatch.clear();
+        mDelegate.receiveDetections(detections);
+        if (mBatch.size() > 0) {
+            mListener.onBarcodesDetected(mBatch);
+            mBatch.clear();
+        }
+    }
+
+    /**
+     * Adds a barcode to the batch of the frame being processed, replacing any read the same
+     * tracker reported for this frame before.  Only called by trackers, from within
+     * {@link #receiveDetections(Detector.Detections)}.
+     */
+    void add(int trackerId, Barcode barcode) {
+        mBatch.put(trackerId, barcode);
+    }
+
+    /**
+     * Returns the number of frames processed so far.
+     */
+    int getFrameCount() {
+        return mFrameCount;
+    }
+
+    @Override
+    public void release() {
+        mDelegate.release();
+    }
+}
@@ -17,7 +17,8 @@
 
 package com.google.android.gms.samples.vision.barcodereader;
 
-import android.content.Context;
+import java.util.ArrayDeque;
+import java.util.Iterator;
 
 import com.google.android.gms.samples.vision.barcodereader.ui.camera.GraphicOverlay;
 import com.google.android.gms.vision.MultiProcessor;
@@ -27,21 +28,67 @@ import com.google.android.gms.vision.barcode.Barcode;
 /**
  * Factory for creating a tracker and associated graphic to be associated with a new barcode.  The
  * multi-processor uses this factory to create barcode trackers as needed -- one for each barcode.
+ * <p/>
+ * Trackers whose barcode has gone are handed back to the factory, which keeps a few of them, along
+ * with their graphics, to reuse for the next barcodes that show up.  Cards moving in and out of
+ * view, or reflections flickering, then don't create new objects for every appearance.  A tracker
+ * is only reused once the overlay has stopped drawing its graphic, which may be a while after the
+ * graphic was removed when the overlay draws from a render thread.
  */
 class BarcodeTrackerFactory implements MultiProcessor.Factory<Barcode> {
+    private static final int POOL_CAPACITY = 8;
+
     private GraphicOverlay<BarcodeGraphic> mGraphicOverlay;
-    private Context mContext;
+    private BarcodeResultChannel mResultChannel;
+
+    // The multi-processor may be called on a different detector thread for each frame.
+    private final ArrayDeque<BarcodeGraphicTracker> mPool = new ArrayDeque<>(POOL_CAPACITY);
+    private int mCreatedCount;
+    private int mReusedCount;
 
     public BarcodeTrackerFactory(GraphicOverlay<BarcodeGraphic> mGraphicOverlay,
-                                 Context mContext) {
+                                 BarcodeResultChannel mResultChannel) {
         this.mGraphicOverlay = mGraphicOverlay;
-        this.mContext = mContext;
+        this.mResultChannel = mResultChannel;
     }
 
     @Override
     public Tracker<Barcode> create(Barcode barcode) {
+        synchronized (mPool) {
+            Iterator<BarcodeGraphicTracker> pooled = mPool.iterator();
+            while (pooled.hasNext()) {
+                BarcodeGraphicTracker tracker = pooled.next();
+                if (!tracker.isDrawn()) {
+                    pooled.remove();
+                    mReusedCount++;
+                    tracker.recycle();
+                    return tracker;
+                }
+            }
+            mCreatedCount++;
+        }
+
         BarcodeGraphic graphic = new BarcodeGraphic(mGraphicOverlay);
-        return new BarcodeGraphicTracker(mGraphicOverlay, graphic, mContext);
+        return new BarcodeGraphicTracker(mGraphicOverlay, graphic, mResultChannel, this);
+    }
+
+    /**
+     * Takes back a tracker that the multi-processor is done with, to be reused unless the pool is
+     * full already.
+     */
+    void release(BarcodeGraphicTracker tracker) {
+        synchronized (mPool) {
+            if (mPool.size() < POOL_CAPACITY) {
+                mPool.add(tracker);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mPool) {
+            return "Barcode trackers created: " + mCreatedCount + ", reused: " + mReusedCount;
+        }
     }
 
 }
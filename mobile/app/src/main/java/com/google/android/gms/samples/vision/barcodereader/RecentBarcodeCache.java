@@ -0,0 +1,86 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the barcodes reported recently, so that a card that stays in view isn't reported
+ * again on every confirmation.
+ * <p/>
+ * A value counts as recent for a fixed time after it was last seen, and seeing it again while it
+ * is recent starts that time over.  At most a fixed number of values is remembered; when a new one
+ * doesn't fit, the one seen longest ago is forgotten.  So the memory the cache uses doesn't grow
+ * with the length of a scanning session.
+ * <p/>
+ * Not thread safe; values must be offered from one thread at a time.
+ */
+final class RecentBarcodeCache {
+    private final long mTtlMillis;
+    private final LinkedHashMap<String, Entry> mEntries;
+
+    /**
+     * @param capacity  the maximum number of values remembered
+     * @param ttlMillis how long a value counts as recent after it was last seen
+     */
+    RecentBarcodeCache(final int capacity, long ttlMillis) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("Invalid time to live: " + ttlMillis);
+        }
+
+        mTtlMillis = ttlMillis;
+
+        // In access order, so that the eldest entry is the one seen longest ago.
+        mEntries = new LinkedHashMap<String, Entry>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Notes that a value was seen.
+     *
+     * @return true if the value is new, and should be reported; false if it was seen within the
+     * time to live, and should be dropped
+     */
+    boolean offer(String value, long nowMillis) {
+        Entry entry = mEntries.get(value);
+        if (entry == null) {
+            mEntries.put(value, new Entry(nowMillis));
+            return true;
+        }
+
+        boolean expired = nowMillis - entry.mLastSeenMillis >= mTtlMillis;
+        entry.mLastSeenMillis = nowMillis;
+        return expired;
+    }
+
+    /**
+     * Returns the number of values remembered, including ones that have expired but haven't been
+     * seen again or evicted yet.
+     */
+    int size() {
+        return mEntries.size();
+    }
+
+    void clear() {
+        mEntries.clear();
+    }
+
+    private static final class Entry {
+        long mLastSeenMillis;
+
+        Entry(long lastSeenMillis) {
+            mLastSeenMillis = lastSeenMillis;
+        }
+    }
+}
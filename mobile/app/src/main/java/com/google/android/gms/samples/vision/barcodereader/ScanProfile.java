@@ -0,0 +1,71 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader;
+
+/**
+ * Detector and camera settings for one kind of scan.  The smaller the window the detector looks
+ * in, the less time it spends on every frame.
+ * <p/>
+ * Profiles are defined in the scan_profiles resource and looked up by name with
+ * {@link ScanProfiles#get}.
+ */
+public final class ScanProfile {
+    private final String mName;
+    private final int mPreviewWidth;
+    private final int mPreviewHeight;
+    private final float mScanWindowWidth;
+    private final float mScanWindowHeight;
+    private final float mConfirmationThreshold;
+
+    ScanProfile(String name, int previewWidth, int previewHeight,
+                float scanWindowWidth, float scanWindowHeight, float confirmationThreshold) {
+        mName = name;
+        mPreviewWidth = previewWidth;
+        mPreviewHeight = previewHeight;
+        mScanWindowWidth = scanWindowWidth;
+        mScanWindowHeight = scanWindowHeight;
+        mConfirmationThreshold = confirmationThreshold;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getPreviewWidth() {
+        return mPreviewWidth;
+    }
+
+    public int getPreviewHeight() {
+        return mPreviewHeight;
+    }
+
+    /**
+     * Returns the width of the scan window, as a fraction of the width of the preview.
+     */
+    public float getScanWindowWidth() {
+        return mScanWindowWidth;
+    }
+
+    /**
+     * Returns the height of the scan window, as a fraction of the height of the preview.
+     */
+    public float getScanWindowHeight() {
+        return mScanWindowHeight;
+    }
+
+    /**
+     * Returns the confidence a barcode needs before it is returned, in (0, 1).  Higher thresholds
+     * take longer to confirm, and return fewer misreads.
+     */
+    public float getConfirmationThreshold() {
+        return mConfirmationThreshold;
+    }
+
+    @Override
+    public String toString() {
+        return mName;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.qccoders.qcvoc.R;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The scan profiles defined in the scan_profiles resource.  The resource is parsed the first time
+ * a profile is needed, and the profiles are kept for the life of the process.
+ */
+public final class ScanProfiles {
+    private static final String TAG = "ScanProfiles";
+
+    /**
+     * Name of the profile used when a scan doesn't name one, or names one that doesn't exist.
+     */
+    public static final String DEFAULT = "default";
+
+    // Used if the resource can't be read, so that scanning still works.
+    private static final ScanProfile FALLBACK =
+            new ScanProfile(DEFAULT, 1600, 1024, 0.8f, 0.5f,
+                    BarcodeConfirmer.DEFAULT_THRESHOLD);
+
+    private static final Object sLock = new Object();
+    private static Map<String, ScanProfile> sProfiles;
+
+    private ScanProfiles() {
+    }
+
+    /**
+     * Returns the profile of the given name, or the default profile if there is no such profile.
+     */
+    public static ScanProfile get(Context context, @Nullable String name) {
+        Map<String, ScanProfile> profiles = load(context);
+        ScanProfile profile = profiles.get((name != null) ? name : DEFAULT);
+        if (profile == null) {
+            Log.w(TAG, "Unknown scan profile " + name + ", using the default profile.");
+            profile = profiles.get(DEFAULT);
+        }
+        return (profile != null) ? profile : FALLBACK;
+    }
+
+    private static Map<String, ScanProfile> load(Context context) {
+        synchronized (sLock) {
+            if (sProfiles == null) {
+                try {
+                    sProfiles = Collections.unmodifiableMap(parse(readResource(context)));
+                } catch (IOException | JSONException e) {
+                    Log.e(TAG, "Unable to read the scan profiles.", e);
+                    sProfiles = Collections.singletonMap(DEFAULT, FALLBACK);
+                }
+            }
+            return sProfiles;
+        }
+    }
+
+    private static String readResource(Context context) throws IOException {
+        InputStream in = context.getResources().openRawResource(R.raw.scan_profiles);
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            StringBuilder json = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                json.append(line).append('\n');
+            }
+            return json.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parses the profiles.  A profile with a missing or out of range setting is left out with a
+     * warning, so that scans asking for it get the default profile instead.
+     */
+    private static Map<String, ScanProfile> parse(String json) throws JSONException {
+        JSONObject root = new JSONObject(json);
+        Map<String, ScanProfile> profiles = new HashMap<>();
+        Iterator<String> names = root.keys();
+        while (names.hasNext()) {
+            String name = names.next();
+            try {
+                profiles.put(name, parseProfile(name, root.getJSONObject(name)));
+            } catch (JSONException e) {
+                Log.w(TAG, "Ignoring invalid scan profile " + name + ": " + e.getMessage());
+            }
+        }
+        return profiles;
+    }
+
+    private static ScanProfile parseProfile(String name, JSONObject profile)
+            throws JSONException {
+        int previewWidth = profile.getInt("previewWidth");
+        int previewHeight = profile.getInt("previewHeight");
+        if (previewWidth <= 0 || previewHeight <= 0) {
+            throw new JSONException("invalid preview size " + previewWidth + "x" + previewHeight);
+        }
+
+        float scanWindowWidth = (float) profile.getDouble("scanWindowWidth");
+        float scanWindowHeight = (float) profile.getDouble("scanWindowHeight");
+        if (!(scanWindowWidth > 0 && scanWindowWidth <= 1)
+                || !(scanWindowHeight > 0 && scanWindowHeight <= 1)) {
+            throw new JSONException("invalid scan window " + scanWindowWidth + "x"
+                    + scanWindowHeight);
+        }
+
+        float confirmationThreshold = (float) profile.optDouble("confirmationThreshold",
+                BarcodeConfirmer.DEFAULT_THRESHOLD);
+        if (!(confirmationThreshold > 0 && confirmationThreshold < 1)) {
+            throw new JSONException("invalid confirmation threshold " + confirmationThreshold);
+        }
+
+        return new ScanProfile(name, previewWidth, previewHeight,
+                scanWindowWidth, scanWindowHeight, confirmationThreshold);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.util.SparseArray;
+
+import com.google.android.gms.common.images.Size;
+import com.google.android.gms.samples.vision.barcodereader.ui.camera.ScanCameraSource;
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.barcode.Barcode;
+
+/**
+ * Processor which maps barcodes detected within the camera source's scan window, possibly at a
+ * reduced resolution, back to the coordinates of the full preview frame, and then passes them on.
+ * The detector only sees the cropped and downsampled frame, so without this the positions drawn
+ * on the overlay would be off by the window's offset and the downsampling factor.
+ */
+class ScanWindowProcessor implements Detector.Processor<Barcode> {
+    private final Detector.Processor<Barcode> mDelegate;
+    private volatile ScanCameraSource mCameraSource;
+
+    ScanWindowProcessor(Detector.Processor<Barcode> delegate) {
+        mDelegate = delegate;
+    }
+
+    /**
+     * Sets the camera source whose scan window the detections are relative to.
+     */
+    void setCameraSource(ScanCameraSource cameraSource) {
+        mCameraSource = cameraSource;
+    }
+
+    @Override
+    public void receiveDetections(Detector.Detections<Barcode> detections) {
+        ScanCameraSource cameraSource = mCameraSource;
+        if (cameraSource != null) {
+            mapToPreview(cameraSource, detections);
+        }
+        mDelegate.receiveDetections(detections);
+    }
+
+    @Override
+    public void release() {
+        mDelegate.release();
+    }
+
+    private static void mapToPreview(ScanCameraSource cameraSource,
+                                     Detector.Detections<Barcode> detections) {
+        Frame.Metadata metadata = detections.getFrameMetadata();
+        boolean sideways = (metadata.getRotation() % 2) == 1;
+        int detectedWidth = sideways ? metadata.getHeight() : metadata.getWidth();
+        int detectedHeight = sideways ? metadata.getWidth() : metadata.getHeight();
+
+        // Detection ran on the scan window, or on the whole preview if there is none, in upright
+        // coordinates.
+        int left = 0;
+        int top = 0;
+        int windowWidth;
+        int windowHeight;
+        Rect window = cameraSource.getScanWindow();
+        if (window != null) {
+            left = window.left;
+            top = window.top;
+            windowWidth = window.width();
+            windowHeight = window.height();
+        } else {
+            Size previewSize = cameraSource.getPreviewSize();
+            if (previewSize == null) {
+                return;
+            }
+            windowWidth = sideways ? previewSize.getHeight() : previewSize.getWidth();
+            windowHeight = sideways ? previewSize.getWidth() : previewSize.getHeight();
+        }
+
+        // The frame may have been downsampled.  Each dimension of the downsampled frame is
+        // rounded down to an even size on its own, so the two axes have scales of their own.
+        float scaleX = (detectedWidth > 0) ? (float) windowWidth / detectedWidth : 1;
+        float scaleY = (detectedHeight > 0) ? (float) windowHeight / detectedHeight : 1;
+        if ((left == 0) && (top == 0) && (scaleX == 1) && (scaleY == 1)) {
+            return;
+        }
+
+        SparseArray<Barcode> barcodes = detections.getDetectedItems();
+        for (int i = 0; i < barcodes.size(); ++i) {
+            Point[] cornerPoints = barcodes.valueAt(i).cornerPoints;
+            if (cornerPoints == null) {
+                continue;
+            }
+            for (Point point : cornerPoints) {
+                point.set(left + Math.round(point.x * scaleX), top + Math.round(point.y * scaleY));
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader;
+
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.barcode.Barcode;
+import com.google.android.gms.vision.barcode.BarcodeDetector;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * One barcode detector for the whole process, so that its native library is loaded and
+ * initialized once instead of on every scan.
+ * <p/>
+ * {@link #warmUp(Context)} creates the detector on a background thread when the app starts, and
+ * runs it once on a synthetic frame so that the first real frame doesn't pay for initialization.
+ * A scan then {@link #acquire(Context) acquires} the detector for as long as it runs.  What it gets
+ * is a lease on the detector: releasing the lease, as the camera source does when it is released,
+ * releases the lease's processor and hands the detector back instead of destroying it.
+ */
+public final class SharedBarcodeDetector {
+    private static final String TAG = "SharedBarcodeDetector";
+
+    // Size of the synthetic frame used for warming up the detector.
+    private static final int WARM_UP_WIDTH = 640;
+    private static final int WARM_UP_HEIGHT = 480;
+
+    // Longest that acquire waits for the warm-up of the detector, on the main thread, before it
+    // gives up and lets the scan create a detector of its own.
+    private static final long MAX_ACQUIRE_WAIT_MILLIS = 150;
+
+    // This lock guards all of the member variables below.
+    private static final Object sLock = new Object();
+    private static BarcodeDetector sDetector;
+    private static boolean sWarmingUp;
+    private static boolean sLeased;
+
+    private SharedBarcodeDetector() {
+    }
+
+    /**
+     * Creates and warms up the shared detector on a background thread, unless that has already
+     * happened.  Returns immediately.
+     */
+    public static void warmUp(Context context) {
+        final Context appContext = context.getApplicationContext();
+        synchronized (sLock) {
+            if ((sDetector != null) || sWarmingUp) {
+                return;
+            }
+            sWarmingUp = true;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                long startMillis = SystemClock.elapsedRealtime();
+
+                BarcodeDetector detector = null;
+                try {
+                    detector = new BarcodeDetector.Builder(appContext).build();
+                    if (detector.isOperational()) {
+                        detector.detect(createWarmUpFrame());
+                        Log.i(TAG, "Detector warmed up in "
+                                + (SystemClock.elapsedRealtime() - startMillis) + " ms");
+                    } else {
+                        // The native library is still being downloaded; the detector becomes
+                        // operational on its own once it is there.
+                        Log.w(TAG, "Detector dependencies are not yet available.");
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Unable to warm up the detector.", e);
+                } finally {
+                    synchronized (sLock) {
+                        sDetector = detector;
+                        sWarmingUp = false;
+                        sLock.notifyAll();
+                    }
+                }
+            }
+        }, "BarcodeDetectorWarmUp");
+        thread.start();
+    }
+
+    /**
+     * Leases the shared detector, creating it if it wasn't warmed up.  If the detector is still
+     * warming up, this waits for it, but only for a few frames' time, since it is called on the
+     * main thread while the scan starts.  The lease must be released once the scan is over; a
+     * camera source releases it along with itself.
+     *
+     * @return the lease, or null if the shared detector is leased by another scan already or is
+     * still warming up, in which case the caller should create a detector of its own
+     */
+    @Nullable
+    public static Detector<Barcode> acquire(Context context) {
+        synchronized (sLock) {
+            long deadline = SystemClock.elapsedRealtime() + MAX_ACQUIRE_WAIT_MILLIS;
+            while (sWarmingUp) {
+                long remaining = deadline - SystemClock.elapsedRealtime();
+                if (remaining <= 0) {
+                    Log.w(TAG, "Detector is still warming up.");
+                    return null;
+                }
+                try {
+                    sLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+
+            if (sLeased) {
+                return null;
+            }
+            if (sDetector == null) {
+                sDetector = new BarcodeDetector.Builder(context.getApplicationContext()).build();
+            }
+            sLeased = true;
+            return new Lease(sDetector);
+        }
+    }
+
+    /**
+     * Returns a uniformly gray NV21 frame.  There is nothing to find in it, but detecting on it
+     * loads and initializes everything that detection on a real frame needs.
+     */
+    private static Frame createWarmUpFrame() {
+        byte[] data = new byte[WARM_UP_WIDTH * WARM_UP_HEIGHT * 3 / 2];
+        Arrays.fill(data, (byte) 128);
+        return new Frame.Builder()
+                .setImageData(ByteBuffer.wrap(data), WARM_UP_WIDTH, WARM_UP_HEIGHT,
+                        ImageFormat.NV21)
+                .build();
+    }
+
+    /**
+     * A scan's use of the shared detector.  It has a processor of its own, and detects by
+     * delegating to the shared detector.
+     */
+    private static final class Lease extends Detector<Barcode> {
+        private final BarcodeDetector mDetector;
+        private boolean mReleased;
+
+        Lease(BarcodeDetector detector) {
+            mDetector = detector;
+        }
+
+        @Override
+        public SparseArray<Barcode> detect(Frame frame) {
+            return mDetector.detect(frame);
+        }
+
+        @Override
+        public boolean isOperational() {
+            return mDetector.isOperational();
+        }
+
+        @Override
+        public boolean setFocus(int id) {
+            return mDetector.setFocus(id);
+        }
+
+        /**
+         * Releases the processor of this lease, and hands the detector back for the next scan.
+         */
+        @Override
+        public void release() {
+            super.release();
+            synchronized (sLock) {
+                if (!mReleased) {
+                    mReleased = true;
+                    sLeased = false;
+                }
+            }
+        }
+    }
+}
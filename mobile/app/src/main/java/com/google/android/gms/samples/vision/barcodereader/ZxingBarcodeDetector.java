@@ -0,0 +1,162 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader;
+
+import android.graphics.Point;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.barcode.Barcode;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Barcode detector backed by the ZXing decoder bundled with the app, for use while the native
+ * library of the play services detector isn't available, such as on a freshly set up phone that
+ * hasn't downloaded it yet.
+ * <p/>
+ * It finds at most one barcode per frame, and only fills in the format, value and corner points of
+ * the barcodes it returns.  Detection is serialized, so one instance may be shared by several
+ * detector threads.
+ */
+public final class ZxingBarcodeDetector extends Detector<Barcode> {
+    // Play services formats, and the ZXing formats they correspond to.
+    private static final int[] FORMATS = {
+            Barcode.CODE_128, Barcode.CODE_39, Barcode.CODE_93, Barcode.CODABAR,
+            Barcode.DATA_MATRIX, Barcode.EAN_13, Barcode.EAN_8, Barcode.ITF, Barcode.QR_CODE,
+            Barcode.UPC_A, Barcode.UPC_E, Barcode.PDF417, Barcode.AZTEC
+    };
+    private static final BarcodeFormat[] ZXING_FORMATS = {
+            BarcodeFormat.CODE_128, BarcodeFormat.CODE_39, BarcodeFormat.CODE_93,
+            BarcodeFormat.CODABAR, BarcodeFormat.DATA_MATRIX, BarcodeFormat.EAN_13,
+            BarcodeFormat.EAN_8, BarcodeFormat.ITF, BarcodeFormat.QR_CODE, BarcodeFormat.UPC_A,
+            BarcodeFormat.UPC_E, BarcodeFormat.PDF_417, BarcodeFormat.AZTEC
+    };
+
+    private final ZxingDecoder mDecoder;
+
+    // Copy of the luminance of a frame whose image data isn't backed by an array.
+    private byte[] mLuma;
+
+    /**
+     * @param formats the barcode formats to detect, as in
+     *                {@link com.google.android.gms.vision.barcode.BarcodeDetector.Builder#setBarcodeFormats(int)}
+     */
+    public ZxingBarcodeDetector(int formats) {
+        mDecoder = new ZxingDecoder(toZxingFormats(formats));
+    }
+
+    @Override
+    public synchronized SparseArray<Barcode> detect(Frame frame) {
+        Frame.Metadata metadata = frame.getMetadata();
+        int width = metadata.getWidth();
+        int height = metadata.getHeight();
+
+        ByteBuffer data = frame.getGrayscaleImageData();
+        byte[] luma;
+        if (data.hasArray() && (data.arrayOffset() == 0)) {
+            luma = data.array();
+        } else {
+            if ((mLuma == null) || (mLuma.length < width * height)) {
+                mLuma = new byte[width * height];
+            }
+            luma = mLuma;
+            data.duplicate().get(luma, 0, width * height);
+        }
+
+        SparseArray<Barcode> barcodes = new SparseArray<>();
+        Result result = mDecoder.decode(luma, width, height, metadata.getRotation());
+        if (result != null) {
+            barcodes.append(0, toBarcode(result));
+        }
+        return barcodes;
+    }
+
+    @Override
+    public boolean isOperational() {
+        return true;
+    }
+
+    /**
+     * Returns the ZXing formats for a combination of play services format constants, or all of
+     * them for {@link Barcode#ALL_FORMATS}.
+     */
+    static List<BarcodeFormat> toZxingFormats(int formats) {
+        List<BarcodeFormat> zxingFormats = new ArrayList<>();
+        for (int i = 0; i < FORMATS.length; ++i) {
+            if ((formats == Barcode.ALL_FORMATS) || ((formats & FORMATS[i]) != 0)) {
+                zxingFormats.add(ZXING_FORMATS[i]);
+            }
+        }
+        return zxingFormats;
+    }
+
+    /**
+     * Returns the play services format constant for a ZXing format, or 0 if there is none.
+     */
+    static int toBarcodeFormat(BarcodeFormat format) {
+        for (int i = 0; i < ZXING_FORMATS.length; ++i) {
+            if (ZXING_FORMATS[i] == format) {
+                return FORMATS[i];
+            }
+        }
+        return 0;
+    }
+
+    private static Barcode toBarcode(Result result) {
+        Barcode barcode = new Barcode();
+        barcode.format = toBarcodeFormat(result.getBarcodeFormat());
+        barcode.rawValue = result.getText();
+        barcode.displayValue = result.getText();
+        barcode.valueFormat = Barcode.TEXT;
+        barcode.cornerPoints = toCornerPoints(result.getResultPoints());
+        return barcode;
+    }
+
+    /**
+     * Returns the corners of the box around the points ZXing found, clockwise from the top left
+     * like those of the play services detector.  For one dimensional barcodes, ZXing only finds
+     * the two ends of the row it decoded, so the box is given a quarter of its width as height.
+     */
+    private static Point[] toCornerPoints(ResultPoint[] points) {
+        float left = Float.MAX_VALUE;
+        float top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE;
+        float bottom = -Float.MAX_VALUE;
+        for (ResultPoint point : points) {
+            if (point == null) {
+                continue;
+            }
+            left = Math.min(left, point.getX());
+            top = Math.min(top, point.getY());
+            right = Math.max(right, point.getX());
+            bottom = Math.max(bottom, point.getY());
+        }
+        if (left > right) {
+            return new Point[0];
+        }
+
+        float minHeight = (right - left) / 4;
+        if (bottom - top < minHeight) {
+            float centerY = (top + bottom) / 2;
+            top = centerY - minHeight / 2;
+            bottom = centerY + minHeight / 2;
+        }
+
+        return new Point[]{
+                new Point((int) left, (int) top),
+                new Point((int) right, (int) top),
+                new Point((int) right, (int) bottom),
+                new Point((int) left, (int) bottom)
+        };
+    }
+}
@@ -0,0 +1,125 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader;
+
+import android.support.annotation.Nullable;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Decodes barcodes from the luminance of camera frames with ZXing, which is plain Java.  Unlike
+ * the play services detector, it works without any native library, and it runs on the JVM, so it
+ * can be tried on recorded frames without a device.
+ * <p/>
+ * Barcode formats are given as ZXing formats; {@link ZxingBarcodeDetector} maps the format
+ * constants of the play services detector to them, so that the same scan profile works for both.
+ * <p/>
+ * Not thread safe; each thread needs its own decoder.
+ */
+final class ZxingDecoder {
+    private final MultiFormatReader mReader = new MultiFormatReader();
+
+    // Upright copy of a rotated frame's luminance, reused from frame to frame.
+    private byte[] mUpright;
+
+    /**
+     * @param formats the barcode formats to decode
+     */
+    ZxingDecoder(Collection<BarcodeFormat> formats) {
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+        mReader.setHints(hints);
+    }
+
+    /**
+     * Decodes a barcode in an image.  Only the luminance is used, so an NV21 frame can be passed
+     * as is.  The image is first turned upright, since one dimensional barcodes are only found when
+     * their bars cross the rows of the image.
+     *
+     * @param luma     the luminance of the image, one byte per pixel, row by row
+     * @param width    the width of the image
+     * @param height   the height of the image
+     * @param rotation the number of quarter turns clockwise that make the image upright, as in
+     *                 the rotation of a play services frame
+     * @return the barcode found, with its points in upright image coordinates, or null
+     */
+    @Nullable
+    Result decode(byte[] luma, int width, int height, int rotation) {
+        rotation &= 3;
+        if (rotation != 0) {
+            luma = rotate(luma, width, height, rotation);
+            if ((rotation & 1) != 0) {
+                int swap = width;
+                width = height;
+                height = swap;
+            }
+        }
+
+        PlanarYUVLuminanceSource source =
+                new PlanarYUVLuminanceSource(luma, width, height, 0, 0, width, height, false);
+        try {
+            return mReader.decodeWithState(new BinaryBitmap(new HybridBinarizer(source)));
+        } catch (NotFoundException e) {
+            return null;
+        } finally {
+            mReader.reset();
+        }
+    }
+
+    /**
+     * Rotates the luminance of an image clockwise by the given number of quarter turns, into a
+     * buffer that is reused by the next call.
+     */
+    private byte[] rotate(byte[] luma, int width, int height, int rotation) {
+        int size = width * height;
+        if ((mUpright == null) || (mUpright.length < size)) {
+            mUpright = new byte[size];
+        }
+        byte[] upright = mUpright;
+
+        switch (rotation) {
+            case 1:
+                // Source pixel (x, y) ends up at (height - 1 - y, x), in rows of height pixels.
+                for (int y = 0; y < height; ++y) {
+                    int src = y * width;
+                    int dst = height - 1 - y;
+                    for (int x = 0; x < width; ++x) {
+                        upright[dst] = luma[src + x];
+                        dst += height;
+                    }
+                }
+                break;
+            case 2:
+                for (int i = 0; i < size; ++i) {
+                    upright[size - 1 - i] = luma[i];
+                }
+                break;
+            default:
+                // Source pixel (x, y) ends up at (y, width - 1 - x), in rows of height pixels.
+                for (int y = 0; y < height; ++y) {
+                    int src = y * width;
+                    int dst = (width - 1) * height + y;
+                    for (int x = 0; x < width; ++x) {
+                        upright[dst] = luma[src + x];
+                        dst -= height;
+                    }
+                }
+                break;
+        }
+        return upright;
+    }
+}
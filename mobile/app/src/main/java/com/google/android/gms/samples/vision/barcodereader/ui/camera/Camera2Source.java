@@ -0,0 +1,752 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import android.Manifest;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresPermission;
+import android.util.Log;
+import android.util.Range;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.WindowManager;
+
+import com.google.android.gms.common.images.Size;
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Camera source built on the camera2 API.  Preview frames are captured by an {@link ImageReader}
+ * in YUV_420_888, and each image is packed into a reused NV21 array for the detector.  Unlike
+ * {@link CameraSource}, no preview callback buffers are cycled through the camera service.
+ * <p/>
+ * As with {@link CameraSource}, the most recent image waits in a single pending slot while the
+ * detector works, and older images are closed as newer ones arrive, so the detector always works
+ * on the latest frame.
+ * <p/>
+ * The frame pipeline stages of {@link CameraSource} (scan window, resolution cascade, sharpness
+ * gate and detector workers) work on NV21 arrays, and are not available here.  Use
+ * {@link #isSupported(Context, int)} to check whether the device's camera2 implementation is worth
+ * using, and fall back to {@link CameraSource} otherwise.
+ */
+public class Camera2Source implements ScanCameraSource {
+    private static final String TAG = "Camera2Source";
+
+    /**
+     * Images the reader may hold at once: one pending, one being detected on, and two for
+     * {@link ImageReader#acquireLatestImage()} to skip through to the newest.
+     */
+    private static final int MAX_IMAGES = 4;
+
+    private final Context mContext;
+    private final CameraManager mCameraManager;
+    private Detector<?> mDetector;
+
+    private int mFacing = CameraSource.CAMERA_FACING_BACK;
+    private int mRequestedPreviewWidth = 1024;
+    private int mRequestedPreviewHeight = 768;
+    private float mRequestedFps = 30.0f;
+    private boolean mAutoFocus;
+    private boolean mTorch;
+
+    // Serializes start and stop, which wait for the camera and processing threads to finish
+    // without holding mCameraLock.
+    private final Object mLifecycleLock = new Object();
+
+    private final Object mCameraLock = new Object();
+
+    /**
+     * Start callbacks are delivered on the main thread.
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Set up by start and torn down by stop, while the camera thread isn't running.
+    private HandlerThread mCameraThread;
+    private Handler mCameraHandler;
+    private ImageReader mImageReader;
+    private Surface mPreviewSurface;
+    private Rect mActiveArraySize;
+
+    // Guarded by mCameraLock.  The device and session are set from the camera thread once they
+    // are ready.
+    private boolean mStarted;
+    private CameraDevice mCameraDevice;
+    private CameraCaptureSession mSession;
+    private CaptureRequest.Builder mRequestBuilder;
+    private float mMaxZoom = 1;
+    private float mZoom = 1;
+    private Range<Integer> mFpsRange;
+    // Told how the start went once the capture session is configured or fails to be.  Dropped
+    // if the camera source is stopped first.
+    private StartCallback mStartCallback;
+
+    private volatile Size mPreviewSize;
+
+    /**
+     * Rotation of the camera images relative to upright.  See {@link Frame.Metadata#getRotation()}.
+     */
+    private volatile int mRotation;
+
+    private Thread mProcessingThread;
+    private final FrameHandoff<Image> mPendingImage = new FrameHandoff<>();
+
+    //==============================================================================================
+    // Builder
+    //==============================================================================================
+
+    /**
+     * Builder for configuring and creating an associated camera source.
+     */
+    public static class Builder {
+        private final Camera2Source mCameraSource;
+
+        /**
+         * Creates a camera source builder with the supplied context and detector.  Camera preview
+         * images will be streamed to the associated detector upon starting the camera source.
+         */
+        public Builder(Context context, Detector<?> detector) {
+            if (context == null) {
+                throw new IllegalArgumentException("No context supplied.");
+            }
+            if (detector == null) {
+                throw new IllegalArgumentException("No detector supplied.");
+            }
+
+            mCameraSource = new Camera2Source(context, detector);
+        }
+
+        /**
+         * Sets the requested frame rate in frames per second.  The closest available target frame
+         * rate range is selected.  Default: 30.
+         */
+        public Builder setRequestedFps(float fps) {
+            if (fps <= 0) {
+                throw new IllegalArgumentException("Invalid fps: " + fps);
+            }
+            mCameraSource.mRequestedFps = fps;
+            return this;
+        }
+
+        /**
+         * Sets the desired width and height of the camera frames in pixels.  The closest size
+         * supported both for the preview and for YUV capture is selected.  Default: 1024x768.
+         */
+        public Builder setRequestedPreviewSize(int width, int height) {
+            final int MAX = 1000000;
+            if ((width <= 0) || (width > MAX) || (height <= 0) || (height > MAX)) {
+                throw new IllegalArgumentException("Invalid preview size: " + width + "x" + height);
+            }
+            mCameraSource.mRequestedPreviewWidth = width;
+            mCameraSource.mRequestedPreviewHeight = height;
+            return this;
+        }
+
+        /**
+         * Uses continuous picture auto focus, where supported.  Default: off.
+         */
+        public Builder setAutoFocus(boolean autoFocus) {
+            mCameraSource.mAutoFocus = autoFocus;
+            return this;
+        }
+
+        /**
+         * Keeps the flash on as a torch while the camera runs.  Default: off.
+         */
+        public Builder setTorch(boolean torch) {
+            mCameraSource.mTorch = torch;
+            return this;
+        }
+
+        /**
+         * Sets the camera to use (either {@link CameraSource#CAMERA_FACING_BACK} or
+         * {@link CameraSource#CAMERA_FACING_FRONT}).  Default: back facing.
+         */
+        public Builder setFacing(int facing) {
+            if ((facing != CameraSource.CAMERA_FACING_BACK)
+                    && (facing != CameraSource.CAMERA_FACING_FRONT)) {
+                throw new IllegalArgumentException("Invalid camera: " + facing);
+            }
+            mCameraSource.mFacing = facing;
+            return this;
+        }
+
+        /**
+         * Creates an instance of the camera source.
+         */
+        public Camera2Source build() {
+            return mCameraSource;
+        }
+    }
+
+    private Camera2Source(Context context, Detector<?> detector) {
+        mContext = context;
+        mDetector = detector;
+        mCameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+    }
+
+    /**
+     * Returns whether the camera facing the given direction implements camera2 beyond the legacy
+     * level.  Legacy devices run camera2 as a layer over the original camera API, which gains
+     * nothing over {@link CameraSource}.
+     */
+    public static boolean isSupported(Context context, int facing) {
+        CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        try {
+            String cameraId = findCamera(manager, facing);
+            if (cameraId == null) {
+                return false;
+            }
+
+            Integer level = manager.getCameraCharacteristics(cameraId)
+                    .get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+            return (level != null)
+                    && (level != CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY);
+        } catch (CameraAccessException e) {
+            Log.w(TAG, "Unable to query camera characteristics.", e);
+            return false;
+        }
+    }
+
+    //==============================================================================================
+    // Public
+    //==============================================================================================
+
+    /**
+     * Starts the camera, which is opened asynchronously on the camera thread once the preview
+     * size is chosen.  The callback is told on the main thread once the capture session is
+     * configured, or as soon as the camera fails to start.
+     */
+    @Override
+    @RequiresPermission(Manifest.permission.CAMERA)
+    public void start(SurfaceHolder surfaceHolder, StartCallback callback) {
+        try {
+            startCamera(surfaceHolder, callback);
+        } catch (IOException e) {
+            postStartResult(callback, e);
+        }
+    }
+
+    @RequiresPermission(Manifest.permission.CAMERA)
+    public Camera2Source start(SurfaceHolder surfaceHolder) throws IOException {
+        startCamera(surfaceHolder, null);
+        return this;
+    }
+
+    @RequiresPermission(Manifest.permission.CAMERA)
+    private void startCamera(SurfaceHolder surfaceHolder, @Nullable StartCallback callback)
+            throws IOException {
+        synchronized (mLifecycleLock) {
+            if (mCameraThread != null) {
+                if (callback != null) {
+                    postStartResult(callback, null);
+                }
+                return;
+            }
+
+            String cameraId;
+            CameraCharacteristics characteristics;
+            try {
+                cameraId = findCamera(mCameraManager, mFacing);
+                if (cameraId == null) {
+                    throw new IOException("Could not find requested camera.");
+                }
+                characteristics = mCameraManager.getCameraCharacteristics(cameraId);
+            } catch (CameraAccessException e) {
+                throw new IOException("Unable to access camera.", e);
+            }
+
+            android.util.Size size = selectPreviewSize(characteristics);
+            mPreviewSize = new Size(size.getWidth(), size.getHeight());
+            mRotation = getRotation(characteristics);
+            mFpsRange = selectFpsRange(characteristics);
+            mActiveArraySize =
+                    characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+            Float maxZoom =
+                    characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+            mMaxZoom = (maxZoom != null) ? maxZoom : 1;
+            mZoom = 1;
+
+            // The preview surface has to be one of the sizes the camera outputs, or it is scaled.
+            surfaceHolder.setFixedSize(size.getWidth(), size.getHeight());
+            mPreviewSurface = surfaceHolder.getSurface();
+
+            mCameraThread = new HandlerThread(TAG);
+            mCameraThread.start();
+            mCameraHandler = new Handler(mCameraThread.getLooper());
+
+            mImageReader = ImageReader.newInstance(size.getWidth(), size.getHeight(),
+                    ImageFormat.YUV_420_888, MAX_IMAGES);
+            mImageReader.setOnImageAvailableListener(new ImageAvailableListener(), mCameraHandler);
+
+            mPendingImage.setActive(true);
+            mProcessingThread = new Thread(new FrameProcessingRunnable());
+            mProcessingThread.start();
+
+            synchronized (mCameraLock) {
+                mStarted = true;
+                mStartCallback = callback;
+            }
+            try {
+                mCameraManager.openCamera(cameraId, new DeviceStateCallback(), mCameraHandler);
+            } catch (CameraAccessException | SecurityException e) {
+                stop();
+                throw new IOException("Unable to open camera.", e);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        synchronized (mLifecycleLock) {
+            synchronized (mCameraLock) {
+                // Callbacks still queued on the camera thread see this and back off.
+                mStarted = false;
+                mStartCallback = null;
+
+                if (mSession != null) {
+                    mSession.close();
+                    mSession = null;
+                }
+                if (mCameraDevice != null) {
+                    mCameraDevice.close();
+                    mCameraDevice = null;
+                }
+                mRequestBuilder = null;
+            }
+
+            // Let the camera thread finish delivering images before closing the reader.  Its
+            // callbacks take mCameraLock, so it must not be held here.
+            if (mCameraThread != null) {
+                mCameraThread.quitSafely();
+                try {
+                    mCameraThread.join();
+                } catch (InterruptedException e) {
+                    Log.d(TAG, "Camera thread interrupted on stop.");
+                }
+                mCameraThread = null;
+                mCameraHandler = null;
+            }
+
+            mPendingImage.setActive(false);
+            if (mProcessingThread != null) {
+                try {
+                    mProcessingThread.join();
+                } catch (InterruptedException e) {
+                    Log.d(TAG, "Frame processing thread interrupted on stop.");
+                }
+                mProcessingThread = null;
+            }
+
+            Image pending = mPendingImage.poll();
+            if (pending != null) {
+                pending.close();
+            }
+
+            if (mImageReader != null) {
+                mImageReader.close();
+                mImageReader = null;
+            }
+            mPreviewSurface = null;
+        }
+    }
+
+    @Override
+    public void release() {
+        synchronized (mLifecycleLock) {
+            stop();
+            if (mDetector != null) {
+                mDetector.release();
+                mDetector = null;
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    public Size getPreviewSize() {
+        return mPreviewSize;
+    }
+
+    @Override
+    public int getCameraFacing() {
+        return mFacing;
+    }
+
+    /**
+     * Detection always runs on the whole frame.
+     */
+    @Override
+    @Nullable
+    public Rect getScanWindow() {
+        return null;
+    }
+
+    /**
+     * Zooms digitally by cropping the sensor image.
+     *
+     * @return the resulting zoom level, in tenths of the full field of view
+     */
+    @Override
+    public int doZoom(float scale) {
+        synchronized (mCameraLock) {
+            if ((mRequestBuilder == null) || (mActiveArraySize == null) || (mMaxZoom <= 1)) {
+                return 10;
+            }
+
+            mZoom = Math.max(1, Math.min(mMaxZoom, mZoom * scale));
+            mRequestBuilder.set(CaptureRequest.SCALER_CROP_REGION, getCropRegion());
+            updateRepeatingRequest();
+            return Math.round(mZoom * 10);
+        }
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    @Nullable
+    private static String findCamera(CameraManager manager, int facing)
+            throws CameraAccessException {
+        int lensFacing = (facing == CameraSource.CAMERA_FACING_FRONT)
+                ? CameraCharacteristics.LENS_FACING_FRONT
+                : CameraCharacteristics.LENS_FACING_BACK;
+        for (String cameraId : manager.getCameraIdList()) {
+            Integer cameraFacing = manager.getCameraCharacteristics(cameraId)
+                    .get(CameraCharacteristics.LENS_FACING);
+            if ((cameraFacing != null) && (cameraFacing == lensFacing)) {
+                return cameraId;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Selects the size closest to the requested one, among those the camera can output both to
+     * the preview surface and to the image reader.
+     */
+    private android.util.Size selectPreviewSize(CameraCharacteristics characteristics)
+            throws IOException {
+        StreamConfigurationMap map =
+                characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (map == null) {
+            throw new IOException("Camera has no stream configurations.");
+        }
+
+        Set<android.util.Size> previewSizes =
+                new HashSet<>(Arrays.asList(map.getOutputSizes(SurfaceHolder.class)));
+
+        android.util.Size selected = null;
+        int minDiff = Integer.MAX_VALUE;
+        for (android.util.Size size : map.getOutputSizes(ImageFormat.YUV_420_888)) {
+            if (!previewSizes.contains(size)) {
+                continue;
+            }
+            int diff = Math.abs(size.getWidth() - mRequestedPreviewWidth)
+                    + Math.abs(size.getHeight() - mRequestedPreviewHeight);
+            if (diff < minDiff) {
+                selected = size;
+                minDiff = diff;
+            }
+        }
+
+        if (selected == null) {
+            throw new IOException("Could not find suitable preview size.");
+        }
+        return selected;
+    }
+
+    /**
+     * Selects the target frame rate range closest to the requested frame rate, the same way
+     * {@link CameraSource} does.
+     */
+    @Nullable
+    private Range<Integer> selectFpsRange(CameraCharacteristics characteristics) {
+        Range<Integer>[] ranges =
+                characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        if (ranges == null) {
+            return null;
+        }
+
+        Range<Integer> selected = null;
+        float minDiff = Float.MAX_VALUE;
+        for (Range<Integer> range : ranges) {
+            float diff = Math.abs(mRequestedFps - range.getLower())
+                    + Math.abs(mRequestedFps - range.getUpper());
+            if (diff < minDiff) {
+                selected = range;
+                minDiff = diff;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Works out the rotation of the camera images relative to the display, as
+     * {@link CameraSource} does for the original camera API.
+     */
+    private int getRotation(CameraCharacteristics characteristics) {
+        WindowManager windowManager =
+                (WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE);
+        int degrees = windowManager.getDefaultDisplay().getRotation() * 90;
+
+        Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        int sensorOrientation = (orientation != null) ? orientation : 0;
+
+        int angle;
+        if (mFacing == CameraSource.CAMERA_FACING_FRONT) {
+            angle = (sensorOrientation + degrees) % 360;
+        } else {
+            angle = (sensorOrientation - degrees + 360) % 360;
+        }
+        return angle / 90;
+    }
+
+    private Rect getCropRegion() {
+        int width = Math.round(mActiveArraySize.width() / mZoom);
+        int height = Math.round(mActiveArraySize.height() / mZoom);
+        int left = mActiveArraySize.left + (mActiveArraySize.width() - width) / 2;
+        int top = mActiveArraySize.top + (mActiveArraySize.height() - height) / 2;
+        return new Rect(left, top, left + width, top + height);
+    }
+
+    /**
+     * Builds the repeating preview request.  Called on the camera thread once the session is
+     * configured.
+     */
+    private void startRepeatingRequest() throws CameraAccessException {
+        mRequestBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+        mRequestBuilder.addTarget(mPreviewSurface);
+        mRequestBuilder.addTarget(mImageReader.getSurface());
+
+        if (mAutoFocus) {
+            mRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
+                    CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+        }
+        if (mTorch) {
+            mRequestBuilder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_TORCH);
+        }
+        if (mFpsRange != null) {
+            mRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, mFpsRange);
+        }
+        if (mActiveArraySize != null) {
+            mRequestBuilder.set(CaptureRequest.SCALER_CROP_REGION, getCropRegion());
+        }
+
+        updateRepeatingRequest();
+    }
+
+    private void updateRepeatingRequest() {
+        if (mSession == null) {
+            return;
+        }
+
+        try {
+            mSession.setRepeatingRequest(mRequestBuilder.build(), null, mCameraHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(TAG, "Unable to update preview request.", e);
+        }
+    }
+
+    //==============================================================================================
+    // Camera callbacks
+    //==============================================================================================
+
+    private class DeviceStateCallback extends CameraDevice.StateCallback {
+        @Override
+        public void onOpened(CameraDevice camera) {
+            synchronized (mCameraLock) {
+                if (!mStarted) {
+                    // Stopped while the camera was opening.
+                    camera.close();
+                    return;
+                }
+
+                mCameraDevice = camera;
+                try {
+                    camera.createCaptureSession(
+                            Arrays.asList(mPreviewSurface, mImageReader.getSurface()),
+                            new SessionStateCallback(), mCameraHandler);
+                } catch (CameraAccessException e) {
+                    Log.e(TAG, "Unable to create capture session.", e);
+                    finishStart(new IOException("Unable to create capture session.", e));
+                }
+            }
+        }
+
+        @Override
+        public void onDisconnected(CameraDevice camera) {
+            synchronized (mCameraLock) {
+                camera.close();
+                if (mCameraDevice == camera) {
+                    mCameraDevice = null;
+                    mSession = null;
+                }
+                finishStart(new IOException("Camera disconnected."));
+            }
+        }
+
+        @Override
+        public void onError(CameraDevice camera, int error) {
+            Log.e(TAG, "Camera error: " + error);
+            onDisconnected(camera);
+        }
+    }
+
+    private class SessionStateCallback extends CameraCaptureSession.StateCallback {
+        @Override
+        public void onConfigured(CameraCaptureSession session) {
+            synchronized (mCameraLock) {
+                if (!mStarted || (mCameraDevice == null)) {
+                    session.close();
+                    return;
+                }
+
+                mSession = session;
+                try {
+                    startRepeatingRequest();
+                } catch (CameraAccessException | IllegalStateException e) {
+                    Log.e(TAG, "Unable to start preview.", e);
+                    finishStart(e);
+                    return;
+                }
+                finishStart(null);
+            }
+        }
+
+        @Override
+        public void onConfigureFailed(CameraCaptureSession session) {
+            Log.e(TAG, "Unable to configure capture session.");
+            synchronized (mCameraLock) {
+                finishStart(new IOException("Unable to configure capture session."));
+            }
+        }
+    }
+
+    /**
+     * Tells the pending start callback, if there is one, how the start went.  Called with
+     * mCameraLock held.
+     */
+    private void finishStart(@Nullable Exception failure) {
+        StartCallback callback = mStartCallback;
+        mStartCallback = null;
+        if (callback != null) {
+            postStartResult(callback, failure);
+        }
+    }
+
+    private void postStartResult(final StartCallback callback, @Nullable final Exception failure) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (failure == null) {
+                    callback.onStarted();
+                } else {
+                    callback.onStartFailed(failure);
+                }
+            }
+        });
+    }
+
+    //==============================================================================================
+    // Frame processing
+    //==============================================================================================
+
+    /**
+     * Moves the newest image to the pending slot, closing whichever image it displaces.  Runs on
+     * the camera thread.
+     */
+    private class ImageAvailableListener implements ImageReader.OnImageAvailableListener {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            Image image;
+            try {
+                image = reader.acquireLatestImage();
+            } catch (IllegalStateException e) {
+                // Every image is in use; the next callback will catch up.
+                return;
+            }
+            if (image == null) {
+                return;
+            }
+
+            Image displaced = mPendingImage.offer(image);
+            if (displaced != null) {
+                displaced.close();
+            }
+        }
+    }
+
+    /**
+     * Runs detection on the pending image, one at a time, as fast as the detector allows.
+     */
+    private class FrameProcessingRunnable implements Runnable {
+        private int mFrameId;
+        private byte[] mNv21;
+
+        @Override
+        public void run() {
+            Image image;
+            while ((image = mPendingImage.take()) != null) {
+                try {
+                    mDetector.receiveFrame(createFrame(image));
+                } catch (Throwable t) {
+                    Log.e(TAG, "Exception thrown from receiver.", t);
+                } finally {
+                    image.close();
+                }
+            }
+            Log.d(TAG, "Frame processing loop terminated.");
+        }
+
+        /**
+         * Packs the image into an NV21 array, which is reused from frame to frame while the
+         * preview size stays the same.  The detector reads the frame before the next one is
+         * packed, so a single array is enough.
+         */
+        private Frame createFrame(Image image) {
+            int width = image.getWidth() & ~1;
+            int height = image.getHeight() & ~1;
+            int size = width * height * 3 / 2;
+            if (mNv21 == null || mNv21.length != size) {
+                mNv21 = new byte[size];
+            }
+
+            Image.Plane[] planes = image.getPlanes();
+            Nv21.fromYuv420(planes[0].getBuffer(), planes[0].getRowStride(),
+                    planes[1].getBuffer(), planes[2].getBuffer(),
+                    planes[1].getRowStride(), planes[1].getPixelStride(),
+                    width, height, mNv21);
+
+            return new Frame.Builder()
+                    .setImageData(ByteBuffer.wrap(mNv21), width, height, ImageFormat.NV21)
+                    .setId(++mFrameId)
+                    .setTimestampMillis(image.getTimestamp() / 1000000)
+                    .setRotation(mRotation)
+                    .build();
+        }
+    }
+}
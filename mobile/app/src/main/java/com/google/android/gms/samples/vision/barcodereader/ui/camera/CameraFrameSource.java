@@ -0,0 +1,46 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import android.hardware.Camera;
+
+/**
+ * Delivers the preview frames of an open camera.  Opening the camera, starting its preview and
+ * releasing it are up to the caller.
+ */
+@SuppressWarnings("deprecation")
+final class CameraFrameSource implements FrameSource {
+    private final Camera mCamera;
+
+    CameraFrameSource(Camera camera) {
+        mCamera = camera;
+    }
+
+    @Override
+    public void start(final Receiver receiver) {
+        // Installing the callback keeps the buffers added so far; only removing it drops them.
+        mCamera.setPreviewCallbackWithBuffer(new Camera.PreviewCallback() {
+            @Override
+            public void onPreviewFrame(byte[] data, Camera camera) {
+                receiver.onFrame(data);
+            }
+        });
+    }
+
+    @Override
+    public void addBuffer(byte[] buffer) {
+        mCamera.addCallbackBuffer(buffer);
+    }
+
+    /**
+     * Stops delivering frames.  Preview callbacks run on the thread the camera was opened on, so
+     * when called from that thread, no callback can still be running either.
+     */
+    @Override
+    public void stop() {
+        mCamera.setPreviewCallbackWithBuffer(null);
+    }
+}
@@ -0,0 +1,280 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What {@link CameraSource} found out about a camera the last time it opened it: which camera
+ * faces the requested way, the preview and picture size and frame rate range it chose for the
+ * requested ones, and the frame rate ranges, focus modes and flash modes the camera supports.
+ * <p/>
+ * Working this out takes several round trips to the camera service and a search through every
+ * pair of preview and picture sizes, while none of it changes until the system is updated.  The
+ * profile is kept in a small binary file, so that later starts can configure the camera straight
+ * from it.  It is recorded for the build fingerprint of the system and the request it was chosen
+ * for, and {@link #matches} tells whether it still applies.
+ * <p/>
+ * This has no Android dependencies, so it can also be run on the JVM.
+ */
+final class CameraProfile {
+    // Bumped whenever the file layout changes, so that older files are probed over.
+    private static final int VERSION = 2;
+
+    private final String mFingerprint;
+    private final int mCameraId;
+    private final int mFacing;
+    private final int mOrientation;
+    private final int mRequestedWidth;
+    private final int mRequestedHeight;
+    private final int mRequestedFps;
+
+    private int mPreviewWidth;
+    private int mPreviewHeight;
+    private int mPictureWidth;
+    private int mPictureHeight;
+    private int mFpsRangeIndex;
+    private List<int[]> mSupportedFpsRanges = Collections.emptyList();
+    private List<String> mFocusModes = Collections.emptyList();
+    private List<String> mFlashModes = Collections.emptyList();
+
+    /**
+     * @param fingerprint     the build fingerprint of the system the camera was probed on
+     * @param cameraId        the id the camera was opened with
+     * @param facing          which way the camera faces
+     * @param orientation     the angle the camera image has to be turned clockwise to be upright
+     *                        in the natural orientation of the device
+     * @param requestedWidth  the preview width that was asked for
+     * @param requestedHeight the preview height that was asked for
+     * @param requestedFps    the preview frame rate that was asked for, times 1000
+     */
+    CameraProfile(String fingerprint, int cameraId, int facing, int orientation,
+                  int requestedWidth, int requestedHeight, int requestedFps) {
+        mFingerprint = fingerprint;
+        mCameraId = cameraId;
+        mFacing = facing;
+        mOrientation = orientation;
+        mRequestedWidth = requestedWidth;
+        mRequestedHeight = requestedHeight;
+        mRequestedFps = requestedFps;
+    }
+
+    /**
+     * Sets the preview and picture size chosen for the request.  The picture size is 0 by 0 if no
+     * picture size is to be set.
+     */
+    void setSizes(int previewWidth, int previewHeight, int pictureWidth, int pictureHeight) {
+        mPreviewWidth = previewWidth;
+        mPreviewHeight = previewHeight;
+        mPictureWidth = pictureWidth;
+        mPictureHeight = pictureHeight;
+    }
+
+    /**
+     * Sets all the preview frame rate ranges the camera supports, in the camera's order, and which
+     * of them was chosen for the request.
+     */
+    void setFpsRanges(int selectedIndex, List<int[]> supported) {
+        if ((selectedIndex < 0) || (selectedIndex >= supported.size())) {
+            throw new IllegalArgumentException("No frame rate range " + selectedIndex + " among "
+                    + supported.size());
+        }
+        mFpsRangeIndex = selectedIndex;
+        mSupportedFpsRanges = supported;
+    }
+
+    /**
+     * Sets the focus and flash modes the camera supports.  A camera without a flash has no flash
+     * modes.
+     */
+    void setModes(List<String> focusModes, List<String> flashModes) {
+        mFocusModes = focusModes;
+        mFlashModes = (flashModes != null) ? flashModes : Collections.<String>emptyList();
+    }
+
+    /**
+     * Returns whether the profile was recorded on the same system, for a camera facing the same
+     * way, and for the same request.
+     */
+    boolean matches(String fingerprint, int facing, int requestedWidth, int requestedHeight,
+                    int requestedFps) {
+        return mFingerprint.equals(fingerprint) && (mFacing == facing)
+                && (mRequestedWidth == requestedWidth) && (mRequestedHeight == requestedHeight)
+                && (mRequestedFps == requestedFps);
+    }
+
+    int getCameraId() {
+        return mCameraId;
+    }
+
+    int getFacing() {
+        return mFacing;
+    }
+
+    int getOrientation() {
+        return mOrientation;
+    }
+
+    int getPreviewWidth() {
+        return mPreviewWidth;
+    }
+
+    int getPreviewHeight() {
+        return mPreviewHeight;
+    }
+
+    /**
+     * Returns whether a picture size of the same aspect ratio as the preview size was found.
+     */
+    boolean hasPictureSize() {
+        return mPictureWidth > 0;
+    }
+
+    int getPictureWidth() {
+        return mPictureWidth;
+    }
+
+    int getPictureHeight() {
+        return mPictureHeight;
+    }
+
+    int[] getFpsRange() {
+        return mSupportedFpsRanges.get(mFpsRangeIndex);
+    }
+
+    /**
+     * Returns the position of the chosen frame rate range among the supported ones.
+     */
+    int getFpsRangeIndex() {
+        return mFpsRangeIndex;
+    }
+
+    List<int[]> getSupportedFpsRanges() {
+        return mSupportedFpsRanges;
+    }
+
+    List<String> getFocusModes() {
+        return mFocusModes;
+    }
+
+    List<String> getFlashModes() {
+        return mFlashModes;
+    }
+
+    /**
+     * Reads a profile written by {@link #write(File)}.
+     *
+     * @return the profile, or null if there is none or it was written in an older layout
+     * @throws IOException if the file can't be read or is damaged
+     */
+    static CameraProfile read(File file) throws IOException {
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+
+        try {
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            CameraProfile profile = new CameraProfile(in.readUTF(), in.readInt(), in.readInt(),
+                    in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            profile.setSizes(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            int selectedIndex = in.readUnsignedShort();
+            int count = in.readUnsignedShort();
+            List<int[]> supported = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                supported.add(readFpsRange(in));
+            }
+            if (selectedIndex >= count) {
+                throw new IOException("Damaged profile in " + file);
+            }
+            profile.setFpsRanges(selectedIndex, supported);
+            profile.setModes(readStrings(in), readStrings(in));
+            return profile;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the profile to a file, replacing any profile in it.  The profile is written next to
+     * the file first and then moved over it, so that a start reading it meanwhile, or a crash
+     * halfway, never leaves a partial profile behind.
+     */
+    void write(File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            out.writeInt(VERSION);
+            out.writeUTF(mFingerprint);
+            out.writeInt(mCameraId);
+            out.writeInt(mFacing);
+            out.writeInt(mOrientation);
+            out.writeInt(mRequestedWidth);
+            out.writeInt(mRequestedHeight);
+            out.writeInt(mRequestedFps);
+            out.writeInt(mPreviewWidth);
+            out.writeInt(mPreviewHeight);
+            out.writeInt(mPictureWidth);
+            out.writeInt(mPictureHeight);
+            out.writeShort(mFpsRangeIndex);
+            out.writeShort(mSupportedFpsRanges.size());
+            for (int[] range : mSupportedFpsRanges) {
+                writeFpsRange(out, range);
+            }
+            writeStrings(out, mFocusModes);
+            writeStrings(out, mFlashModes);
+        } finally {
+            out.close();
+        }
+
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+    }
+
+    private static int[] readFpsRange(DataInputStream in) throws IOException {
+        return new int[]{in.readInt(), in.readInt()};
+    }
+
+    private static void writeFpsRange(DataOutputStream out, int[] range) throws IOException {
+        out.writeInt(range[0]);
+        out.writeInt(range[1]);
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings)
+            throws IOException {
+        out.writeShort(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+}
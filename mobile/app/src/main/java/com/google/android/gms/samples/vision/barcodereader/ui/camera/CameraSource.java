@@ -22,10 +22,14 @@ import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.ImageFormat;
+import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.hardware.Camera.CameraInfo;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.os.SystemClock;
 import android.support.annotation.Nullable;
 import android.support.annotation.RequiresPermission;
@@ -37,18 +41,26 @@ import android.view.SurfaceView;
 import android.view.WindowManager;
 
 import com.google.android.gms.common.images.Size;
+import com.google.android.gms.samples.vision.barcodereader.ui.camera.PreviewBufferPool.PreviewBuffer;
 import com.google.android.gms.vision.Detector;
 import com.google.android.gms.vision.Frame;
 
+import org.qccoders.qcvoc.BuildConfig;
+
+import java.io.File;
 import java.io.IOException;
 import java.lang.Thread.State;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 // Note: This requires Google Play Services 8.1 or higher, due to using indirect byte buffers for
 // storing images.
@@ -67,13 +79,20 @@ import java.util.Map;
  * utilization is higher than you'd like, then you may want to consider reducing FPS.  If the camera
  * preview or detector results are too "jerky", then you may want to consider increasing FPS.
  * <p/>
+ * Opening, configuring and closing the camera can take hundreds of milliseconds, so none of it is
+ * done on the caller's thread.  Every camera operation is queued as a command to a camera thread
+ * of this camera source's own, which runs them one at a time in the order they were issued.  The
+ * methods return as soon as the command is queued, and report back through a callback or a
+ * {@link Future} where there is a result.  Callbacks of the camera itself, such as for auto focus
+ * or pictures taken, arrive on the camera thread.
+ * <p/>
  * The following Android permission is required to use the camera:
  * <ul>
  * <li>android.permissions.CAMERA</li>
  * </ul>
  */
 @SuppressWarnings("deprecation")
-public class CameraSource {
+public class CameraSource implements ScanCameraSource {
     @SuppressLint("InlinedApi")
     public static final int CAMERA_FACING_BACK = CameraInfo.CAMERA_FACING_BACK;
     @SuppressLint("InlinedApi")
@@ -81,6 +100,13 @@ public class CameraSource {
 
     private static final String TAG = "OpenCameraSource";
 
+    /**
+     * How long the main thread waits for the camera to let go of a preview surface that is being
+     * destroyed.  Long enough for a camera command under way to finish, short of holding the
+     * main thread up noticeably.
+     */
+    private static final long PREVIEW_DETACH_TIMEOUT_MILLIS = 500;
+
     /**
      * The dummy surface texture must be assigned a chosen name.  Since we never use an OpenGL
      * context, we can choose any ID we want here.
@@ -117,10 +143,28 @@ public class CameraSource {
 
     private Context mContext;
 
-    private final Object mCameraLock = new Object();
+    /**
+     * The thread all camera commands run on, from when the camera source is built until it is
+     * released.
+     */
+    private HandlerThread mCameraThread;
+    private Handler mCameraHandler;
 
-    // Guarded by mCameraLock
+    // Only touched on the camera thread.
     private Camera mCamera;
+    private SurfaceHolder mPreviewHolder;
+
+    /**
+     * Where frames come from while the camera source is started: the camera, or the recording
+     * being replayed instead.  Set on the camera thread, and read by the threads handing buffers
+     * back.
+     */
+    private volatile FrameSource mFrameSource;
+
+    /**
+     * Recorded frames to replay instead of opening the camera, if any.
+     */
+    private ReplayFrameSource mReplay;
 
     private int mFacing = CAMERA_FACING_BACK;
 
@@ -130,7 +174,7 @@ public class CameraSource {
      */
     private int mRotation;
 
-    private Size mPreviewSize;
+    private volatile Size mPreviewSize;
 
     // These values may be requested by the caller.  Due to hardware limitations, we may need to
     // select close, but not exactly the same values for these.
@@ -139,8 +183,29 @@ public class CameraSource {
     private int mRequestedPreviewHeight = 768;
 
 
-    private String mFocusMode = null;
-    private String mFlashMode = null;
+    private volatile String mFocusMode = null;
+    private volatile String mFlashMode = null;
+
+    // The zoom range of the open camera, or 0 if it can't zoom or isn't open, and the zoom level
+    // last asked for.  Kept here so that zooming doesn't have to ask the camera.
+    private volatile int mMaxZoom;
+    private volatile int mZoom;
+
+    // Size of the scan window as a fraction of the upright preview frame, or 0 to detect on the
+    // whole frame.
+    private float mScanWindowWidth = 0;
+    private float mScanWindowHeight = 0;
+
+    // The scan window in camera image coordinates, which frames are cropped to before detection.
+    private int mCropLeft;
+    private int mCropTop;
+    private int mCropWidth;
+    private int mCropHeight;
+
+    /**
+     * The scan window in upright preview frame coordinates, or null if there is none.
+     */
+    private volatile Rect mScanWindow;
 
     // These instances need to be held onto to avoid GC of their underlying resources.  Even though
     // these aren't used outside of the method that creates them, they still must have hard
@@ -156,11 +221,80 @@ public class CameraSource {
     private FrameProcessingRunnable mFrameProcessor;
 
     /**
-     * Map to convert between a byte array, received from the camera, and its associated byte
-     * buffer.  We use byte buffers internally because this is a more efficient way to call into
-     * native code later (avoids a potential copy).
+     * Optional pool of detector workers.  When present, the processing thread only dispatches
+     * frames, and detection runs on consecutive frames in parallel.
+     */
+    private DetectorWorkerPool<?> mWorkerPool;
+
+    /**
+     * Optional detector shared by the fallback detectors of all workers.  It is released once,
+     * along with the frame processor, rather than by each of them.
+     */
+    private Detector<?> mFallbackDetector;
+
+    /**
+     * Pool of the buffers the camera fills with preview frames, used to convert between a byte
+     * array received from the camera and its associated byte buffer.  We use byte buffers
+     * internally because this is a more efficient way to call into native code later (avoids a
+     * potential copy).
+     */
+    private final PreviewBufferPool mBufferPool = new PreviewBufferPool();
+    private int mPreviewBufferCount = 4;
+
+    /**
+     * Picks the resolution each frame is detected at, and keeps per-resolution statistics.
      */
-    private Map<byte[], ByteBuffer> mBytesToByteBuffer = new HashMap<>();
+    private final ResolutionCascade mResolutionCascade = new ResolutionCascade();
+
+    /**
+     * Whether the camera source gets to see the detections of each frame, which the resolution
+     * cascade depends on.  This is the case when the processor was supplied through the builder.
+     */
+    private boolean mDetectionsObserved;
+
+    /**
+     * Optionally skips blurred frames before they reach the detector.
+     */
+    private final SharpnessGate mSharpnessGate = new SharpnessGate();
+    private boolean mSharpnessGateEnabled;
+
+    private final FrameMetricsRecorder mMetrics = new FrameMetricsRecorder();
+
+    /**
+     * Optionally adjusts the preview frame rate to the detector's throughput.  Created for each
+     * camera, since it depends on the frame rate ranges that camera supports.
+     */
+    private boolean mFpsGovernorEnabled;
+    private volatile FpsGovernor mFpsGovernor;
+
+    // Whether what the camera supports is cached between starts, rather than probed every time.
+    private boolean mProfileCacheEnabled;
+
+    /**
+     * Start callbacks are delivered on the main thread.
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Holds up the destruction of the preview surface until the camera has stopped drawing on it,
+     * as the surface must not be used once it is destroyed.  Only the command that detaches the
+     * preview is waited for, and only for so long, since this runs on the main thread.
+     */
+    private final SurfaceHolder.Callback mPreviewSurfaceCallback = new SurfaceHolder.Callback() {
+        @Override
+        public void surfaceCreated(SurfaceHolder holder) {
+        }
+
+        @Override
+        public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        }
+
+        @Override
+        public void surfaceDestroyed(SurfaceHolder holder) {
+            holder.removeCallback(this);
+            awaitPreviewDetached(holder);
+        }
+    };
 
     //==============================================================================================
     // Builder
@@ -170,7 +304,7 @@ public class CameraSource {
      * Builder for configuring and creating an associated camera source.
      */
     public static class Builder {
-        private final Detector<?> mDetector;
+        private Detector<?> mDetector;
         private CameraSource mCameraSource = new CameraSource();
 
         /**
@@ -230,6 +364,181 @@ public class CameraSource {
             return this;
         }
 
+        /**
+         * Restricts detection to a window in the center of the preview frame.  Each frame is
+         * cropped to this window before it is sent to the detector, which saves the detector from
+         * searching the whole frame.  The size is given as a fraction of the width and height of
+         * the upright frame, as it is displayed.  Default: the whole frame.
+         * <p/>
+         * Detections are reported in the coordinates of the cropped frame.  Use
+         * {@link CameraSource#getScanWindow()} to map them back to the full frame.
+         */
+        public Builder setScanWindow(float widthFraction, float heightFraction) {
+            if ((widthFraction <= 0) || (widthFraction > 1)
+                    || (heightFraction <= 0) || (heightFraction > 1)) {
+                throw new IllegalArgumentException(
+                        "Invalid scan window: " + widthFraction + "x" + heightFraction);
+            }
+            mCameraSource.mScanWindowWidth = widthFraction;
+            mCameraSource.mScanWindowHeight = heightFraction;
+            return this;
+        }
+
+        /**
+         * Detects on grayscale frames at a quarter or half resolution first, and only moves up to
+         * full resolution after several frames at the lower resolutions fail to decode.  This
+         * needs the detector's processor to be supplied through {@link #setProcessor} or
+         * {@link #setDetectorWorkers}, since the camera source has to see which frames decoded.
+         * Default: off; every frame is detected at full resolution.
+         * <p/>
+         * Detections are reported in the coordinates of the downsampled frame, whose size is given
+         * by their frame metadata.
+         */
+        public Builder setResolutionCascade(boolean enabled) {
+            mCameraSource.mResolutionCascade.setEnabled(enabled);
+            return this;
+        }
+
+        /**
+         * Skips frames that are noticeably more blurred than recent ones, such as while the card
+         * is moving or the camera is focusing, instead of running the detector on them.  The
+         * sharpness estimate is far cheaper than a detector call.  Default: off.
+         */
+        public Builder setSharpnessGate(boolean enabled) {
+            mCameraSource.mSharpnessGateEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * Lets the preview frame rate follow the detector's throughput while the camera runs,
+         * starting from the requested frame rate.  The frame rate goes down when the detector
+         * can't keep up, so the camera stops filling buffers that are never detected on, and up
+         * to at most 30 frames per second when the detector has time to spare.  Default: off.
+         */
+        public Builder setFpsGovernor(boolean enabled) {
+            mCameraSource.mFpsGovernorEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * Caches what the camera supports, and the preview size and frame rate range chosen for
+         * the request, in the app's cache directory, so that later starts configure the camera
+         * without probing it.  The cache is probed over when the system is updated or the
+         * request changes.  Default: off; the camera is probed at every start.
+         */
+        public Builder setCameraProfileCache(boolean enabled) {
+            mCameraSource.mProfileCacheEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * Sets a detector to detect with whenever the supplied detector isn't operational, such as
+         * while the native library of a play services detector is still being downloaded.  With
+         * detector workers, all workers share the fallback detector, so it must be thread safe.
+         * The camera source releases it once, when it is released itself.  This must be called
+         * before the processor or the detector workers are set.
+         */
+        @SuppressWarnings("unchecked")
+        public <T> Builder setFallbackDetector(Detector<T> fallback) {
+            if (fallback == null) {
+                throw new IllegalArgumentException("No fallback detector supplied.");
+            }
+            if (mCameraSource.mDetectionsObserved) {
+                throw new IllegalStateException(
+                        "The fallback detector must be set before the processor.");
+            }
+
+            mDetector = new FallbackDetector<>((Detector<T>) mDetector, fallback);
+            mCameraSource.mFallbackDetector = fallback;
+            return this;
+        }
+
+        /**
+         * Sets the processor that receives the detector's results.  Use this instead of setting
+         * the processor on the detector directly, so that the camera source can tell which frames
+         * had detections.
+         */
+        @SuppressWarnings("unchecked")
+        public <T> Builder setProcessor(Detector.Processor<T> processor) {
+            if (processor == null) {
+                throw new IllegalArgumentException("No processor supplied.");
+            }
+
+            ((Detector<T>) mDetector).setProcessor(mCameraSource.new ObservingProcessor<>(processor));
+            mCameraSource.mDetectionsObserved = true;
+            return this;
+        }
+
+        /**
+         * Sets the number of preview buffers shared between the camera and the detector.  At
+         * least three are needed: one for the frame that is currently being detected on, one for
+         * the next pending frame, and one for the camera to populate.  More buffers let the camera
+         * keep capturing while the detector is slow, at the cost of memory.  Default: 4.
+         */
+        public Builder setPreviewBufferCount(int count) {
+            if (count < PreviewBufferPool.MIN_CAPACITY) {
+                throw new IllegalArgumentException("Invalid preview buffer count: " + count);
+            }
+            mCameraSource.mPreviewBufferCount = count;
+            return this;
+        }
+
+        /**
+         * Runs detection on consecutive frames with several detectors in parallel, one thread
+         * each, instead of on the single processing thread.  This lets devices with spare cores
+         * keep up with the camera frame rate.
+         * <p/>
+         * The detector supplied to this builder is used as the first worker, and the factory is
+         * used to create the rest.  The processor of each of these detectors is replaced: the
+         * detections from all workers are delivered to the supplied processor instead, in frame
+         * order and never concurrently.
+         *
+         * @param count     the total number of workers, including the supplied detector
+         * @param factory   creates the detectors for the additional workers
+         * @param processor receives the detections of all workers
+         */
+        @SuppressWarnings("unchecked")
+        public <T> Builder setDetectorWorkers(int count, DetectorFactory<T> factory,
+                                              Detector.Processor<T> processor) {
+            if (count < 1) {
+                throw new IllegalArgumentException("Invalid detector worker count: " + count);
+            }
+            if (factory == null) {
+                throw new IllegalArgumentException("No detector factory supplied.");
+            }
+            if (processor == null) {
+                throw new IllegalArgumentException("No processor supplied.");
+            }
+
+            List<Detector<T>> detectors = new ArrayList<>(count);
+            detectors.add((Detector<T>) mDetector);
+            for (int i = 1; i < count; ++i) {
+                Detector<T> detector = factory.create();
+                if (mCameraSource.mFallbackDetector != null) {
+                    detector = new FallbackDetector<>(detector,
+                            (Detector<T>) mCameraSource.mFallbackDetector);
+                }
+                detectors.add(detector);
+            }
+            mCameraSource.mWorkerPool = new DetectorWorkerPool<>(detectors, processor);
+            mCameraSource.mDetectionsObserved = true;
+            return this;
+        }
+
+        /**
+         * Replays recorded frames through the frame pipeline instead of opening the camera, so
+         * that the pipeline can be run and measured without one.  The preview size and rotation
+         * are those of the recording, and the camera controls, such as zoom and flash, do nothing.
+         * Default: frames come from the camera.
+         */
+        public Builder setReplay(ReplayFrameSource replay) {
+            if (replay == null) {
+                throw new IllegalArgumentException("No replay supplied.");
+            }
+            mCameraSource.mReplay = replay;
+            return this;
+        }
+
         /**
          * Sets the camera to use (either {@link #CAMERA_FACING_BACK} or
          * {@link #CAMERA_FACING_FRONT}). Default: back facing.
@@ -246,11 +555,31 @@ public class CameraSource {
          * Creates an instance of the camera source.
          */
         public CameraSource build() {
+            if (mCameraSource.mResolutionCascade.isEnabled() && !mCameraSource.mDetectionsObserved) {
+                Log.w(TAG, "Resolution cascade needs the processor set through the builder; "
+                        + "detecting at full resolution.");
+                mCameraSource.mResolutionCascade.setEnabled(false);
+            }
+
             mCameraSource.mFrameProcessor = mCameraSource.new FrameProcessingRunnable(mDetector);
+            mCameraSource.mCameraThread = new HandlerThread(TAG);
+            mCameraSource.mCameraThread.start();
+            mCameraSource.mCameraHandler = new Handler(mCameraSource.mCameraThread.getLooper());
             return mCameraSource;
         }
     }
 
+    /**
+     * Creates the detectors for additional detection workers.  See
+     * {@link Builder#setDetectorWorkers(int, DetectorFactory, Detector.Processor)}.
+     */
+    public interface DetectorFactory<T> {
+        /**
+         * Creates a new detector, configured the same way as the one supplied to the builder.
+         */
+        Detector<T> create();
+    }
+
     //==============================================================================================
     // Bridge Functionality for the Camera1 API
     //==============================================================================================
@@ -319,189 +648,421 @@ public class CameraSource {
     //==============================================================================================
 
     /**
-     * Stops the camera and releases the resources of the camera and underlying detector.
+     * Stops the camera and releases the resources of the camera and underlying detector.  The
+     * camera thread ends once that is done.  Commands issued afterwards are dropped, with a
+     * warning, and their futures cancelled or start callbacks failed.
      */
+    @Override
     public void release() {
-        synchronized (mCameraLock) {
-            stop();
-            mFrameProcessor.release();
-        }
+        post(new Runnable() {
+            @Override
+            public void run() {
+                stopCamera();
+                mFrameProcessor.release();
+            }
+        });
+        mCameraThread.quitSafely();
     }
 
     /**
      * Opens the camera and starts sending preview frames to the underlying detector.  The preview
      * frames are not displayed.
      *
-     * @throws IOException if the camera's preview texture or display could not be initialized
+     * @param callback told on the main thread once the camera has started or failed to, or null
      */
-    public CameraSource start() throws IOException {
-        synchronized (mCameraLock) {
-            if (mCamera != null) {
-                return this;
+    @RequiresPermission(Manifest.permission.CAMERA)
+    public void start(@Nullable StartCallback callback) {
+        startOnCameraThread(null, callback);
+    }
+
+    /**
+     * Opens the camera and starts sending preview frames to the underlying detector.  The supplied
+     * surface holder is used for the preview so frames can be displayed to the user.  Should the
+     * surface be destroyed before the camera source is stopped, the preview is stopped with it,
+     * and no frames arrive until the camera source is stopped and started again.
+     *
+     * @param surfaceHolder the surface holder to use for the preview frames
+     * @param callback      told on the main thread once the camera has started or failed to,
+     *                      such as when the surface holder could not be used as the preview
+     *                      display
+     */
+    @Override
+    @RequiresPermission(Manifest.permission.CAMERA)
+    public void start(SurfaceHolder surfaceHolder, StartCallback callback) {
+        surfaceHolder.addCallback(mPreviewSurfaceCallback);
+        startOnCameraThread(surfaceHolder, callback);
+    }
+
+    private void startOnCameraThread(@Nullable final SurfaceHolder surfaceHolder,
+                                     @Nullable final StartCallback callback) {
+        boolean queued = post(new Runnable() {
+            @Override
+            public void run() {
+                Exception failure = null;
+                try {
+                    startCamera(surfaceHolder);
+                } catch (IOException | RuntimeException e) {
+                    failure = e;
+                }
+                if (callback != null) {
+                    postStartResult(callback, failure);
+                }
             }
+        });
+        if (!queued && (callback != null)) {
+            postStartResult(callback, new IllegalStateException("Camera source released."));
+        }
+    }
 
-            mCamera = createCamera();
+    private void postStartResult(final StartCallback callback, @Nullable final Exception failure) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (failure == null) {
+                    callback.onStarted();
+                } else {
+                    callback.onStartFailed(failure);
+                }
+            }
+        });
+    }
 
+    /**
+     * Opens the camera and starts the preview, on the surface holder if there is one and on a
+     * texture that is never drawn otherwise.  Runs on the camera thread.
+     */
+    private void startCamera(@Nullable SurfaceHolder surfaceHolder) throws IOException {
+        assertCameraThread();
+        if (mFrameSource != null) {
+            return;
+        }
+        if (mReplay != null) {
+            startReplay();
+            return;
+        }
+
+        mCamera = createCamera();
+
+        if (surfaceHolder != null) {
+            mCamera.setPreviewDisplay(surfaceHolder);
+            mPreviewHolder = surfaceHolder;
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
             // SurfaceTexture was introduced in Honeycomb (11), so if we are running and
             // old version of Android. fall back to use SurfaceView.
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-                mDummySurfaceTexture = new SurfaceTexture(DUMMY_TEXTURE_NAME);
-                mCamera.setPreviewTexture(mDummySurfaceTexture);
-            } else {
-                mDummySurfaceView = new SurfaceView(mContext);
-                mCamera.setPreviewDisplay(mDummySurfaceView.getHolder());
-            }
-            mCamera.startPreview();
-
-            mProcessingThread = new Thread(mFrameProcessor);
-            mFrameProcessor.setActive(true);
-            mProcessingThread.start();
+            mDummySurfaceTexture = new SurfaceTexture(DUMMY_TEXTURE_NAME);
+            mCamera.setPreviewTexture(mDummySurfaceTexture);
+        } else {
+            mDummySurfaceView = new SurfaceView(mContext);
+            mCamera.setPreviewDisplay(mDummySurfaceView.getHolder());
         }
-        return this;
+        mCamera.startPreview();
+
+        startProcessing();
     }
 
     /**
-     * Opens the camera and starts sending preview frames to the underlying detector.  The supplied
-     * surface holder is used for the preview so frames can be displayed to the user.
-     *
-     * @param surfaceHolder the surface holder to use for the preview frames
-     * @throws IOException if the supplied surface holder could not be used as the preview display
+     * Starts replaying the recorded frames in place of the camera's.
      */
-    public CameraSource start(SurfaceHolder surfaceHolder) throws IOException {
-        synchronized (mCameraLock) {
-            if (mCamera != null) {
-                return this;
-            }
+    private void startReplay() {
+        mPreviewSize = new Size(mReplay.getWidth(), mReplay.getHeight());
+        mRotation = mReplay.getRotation();
+        selectScanWindow();
+
+        mFrameSource = mReplay;
+        startFrameSource(mReplay.getWidth() * mReplay.getHeight() * 3 / 2);
+        startProcessing();
+    }
 
-            mCamera = createCamera();
-            mCamera.setPreviewDisplay(surfaceHolder);
-            mCamera.startPreview();
+    /**
+     * Hands the frame source a fresh set of preview buffers to fill, and starts it.  The buffers
+     * go first, so that a source paced in real time has one for its very first frame.
+     *
+     * @param imageSize the size in bytes of one frame
+     */
+    private void startFrameSource(int imageSize) {
+        // At least three frame buffers are needed for working with the camera (four by default):
+        //
+        //   one for the frame that is currently being executed upon in doing detection
+        //   one for the next pending frame to process immediately upon completing detection
+        //   the rest for the frames that the camera uses to populate future preview images
+        mBufferPool.allocate(mPreviewBufferCount, imageSize);
+        for (int i = 0; i < mBufferPool.size(); ++i) {
+            mFrameSource.addBuffer(mBufferPool.get(i).mBytes);
+        }
+        mFrameSource.start(mFrameProcessor);
+    }
 
-            mProcessingThread = new Thread(mFrameProcessor);
-            mFrameProcessor.setActive(true);
-            mProcessingThread.start();
+    /**
+     * Starts the processing thread, along with the detector workers if there are any.
+     */
+    private void startProcessing() {
+        mResolutionCascade.reset();
+        mSharpnessGate.reset();
+        if (mWorkerPool != null) {
+            mWorkerPool.start(mFrameProcessor);
         }
-        return this;
+
+        mProcessingThread = new Thread(mFrameProcessor);
+        mFrameProcessor.setActive(true);
+        mProcessingThread.start();
     }
 
     /**
      * Closes the camera and stops sending frames to the underlying frame detector.
      * <p/>
-     * This camera source may be restarted again by calling {@link #start()} or
-     * {@link #start(SurfaceHolder)}.
+     * This camera source may be restarted again by calling {@link #start(StartCallback)} or
+     * {@link #start(SurfaceHolder, StartCallback)}.  Returns at once; the camera is closed on the
+     * camera thread, and a start issued afterwards runs once it is.
      * <p/>
      * Call {@link #release()} instead to completely shut down this camera source and release the
      * resources of the underlying detector.
      */
+    @Override
     public void stop() {
-        synchronized (mCameraLock) {
-            mFrameProcessor.setActive(false);
-            if (mProcessingThread != null) {
-                try {
-                    // Wait for the thread to complete to ensure that we can't have multiple threads
-                    // executing at the same time (i.e., which would happen if we called start too
-                    // quickly after stop).
-                    mProcessingThread.join();
-                } catch (InterruptedException e) {
-                    Log.d(TAG, "Frame processing thread interrupted on release.");
-                }
-                mProcessingThread = null;
+        post(new Runnable() {
+            @Override
+            public void run() {
+                stopCamera();
             }
+        });
+    }
 
-            // clear the buffer to prevent oom exceptions
-            mBytesToByteBuffer.clear();
+    /**
+     * Has the camera stop drawing on a preview surface that is being destroyed, and waits a
+     * bounded time for it to.  The command goes ahead of those queued, so only a command already
+     * under way is waited out.  Does nothing once the camera thread has ended.
+     */
+    private void awaitPreviewDetached(final SurfaceHolder holder) {
+        FutureTask<Void> detach = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+                detachPreview(holder);
+            }
+        }, null);
+        if (!mCameraHandler.postAtFrontOfQueue(detach)) {
+            return;
+        }
+        try {
+            detach.get(PREVIEW_DETACH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Camera still busy as its preview surface is destroyed.");
+        } catch (InterruptedException e) {
+            Log.d(TAG, "Interrupted waiting for the camera thread.");
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Failed to detach camera preview.", e.getCause());
+        }
+    }
 
-            if (mCamera != null) {
-                mCamera.stopPreview();
-                mCamera.setPreviewCallbackWithBuffer(null);
-                try {
-                    // We want to be compatible back to Gingerbread, but SurfaceTexture
-                    // wasn't introduced until Honeycomb.  Since the interface cannot use a SurfaceTexture, if the
-                    // developer wants to display a preview we must use a SurfaceHolder.  If the developer doesn't
-                    // want to display a preview we use a SurfaceTexture if we are running at least Honeycomb.
+    /**
+     * Stops the preview if it is drawn on the given surface, which is going away.  The camera
+     * stays open, and delivers no frames until it is stopped and started again.  Runs on the
+     * camera thread.
+     */
+    private void detachPreview(SurfaceHolder holder) {
+        assertCameraThread();
+        if ((mCamera == null) || (mPreviewHolder != holder)) {
+            return;
+        }
+        mCamera.stopPreview();
+        mPreviewHolder = null;
+        try {
+            mCamera.setPreviewDisplay(null);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to clear camera preview: " + e);
+        }
+    }
+
+    /**
+     * Stops the processing thread, and closes the camera.  Runs on the camera thread.
+     */
+    private void stopCamera() {
+        assertCameraThread();
+        mFrameProcessor.setActive(false);
+        if (mProcessingThread != null) {
+            try {
+                // Wait for the thread to complete to ensure that we can't have multiple threads
+                // executing at the same time (i.e., which would happen if we called start too
+                // quickly after stop).
+                mProcessingThread.join();
+            } catch (InterruptedException e) {
+                Log.d(TAG, "Frame processing thread interrupted on release.");
+            }
+            mProcessingThread = null;
+        }
 
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-                        mCamera.setPreviewTexture(null);
+        if (mWorkerPool != null) {
+            mWorkerPool.stop();
+        }
+        mFpsGovernor = null;
 
-                    } else {
-                        mCamera.setPreviewDisplay(null);
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Failed to clear camera preview: " + e);
+        if (mFrameSource != null) {
+            mFrameSource.stop();
+            if (mFrameSource == mReplay) {
+                Log.i(TAG, mReplay.toString());
+            }
+            mFrameSource = null;
+        }
+
+        // clear the buffer to prevent oom exceptions
+        mBufferPool.clear();
+
+        if (mCamera != null) {
+            mCamera.stopPreview();
+            try {
+                // We want to be compatible back to Gingerbread, but SurfaceTexture
+                // wasn't introduced until Honeycomb.  Since the interface cannot use a SurfaceTexture, if the
+                // developer wants to display a preview we must use a SurfaceHolder.  If the developer doesn't
+                // want to display a preview we use a SurfaceTexture if we are running at least Honeycomb.
+
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                    mCamera.setPreviewTexture(null);
+
+                } else {
+                    mCamera.setPreviewDisplay(null);
                 }
-                mCamera.release();
-                mCamera = null;
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to clear camera preview: " + e);
             }
+            mCamera.release();
+            mCamera = null;
+            mPreviewHolder = null;
+            mMaxZoom = 0;
         }
+
+        // Any frame still pending belongs to the camera we just released.
+        mFrameProcessor.discardPendingFrame();
     }
 
     /**
      * Returns the preview size that is currently in use by the underlying camera.
      */
+    @Override
     public Size getPreviewSize() {
         return mPreviewSize;
     }
 
+    /**
+     * Returns the scan window that frames are cropped to before detection, in the coordinates of
+     * the upright preview frame, or null if detection runs on the whole frame.  The window's
+     * top-left corner is the offset to add to detected positions to map them back to the full
+     * frame.
+     */
+    @Override
+    @Nullable
+    public Rect getScanWindow() {
+        Rect window = mScanWindow;
+        return (window != null) ? new Rect(window) : null;
+    }
+
+    /**
+     * Returns the detection statistics of each resolution tier, from the lowest resolution up to
+     * full resolution.  See {@link Builder#setResolutionCascade(boolean)}.
+     */
+    public List<TierStats> getResolutionTierStats() {
+        return mResolutionCascade.getStats();
+    }
+
+    /**
+     * Returns the fraction of frames skipped as too blurred to detect on.  See
+     * {@link Builder#setSharpnessGate(boolean)}.
+     */
+    public float getSharpnessSkipRatio() {
+        return mSharpnessGate.getSkipRatio();
+    }
+
+    /**
+     * Returns a snapshot of frame counts and latencies through the pipeline, since this camera
+     * source was created.
+     */
+    public FrameMetrics getFrameMetrics() {
+        return mMetrics.snapshot();
+    }
+
+    /**
+     * Returns the number of times the camera was left without a free preview buffer, during
+     * which it drops preview frames.  If this keeps growing, consider a larger
+     * {@link Builder#setPreviewBufferCount(int)} on this device.
+     */
+    public int getPreviewBufferStarvationCount() {
+        return mBufferPool.getStarvationCount();
+    }
+
     /**
      * Returns the selected camera; one of {@link #CAMERA_FACING_BACK} or
      * {@link #CAMERA_FACING_FRONT}.
      */
+    @Override
     public int getCameraFacing() {
         return mFacing;
     }
 
+    /**
+     * Zooms in for a scale factor above 1, and out for one below 1.  The zoom level is worked out
+     * from the one last asked for, and set on the camera thread.
+     *
+     * @return the zoom level asked for, or 0 if the camera can't zoom or isn't open
+     */
+    @Override
     public int doZoom(float scale) {
-        synchronized (mCameraLock) {
-            if (mCamera == null) {
-                return 0;
-            }
-            int currentZoom = 0;
-            int maxZoom;
-            Camera.Parameters parameters = mCamera.getParameters();
-            if (!parameters.isZoomSupported()) {
-                Log.w(TAG, "Zoom is not supported on this device");
-                return currentZoom;
-            }
-            maxZoom = parameters.getMaxZoom();
+        int maxZoom = mMaxZoom;
+        if (maxZoom == 0) {
+            return 0;
+        }
 
-            currentZoom = parameters.getZoom() + 1;
-            float newZoom;
-            if (scale > 1) {
-                newZoom = currentZoom + scale * (maxZoom / 10);
-            } else {
-                newZoom = currentZoom * scale;
-            }
-            currentZoom = Math.round(newZoom) - 1;
-            if (currentZoom < 0) {
-                currentZoom = 0;
-            } else if (currentZoom > maxZoom) {
-                currentZoom = maxZoom;
-            }
-            parameters.setZoom(currentZoom);
-            mCamera.setParameters(parameters);
-            return currentZoom;
+        int currentZoom = mZoom + 1;
+        float newZoom;
+        if (scale > 1) {
+            newZoom = currentZoom + scale * (maxZoom / 10);
+        } else {
+            newZoom = currentZoom * scale;
         }
+        currentZoom = Math.round(newZoom) - 1;
+        if (currentZoom < 0) {
+            currentZoom = 0;
+        } else if (currentZoom > maxZoom) {
+            currentZoom = maxZoom;
+        }
+        mZoom = currentZoom;
+
+        final int zoom = currentZoom;
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera == null) {
+                    return;
+                }
+                Camera.Parameters parameters = mCamera.getParameters();
+                parameters.setZoom(zoom);
+                mCamera.setParameters(parameters);
+            }
+        });
+        return currentZoom;
     }
 
     /**
      * Initiates taking a picture, which happens asynchronously.  The camera source should have been
-     * activated previously with {@link #start()} or {@link #start(SurfaceHolder)}.  The camera
-     * preview is suspended while the picture is being taken, but will resume once picture taking is
-     * done.
+     * activated previously with {@link #start(StartCallback)} or
+     * {@link #start(SurfaceHolder, StartCallback)}.  The camera preview is suspended while the
+     * picture is being taken, but will resume once picture taking is done.  The callbacks run on
+     * the camera thread.
      *
      * @param shutter the callback for image capture moment, or null
      * @param jpeg    the callback for JPEG image data, or null
      */
-    public void takePicture(ShutterCallback shutter, PictureCallback jpeg) {
-        synchronized (mCameraLock) {
-            if (mCamera != null) {
-                PictureStartCallback startCallback = new PictureStartCallback();
-                startCallback.mDelegate = shutter;
-                PictureDoneCallback doneCallback = new PictureDoneCallback();
-                doneCallback.mDelegate = jpeg;
-                mCamera.takePicture(startCallback, null, null, doneCallback);
+    public void takePicture(final ShutterCallback shutter, final PictureCallback jpeg) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera != null) {
+                    PictureStartCallback startCallback = new PictureStartCallback();
+                    startCallback.mDelegate = shutter;
+                    PictureDoneCallback doneCallback = new PictureDoneCallback();
+                    doneCallback.mDelegate = jpeg;
+                    mCamera.takePicture(startCallback, null, null, doneCallback);
+                }
             }
-        }
+        });
     }
 
     /**
@@ -528,23 +1089,26 @@ public class CameraSource {
      * Sets the focus mode.
      *
      * @param mode the focus mode
-     * @return {@code true} if the focus mode is set, {@code false} otherwise
+     * @return a future of {@code true} if the focus mode is set, {@code false} otherwise
      * @see #getFocusMode()
      */
-    public boolean setFocusMode(@FocusMode String mode) {
-        synchronized (mCameraLock) {
-            if (mCamera != null && mode != null) {
-                Camera.Parameters parameters = mCamera.getParameters();
-                if (parameters.getSupportedFocusModes().contains(mode)) {
-                    parameters.setFocusMode(mode);
-                    mCamera.setParameters(parameters);
-                    mFocusMode = mode;
-                    return true;
+    public Future<Boolean> setFocusMode(@FocusMode final String mode) {
+        return submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                if (mCamera != null && mode != null) {
+                    Camera.Parameters parameters = mCamera.getParameters();
+                    if (parameters.getSupportedFocusModes().contains(mode)) {
+                        parameters.setFocusMode(mode);
+                        mCamera.setParameters(parameters);
+                        mFocusMode = mode;
+                        return true;
+                    }
                 }
-            }
 
-            return false;
-        }
+                return false;
+            }
+        });
     }
 
     /**
@@ -568,35 +1132,41 @@ public class CameraSource {
      * Sets the flash mode.
      *
      * @param mode flash mode.
-     * @return {@code true} if the flash mode is set, {@code false} otherwise
+     * @return a future of {@code true} if the flash mode is set, {@code false} otherwise
      * @see #getFlashMode()
      */
-    public boolean setFlashMode(@FlashMode String mode) {
-        synchronized (mCameraLock) {
-            if (mCamera != null && mode != null) {
-                Camera.Parameters parameters = mCamera.getParameters();
-                if (parameters.getSupportedFlashModes().contains(mode)) {
-                    parameters.setFlashMode(mode);
-                    mCamera.setParameters(parameters);
-                    mFlashMode = mode;
-                    return true;
+    public Future<Boolean> setFlashMode(@FlashMode final String mode) {
+        return submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                if (mCamera != null && mode != null) {
+                    Camera.Parameters parameters = mCamera.getParameters();
+                    List<String> flashModes = parameters.getSupportedFlashModes();
+                    // A camera without a flash supports no flash modes at all.
+                    if ((flashModes != null) && flashModes.contains(mode)) {
+                        parameters.setFlashMode(mode);
+                        mCamera.setParameters(parameters);
+                        mFlashMode = mode;
+                        return true;
+                    }
                 }
-            }
 
-            return false;
-        }
+                return false;
+            }
+        });
     }
 
     /**
      * Starts camera auto-focus and registers a callback function to run when
      * the camera is focused.  This method is only valid when preview is active
-     * (between {@link #start()} or {@link #start(SurfaceHolder)} and before {@link #stop()} or {@link #release()}).
+     * (between {@link #start(StartCallback)} or {@link #start(SurfaceHolder, StartCallback)} and
+     * before {@link #stop()} or {@link #release()}).
      * <p/>
      * <p>Callers should check
      * {@link #getFocusMode()} to determine if
      * this method should be called. If the camera does not support auto-focus,
      * it is a no-op and {@link AutoFocusCallback#onAutoFocus(boolean)}
-     * callback will be called immediately.
+     * callback will be called immediately.  The callback runs on the camera thread.
      * <p/>
      * <p>If the current flash mode is not
      * {@link Camera.Parameters#FLASH_MODE_OFF}, flash may be
@@ -605,17 +1175,20 @@ public class CameraSource {
      * @param cb the callback to run
      * @see #cancelAutoFocus()
      */
-    public void autoFocus(@Nullable AutoFocusCallback cb) {
-        synchronized (mCameraLock) {
-            if (mCamera != null) {
-                CameraAutoFocusCallback autoFocusCallback = null;
-                if (cb != null) {
-                    autoFocusCallback = new CameraAutoFocusCallback();
-                    autoFocusCallback.mDelegate = cb;
+    public void autoFocus(@Nullable final AutoFocusCallback cb) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera != null) {
+                    CameraAutoFocusCallback autoFocusCallback = null;
+                    if (cb != null) {
+                        autoFocusCallback = new CameraAutoFocusCallback();
+                        autoFocusCallback.mDelegate = cb;
+                    }
+                    mCamera.autoFocus(autoFocusCallback);
                 }
-                mCamera.autoFocus(autoFocusCallback);
             }
-        }
+        });
     }
 
     /**
@@ -627,35 +1200,41 @@ public class CameraSource {
      * @see #autoFocus(AutoFocusCallback)
      */
     public void cancelAutoFocus() {
-        synchronized (mCameraLock) {
-            if (mCamera != null) {
-                mCamera.cancelAutoFocus();
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera != null) {
+                    mCamera.cancelAutoFocus();
+                }
             }
-        }
+        });
     }
 
     /**
-     * Sets camera auto-focus move callback.
+     * Sets camera auto-focus move callback, which runs on the camera thread.
      *
      * @param cb the callback to run
      * @return {@code true} if the operation is supported (i.e. from Jelly Bean), {@code false} otherwise
      */
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
-    public boolean setAutoFocusMoveCallback(@Nullable AutoFocusMoveCallback cb) {
+    public boolean setAutoFocusMoveCallback(@Nullable final AutoFocusMoveCallback cb) {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
             return false;
         }
 
-        synchronized (mCameraLock) {
-            if (mCamera != null) {
-                CameraAutoFocusMoveCallback autoFocusMoveCallback = null;
-                if (cb != null) {
-                    autoFocusMoveCallback = new CameraAutoFocusMoveCallback();
-                    autoFocusMoveCallback.mDelegate = cb;
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera != null) {
+                    CameraAutoFocusMoveCallback autoFocusMoveCallback = null;
+                    if (cb != null) {
+                        autoFocusMoveCallback = new CameraAutoFocusMoveCallback();
+                        autoFocusMoveCallback.mDelegate = cb;
+                    }
+                    mCamera.setAutoFocusMoveCallback(autoFocusMoveCallback);
                 }
-                mCamera.setAutoFocusMoveCallback(autoFocusMoveCallback);
             }
-        }
+        });
 
         return true;
     }
@@ -670,6 +1249,43 @@ public class CameraSource {
     private CameraSource() {
     }
 
+    /**
+     * Queues a command on the camera thread.
+     *
+     * @return false if the camera thread has ended, after {@link #release()}, and the command
+     * was dropped
+     */
+    private boolean post(Runnable command) {
+        if (!mCameraHandler.post(command)) {
+            Log.w(TAG, "Camera source released, command dropped.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queues a command that has a result on the camera thread.  If the camera thread has ended,
+     * the command is dropped and its future cancelled.
+     */
+    private <V> Future<V> submit(Callable<V> command) {
+        FutureTask<V> task = new FutureTask<>(command);
+        if (!post(task)) {
+            task.cancel(false);
+        }
+        return task;
+    }
+
+    /**
+     * Fails in debug builds unless called on the camera thread, which camera commands and the
+     * camera's own callbacks must run on.
+     */
+    private void assertCameraThread() {
+        if (BuildConfig.DEBUG && (Looper.myLooper() != mCameraHandler.getLooper())) {
+            throw new IllegalStateException(
+                    "Not on the camera thread: " + Thread.currentThread().getName());
+        }
+    }
+
     /**
      * Wraps the camera1 shutter callback so that the deprecated API isn't exposed.
      */
@@ -696,10 +1312,9 @@ public class CameraSource {
             if (mDelegate != null) {
                 mDelegate.onPictureTaken(data);
             }
-            synchronized (mCameraLock) {
-                if (mCamera != null) {
-                    mCamera.startPreview();
-                }
+            // The camera delivers its callbacks on the camera thread, which opened it.
+            if (mCamera != null) {
+                mCamera.startPreview();
             }
         }
     }
@@ -734,47 +1349,124 @@ public class CameraSource {
     }
 
     /**
-     * Opens the camera and applies the user settings.
+     * Opens the camera and applies the user settings.  What the camera supports is taken from the
+     * profile cached by an earlier start if it still applies, and probed and cached otherwise.
      *
      * @throws RuntimeException if the method fails
      */
     @SuppressLint("InlinedApi")
     private Camera createCamera() {
-        int requestedCameraId = getIdForRequestedCamera(mFacing);
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+        int requestedFps = (int) (mRequestedFps * 1000.0f);
+        CameraProfile profile = null;
+        if (mProfileCacheEnabled) {
+            profile = readCameraProfile(requestedFps);
+        }
+        boolean cached = (profile != null);
+
+        int requestedCameraId = cached ? profile.getCameraId() : getIdForRequestedCamera(mFacing);
         if (requestedCameraId == -1) {
             throw new RuntimeException("Could not find requested camera.");
         }
         Camera camera = Camera.open(requestedCameraId);
+        long openedNanos = SystemClock.elapsedRealtimeNanos();
+
+        try {
+            Camera.Parameters parameters = camera.getParameters();
+            if (!cached) {
+                profile = probeCamera(parameters, requestedCameraId, requestedFps);
+                if (mProfileCacheEnabled) {
+                    writeCameraProfile(profile);
+                }
+            }
+            configureCamera(camera, parameters, profile);
+            camera.setParameters(parameters);
+        } catch (RuntimeException e) {
+            // The cached profile may no longer fit the camera; probe again next time.
+            if (cached) {
+                getCameraProfileFile().delete();
+            }
+            camera.release();
+            throw e;
+        }
+
+        long configuredNanos = SystemClock.elapsedRealtimeNanos();
+        Log.i(TAG, String.format(Locale.US,
+                "Camera opened in %.1f ms, and configured in %.1f ms %s.",
+                (openedNanos - startNanos) / 1e6f, (configuredNanos - openedNanos) / 1e6f,
+                cached ? "from the cached profile" : "by probing it"));
+
+        mFrameSource = new CameraFrameSource(camera);
+        startFrameSource(getPreviewBufferSize(mPreviewSize));
+
+        return camera;
+    }
 
-        SizePair sizePair = selectSizePair(camera, mRequestedPreviewWidth, mRequestedPreviewHeight);
+    /**
+     * Works out what to configure the camera with for the current request: the preview and
+     * picture size, the preview frame rate range, and the modes the camera supports.
+     *
+     * @throws RuntimeException if no suitable size or frame rate range is found
+     */
+    private CameraProfile probeCamera(Camera.Parameters parameters, int cameraId,
+                                      int requestedFps) {
+        CameraInfo cameraInfo = new CameraInfo();
+        Camera.getCameraInfo(cameraId, cameraInfo);
+        CameraProfile profile = new CameraProfile(Build.FINGERPRINT, cameraId, cameraInfo.facing,
+                cameraInfo.orientation, mRequestedPreviewWidth, mRequestedPreviewHeight,
+                requestedFps);
+
+        SizePair sizePair =
+                selectSizePair(parameters, mRequestedPreviewWidth, mRequestedPreviewHeight);
         if (sizePair == null) {
             throw new RuntimeException("Could not find suitable preview size.");
         }
+        Size previewSize = sizePair.previewSize();
         Size pictureSize = sizePair.pictureSize();
-        mPreviewSize = sizePair.previewSize();
-
-        int[] previewFpsRange = selectPreviewFpsRange(camera, mRequestedFps);
-        if (previewFpsRange == null) {
+        profile.setSizes(previewSize.getWidth(), previewSize.getHeight(),
+                (pictureSize != null) ? pictureSize.getWidth() : 0,
+                (pictureSize != null) ? pictureSize.getHeight() : 0);
+
+        // Each call parses the parameters anew, so the range is chosen by its position in the
+        // list that is kept.
+        List<int[]> previewFpsRanges = parameters.getSupportedPreviewFpsRange();
+        int previewFpsRangeIndex = selectPreviewFpsRange(previewFpsRanges, mRequestedFps);
+        if (previewFpsRangeIndex < 0) {
             throw new RuntimeException("Could not find suitable preview frames per second range.");
         }
+        profile.setFpsRanges(previewFpsRangeIndex, previewFpsRanges);
+        profile.setModes(parameters.getSupportedFocusModes(), parameters.getSupportedFlashModes());
+        return profile;
+    }
 
-        Camera.Parameters parameters = camera.getParameters();
-
-        if (pictureSize != null) {
-            parameters.setPictureSize(pictureSize.getWidth(), pictureSize.getHeight());
+    /**
+     * Sets the camera parameters for the user settings, checked against what the profile says
+     * the camera supports, without asking the camera again.
+     */
+    private void configureCamera(Camera camera, Camera.Parameters parameters,
+                                 CameraProfile profile) {
+        if (profile.hasPictureSize()) {
+            parameters.setPictureSize(profile.getPictureWidth(), profile.getPictureHeight());
         }
 
+        mPreviewSize = new Size(profile.getPreviewWidth(), profile.getPreviewHeight());
         parameters.setPreviewSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
+        int[] previewFpsRange = profile.getFpsRange();
         parameters.setPreviewFpsRange(
                 previewFpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
                 previewFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
         parameters.setPreviewFormat(ImageFormat.NV21);
 
-        setRotation(camera, parameters, requestedCameraId);
+        if (mFpsGovernorEnabled) {
+            mFpsGovernor = new FpsGovernor(profile.getSupportedFpsRanges(),
+                    profile.getFpsRangeIndex(), (mWorkerPool != null) ? mWorkerPool.size() : 1);
+        }
+
+        setRotation(camera, parameters, profile.getFacing(), profile.getOrientation());
+        selectScanWindow();
 
         if (mFocusMode != null) {
-            if (parameters.getSupportedFocusModes().contains(
-                    mFocusMode)) {
+            if (profile.getFocusModes().contains(mFocusMode)) {
                 parameters.setFocusMode(mFocusMode);
             } else {
                 Log.i(TAG, "Camera focus mode: " + mFocusMode + " is not supported on this device.");
@@ -785,33 +1477,54 @@ public class CameraSource {
         mFocusMode = parameters.getFocusMode();
 
         if (mFlashMode != null) {
-            if (parameters.getSupportedFlashModes() != null) {
-                if (parameters.getSupportedFlashModes().contains(
-                        mFlashMode)) {
-                    parameters.setFlashMode(mFlashMode);
-                } else {
-                    Log.i(TAG, "Camera flash mode: " + mFlashMode + " is not supported on this device.");
-                }
+            if (profile.getFlashModes().contains(mFlashMode)) {
+                parameters.setFlashMode(mFlashMode);
+            } else if (!profile.getFlashModes().isEmpty()) {
+                Log.i(TAG, "Camera flash mode: " + mFlashMode + " is not supported on this device.");
             }
         }
 
         // setting mFlashMode to the one set in the params
         mFlashMode = parameters.getFlashMode();
 
-        camera.setParameters(parameters);
+        if (parameters.isZoomSupported()) {
+            mZoom = parameters.getZoom();
+            mMaxZoom = parameters.getMaxZoom();
+        } else {
+            Log.w(TAG, "Zoom is not supported on this device");
+        }
+    }
 
-        // Four frame buffers are needed for working with the camera:
-        //
-        //   one for the frame that is currently being executed upon in doing detection
-        //   one for the next pending frame to process immediately upon completing detection
-        //   two for the frames that the camera uses to populate future preview images
-        camera.setPreviewCallbackWithBuffer(new CameraPreviewCallback());
-        camera.addCallbackBuffer(createPreviewBuffer(mPreviewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(mPreviewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(mPreviewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(mPreviewSize));
+    /**
+     * Returns the file the profile of the camera facing the requested way is cached in.
+     */
+    private File getCameraProfileFile() {
+        return new File(mContext.getCacheDir(), "camera_" + mFacing + ".profile");
+    }
 
-        return camera;
+    /**
+     * Returns the cached profile of the camera facing the requested way, or null if there is
+     * none that applies to this system and the current request.
+     */
+    private CameraProfile readCameraProfile(int requestedFps) {
+        try {
+            CameraProfile profile = CameraProfile.read(getCameraProfileFile());
+            if ((profile != null) && profile.matches(Build.FINGERPRINT, mFacing,
+                    mRequestedPreviewWidth, mRequestedPreviewHeight, requestedFps)) {
+                return profile;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read the cached camera profile.", e);
+        }
+        return null;
+    }
+
+    private void writeCameraProfile(CameraProfile profile) {
+        try {
+            profile.write(getCameraProfileFile());
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to cache the camera profile.", e);
+        }
     }
 
     /**
@@ -839,13 +1552,14 @@ public class CameraSource {
      * ratio.  On some hardware, if you would only set the preview size, you will get a distorted
      * image.
      *
-     * @param camera        the camera to select a preview size from
+     * @param parameters    the parameters of the camera to select a preview size from
      * @param desiredWidth  the desired width of the camera preview frames
      * @param desiredHeight the desired height of the camera preview frames
      * @return the selected preview and picture size pair
      */
-    private static SizePair selectSizePair(Camera camera, int desiredWidth, int desiredHeight) {
-        List<SizePair> validPreviewSizes = generateValidPreviewSizeList(camera);
+    private static SizePair selectSizePair(Camera.Parameters parameters, int desiredWidth,
+                                           int desiredHeight) {
+        List<SizePair> validPreviewSizes = generateValidPreviewSizeList(parameters);
 
         // The method for selecting the best size is to minimize the sum of the differences between
         // the desired values and the actual values for width and height.  This is certainly not the
@@ -903,8 +1617,7 @@ public class CameraSource {
      * set to a size that is the same aspect ratio as the preview size we choose.  Otherwise, the
      * preview images may be distorted on some devices.
      */
-    private static List<SizePair> generateValidPreviewSizeList(Camera camera) {
-        Camera.Parameters parameters = camera.getParameters();
+    private static List<SizePair> generateValidPreviewSizeList(Camera.Parameters parameters) {
         List<android.hardware.Camera.Size> supportedPreviewSizes =
                 parameters.getSupportedPreviewSizes();
         List<android.hardware.Camera.Size> supportedPictureSizes =
@@ -939,15 +1652,43 @@ public class CameraSource {
         return validPreviewSizes;
     }
 
+    /**
+     * Switches the running camera to another preview frame rate range.  Called from detector
+     * threads; the change itself is queued on the camera thread.
+     */
+    private void changePreviewFpsRange(final int[] range) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera == null) {
+                    return;
+                }
+
+                try {
+                    Camera.Parameters parameters = mCamera.getParameters();
+                    parameters.setPreviewFpsRange(
+                            range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+                            range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+                    mCamera.setParameters(parameters);
+                    Log.i(TAG, "Preview frame rate range changed to "
+                            + range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX] / 1000.0f + "-"
+                            + range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000.0f);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Unable to change preview frame rate range.", e);
+                }
+            }
+        });
+    }
+
     /**
      * Selects the most suitable preview frames per second range, given the desired frames per
      * second.
      *
-     * @param camera            the camera to select a frames per second range from
-     * @param desiredPreviewFps the desired frames per second for the camera preview frames
-     * @return the selected preview frames per second range
+     * @param previewFpsRangeList the frames per second ranges the camera supports
+     * @param desiredPreviewFps   the desired frames per second for the camera preview frames
+     * @return the index of the selected preview frames per second range, or -1 if there is none
      */
-    private int[] selectPreviewFpsRange(Camera camera, float desiredPreviewFps) {
+    private int selectPreviewFpsRange(List<int[]> previewFpsRangeList, float desiredPreviewFps) {
         // The camera API uses integers scaled by a factor of 1000 instead of floating-point frame
         // rates.
         int desiredPreviewFpsScaled = (int) (desiredPreviewFps * 1000.0f);
@@ -957,29 +1698,33 @@ public class CameraSource {
         // that the desired value is outside of, but this is often preferred.  For example, if the
         // desired frame rate is 29.97, the range (30, 30) is probably more desirable than the
         // range (15, 30).
-        int[] selectedFpsRange = null;
+        int selectedFpsRangeIndex = -1;
         int minDiff = Integer.MAX_VALUE;
-        List<int[]> previewFpsRangeList = camera.getParameters().getSupportedPreviewFpsRange();
-        for (int[] range : previewFpsRangeList) {
+        for (int i = 0; i < previewFpsRangeList.size(); ++i) {
+            int[] range = previewFpsRangeList.get(i);
             int deltaMin = desiredPreviewFpsScaled - range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX];
             int deltaMax = desiredPreviewFpsScaled - range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
             int diff = Math.abs(deltaMin) + Math.abs(deltaMax);
             if (diff < minDiff) {
-                selectedFpsRange = range;
+                selectedFpsRangeIndex = i;
                 minDiff = diff;
             }
         }
-        return selectedFpsRange;
+        return selectedFpsRangeIndex;
     }
 
     /**
-     * Calculates the correct rotation for the given camera id and sets the rotation in the
-     * parameters.  It also sets the camera's display orientation and rotation.
+     * Calculates the correct rotation for a camera facing the given way and mounted at the given
+     * orientation, and sets the rotation in the parameters.  It also sets the camera's display
+     * orientation and rotation.  The rotation depends on how the device is held, so it is worked
+     * out at every start.
      *
-     * @param parameters the camera parameters for which to set the rotation
-     * @param cameraId   the camera id to set rotation based on
+     * @param parameters  the camera parameters for which to set the rotation
+     * @param facing      which way the camera faces
+     * @param orientation the orientation the camera is mounted at
      */
-    private void setRotation(Camera camera, Camera.Parameters parameters, int cameraId) {
+    private void setRotation(Camera camera, Camera.Parameters parameters, int facing,
+                             int orientation) {
         WindowManager windowManager =
                 (WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE);
         int degrees = 0;
@@ -1001,16 +1746,13 @@ public class CameraSource {
                 Log.e(TAG, "Bad rotation value: " + rotation);
         }
 
-        CameraInfo cameraInfo = new CameraInfo();
-        Camera.getCameraInfo(cameraId, cameraInfo);
-
         int angle;
         int displayAngle;
-        if (cameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-            angle = (cameraInfo.orientation + degrees) % 360;
+        if (facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+            angle = (orientation + degrees) % 360;
             displayAngle = (360 - angle) % 360; // compensate for it being mirrored
         } else {  // back-facing
-            angle = (cameraInfo.orientation - degrees + 360) % 360;
+            angle = (orientation - degrees + 360) % 360;
             displayAngle = angle;
         }
 
@@ -1022,48 +1764,63 @@ public class CameraSource {
     }
 
     /**
-     * Creates one buffer for the camera preview callback.  The size of the buffer is based off of
-     * the camera preview size and the format of the camera image.
+     * Works out the crop window in camera image coordinates for the requested scan window, which
+     * is given in upright terms.  The window is centered, and its margins are rounded down to even
+     * numbers so that it stays aligned to the 2x2 chrominance blocks of the NV21 image.  Since the
+     * margins are the same on both sides, the window lands in the same place whichever way the
+     * image is rotated.
+     */
+    private void selectScanWindow() {
+        if (mScanWindowWidth == 0) {
+            mScanWindow = null;
+            return;
+        }
+
+        int width = mPreviewSize.getWidth();
+        int height = mPreviewSize.getHeight();
+
+        // The camera image is rotated a quarter turn from upright in portrait.
+        boolean sideways = (mRotation % 2) == 1;
+        int marginX = getScanWindowMargin(width, sideways ? mScanWindowHeight : mScanWindowWidth);
+        int marginY = getScanWindowMargin(height, sideways ? mScanWindowWidth : mScanWindowHeight);
+
+        mCropLeft = marginX;
+        mCropTop = marginY;
+        mCropWidth = width - 2 * marginX;
+        mCropHeight = height - 2 * marginY;
+
+        if (sideways) {
+            mScanWindow = new Rect(marginY, marginX, height - marginY, width - marginX);
+        } else {
+            mScanWindow = new Rect(marginX, marginY, width - marginX, height - marginY);
+        }
+    }
+
+    private static int getScanWindowMargin(int size, float fraction) {
+        return ((int) (size * (1 - fraction) / 2)) & ~1;
+    }
+
+    /**
+     * Calculates the size of one buffer for the camera preview callback.  The size of the buffer
+     * is based off of the camera preview size and the format of the camera image.
      *
-     * @return a new preview buffer of the appropriate size for the current camera settings
+     * @return the preview buffer size in bytes for the current camera settings
      */
-    private byte[] createPreviewBuffer(Size previewSize) {
+    private static int getPreviewBufferSize(Size previewSize) {
         int bitsPerPixel = ImageFormat.getBitsPerPixel(ImageFormat.NV21);
         long sizeInBits = previewSize.getHeight() * previewSize.getWidth() * bitsPerPixel;
-        int bufferSize = (int) Math.ceil(sizeInBits / 8.0d) + 1;
 
         //
         // NOTICE: This code only works when using play services v. 8.1 or higher.
         //
 
-        // Creating the byte array this way and wrapping it, as opposed to using .allocate(),
-        // should guarantee that there will be an array to work with.
-        byte[] byteArray = new byte[bufferSize];
-        ByteBuffer buffer = ByteBuffer.wrap(byteArray);
-        if (!buffer.hasArray() || (buffer.array() != byteArray)) {
-            // I don't think that this will ever happen.  But if it does, then we wouldn't be
-            // passing the preview content to the underlying detector later.
-            throw new IllegalStateException("Failed to create valid buffer for camera source.");
-        }
-
-        mBytesToByteBuffer.put(byteArray, buffer);
-        return byteArray;
+        return (int) Math.ceil(sizeInBits / 8.0d) + 1;
     }
 
     //==============================================================================================
     // Frame processing
     //==============================================================================================
 
-    /**
-     * Called when the camera has a new preview frame.
-     */
-    private class CameraPreviewCallback implements Camera.PreviewCallback {
-        @Override
-        public void onPreviewFrame(byte[] data, Camera camera) {
-            mFrameProcessor.setNextFrame(data, camera);
-        }
-    }
-
     /**
      * This runnable controls access to the underlying receiver, calling it to process frames when
      * available from the camera.  This is designed to run detection on frames as fast as possible
@@ -1074,18 +1831,21 @@ public class CameraSource {
      * associated processing are done for the previous frame, detection on the mostly recently
      * received frame will immediately start on the same thread.
      */
-    private class FrameProcessingRunnable implements Runnable {
+    private class FrameProcessingRunnable
+            implements Runnable, FrameSource.Receiver, DetectorWorkerPool.FrameCallback {
         private Detector<?> mDetector;
         private long mStartTimeMillis = SystemClock.elapsedRealtime();
 
-        // This lock guards all of the member variables below.
-        private final Object mLock = new Object();
-        private boolean mActive = true;
+        // Latest-frame-wins slot for the new frame awaiting processing.  The frame source
+        // offers frames to it and this runnable takes them, without either side taking a lock.
+        private final FrameHandoff<PreviewBuffer> mPendingFrame = new FrameHandoff<>();
 
-        // These pending variables hold the state associated with the new frame awaiting processing.
-        private long mPendingTimeMillis;
+        // Only touched by the frame source's thread.
         private int mPendingFrameId = 0;
-        private ByteBuffer mPendingFrameData;
+
+        // Number of items detected in the frame currently being detected on, or -1 if detection
+        // hasn't delivered any.  Only touched on the processing thread, when there are no workers.
+        private int mDetectionCount;
 
         FrameProcessingRunnable(Detector<?> detector) {
             mDetector = detector;
@@ -1098,7 +1858,15 @@ public class CameraSource {
         @SuppressLint("Assert")
         void release() {
             assert (mProcessingThread.getState() == State.TERMINATED);
-            mDetector.release();
+            if (mWorkerPool != null) {
+                // The pool owns the supplied detector as its first worker.
+                mWorkerPool.release();
+            } else {
+                mDetector.release();
+            }
+            if (mFallbackDetector != null) {
+                mFallbackDetector.release();
+            }
             mDetector = null;
         }
 
@@ -1106,48 +1874,56 @@ public class CameraSource {
          * Marks the runnable as active/not active.  Signals any blocked threads to continue.
          */
         void setActive(boolean active) {
-            synchronized (mLock) {
-                mActive = active;
-                mLock.notifyAll();
+            mPendingFrame.setActive(active);
+            if (!active && (mWorkerPool != null)) {
+                mWorkerPool.deactivate();
             }
         }
 
         /**
-         * Sets the frame data received from the camera.  This adds the previous unused frame buffer
-         * (if present) back to the camera, and keeps a pending reference to the frame data for
-         * future use.
+         * Drops the pending frame, if any, without returning its buffer to the camera.  This is
+         * only safe to do once the camera that owned the buffer has been released.
          */
-        void setNextFrame(byte[] data, Camera camera) {
-            synchronized (mLock) {
-                if (mPendingFrameData != null) {
-                    camera.addCallbackBuffer(mPendingFrameData.array());
-                    mPendingFrameData = null;
-                }
-
-                if (!mBytesToByteBuffer.containsKey(data)) {
-                    Log.d(TAG,
-                        "Skipping frame.  Could not find ByteBuffer associated with the image " +
-                        "data from the camera.");
-                    return;
-                }
+        void discardPendingFrame() {
+            mPendingFrame.poll();
+        }
 
-                // Timestamp and frame ID are maintained here, which will give downstream code some
-                // idea of the timing of frames received and when frames were dropped along the way.
-                mPendingTimeMillis = SystemClock.elapsedRealtime() - mStartTimeMillis;
-                mPendingFrameId++;
-                mPendingFrameData = mBytesToByteBuffer.get(data);
+        /**
+         * Sets the frame data received from the frame source.  This keeps a pending reference to
+         * the frame data for future use, and adds the previous unused frame buffer (if present)
+         * back to the frame source.
+         */
+        @Override
+        public void onFrame(byte[] data) {
+            PreviewBuffer frame = mBufferPool.find(data);
+            if (frame == null || !mBufferPool.moveToPending(frame)) {
+                mMetrics.onUnknownBuffer();
+                Log.d(TAG,
+                    "Skipping frame.  Could not find ByteBuffer associated with the image " +
+                    "data from the camera.");
+                return;
+            }
 
-                // Notify the processor thread if it is waiting on the next frame (see below).
-                mLock.notifyAll();
+            // Timestamp and frame ID are maintained here, which will give downstream code some
+            // idea of the timing of frames received and when frames were dropped along the way.
+            frame.mTimeMillis = SystemClock.elapsedRealtime() - mStartTimeMillis;
+            frame.mFrameId = ++mPendingFrameId;
+            mMetrics.onFrameReceived(frame);
+
+            // Publishing the frame also wakes the processor thread if it is waiting on the next
+            // frame (see below).
+            PreviewBuffer displaced = mPendingFrame.offer(frame);
+            if (displaced != null) {
+                mMetrics.onFrameOverwritten();
+                returnBuffer(displaced);
             }
         }
 
         /**
          * As long as the processing thread is active, this executes detection on frames
          * continuously.  The next pending frame is either immediately available or hasn't been
-         * received yet.  Once it is available, we transfer the frame info to local variables and
-         * run detection on that frame.  It immediately loops back for the next frame without
-         * pausing.
+         * received yet.  Once it is available, we take ownership of the frame and run detection
+         * on it.  It immediately loops back for the next frame without pausing.
          * <p/>
          * If detection takes longer than the time in between new frames from the camera, this will
          * mean that this loop will run without ever waiting on a frame, avoiding any context
@@ -1159,56 +1935,155 @@ public class CameraSource {
         @Override
         public void run() {
             Frame outputFrame;
-            ByteBuffer data;
+            PreviewBuffer frame;
 
             while (true) {
-                synchronized (mLock) {
-                    while (mActive && (mPendingFrameData == null)) {
-                        try {
-                            // Wait for the next frame to be received from the camera, since we
-                            // don't have it yet.
-                            mLock.wait();
-                        } catch (InterruptedException e) {
-                            Log.d(TAG, "Frame processing loop terminated.", e);
-                            return;
-                        }
-                    }
+                // With detector workers, wait for one of them to be free before taking the next
+                // frame, so that newer frames can keep replacing the pending one in the meantime.
+                if ((mWorkerPool != null) && !mWorkerPool.awaitIdleWorker()) {
+                    Log.d(TAG, "Frame processing loop terminated.");
+                    return;
+                }
 
-                    if (!mActive) {
-                        // Exit the loop once this camera source is stopped or released.  We check
-                        // this here, immediately after the wait() above, to handle the case where
-                        // setActive(false) had been called, triggering the termination of this
-                        // loop.
-                        return;
-                    }
+                // Wait for the next frame to be received from the camera, if we don't have it
+                // yet.  Taking the frame clears the pending slot, which ensures that this buffer
+                // isn't recycled back to the camera before we are done using that data.
+                frame = mPendingFrame.take();
 
-                    outputFrame = new Frame.Builder()
-                            .setImageData(mPendingFrameData, mPreviewSize.getWidth(),
-                                    mPreviewSize.getHeight(), ImageFormat.NV21)
-                            .setId(mPendingFrameId)
-                            .setTimestampMillis(mPendingTimeMillis)
-                            .setRotation(mRotation)
-                            .build();
-
-                    // Hold onto the frame data locally, so that we can use this for detection
-                    // below.  We need to clear mPendingFrameData to ensure that this buffer isn't
-                    // recycled back to the camera before we are done using that data.
-                    data = mPendingFrameData;
-                    mPendingFrameData = null;
+                if (frame == null) {
+                    // Exit the loop once this camera source is stopped or released, or the
+                    // thread is interrupted.
+                    Log.d(TAG, "Frame processing loop terminated.");
+                    return;
                 }
 
-                // The code below needs to run outside of synchronization, because this will allow
-                // the camera to add pending frame(s) while we are running detection on the current
+                mMetrics.onFrameDequeued(frame);
+
+                if (!mBufferPool.moveToDetector(frame)) {
+                    Log.w(TAG, "Skipping frame.  Pending buffer is no longer owned by the pool.");
+                    continue;
+                }
+
+                int width = mPreviewSize.getWidth();
+                int height = mPreviewSize.getHeight();
+                if (mScanWindow != null) {
+                    // The frame is cropped in place, since the buffer is ours until detection
+                    // on it is done.
+                    Nv21.crop(frame.mBytes, width, height,
+                            mCropLeft, mCropTop, mCropWidth, mCropHeight);
+                    width = mCropWidth;
+                    height = mCropHeight;
+                }
+
+                if (mSharpnessGateEnabled && !mSharpnessGate.accept(frame.mBytes, width, height)) {
+                    // Too blurred to be worth a detector call.  The buffer goes straight back to
+                    // the camera, and a reserved worker stays reserved for the next frame.
+                    onFrameDone(frame);
+                    continue;
+                }
+
+                frame.mDownsampling = mResolutionCascade.getDownsampling();
+                if (frame.mDownsampling > 1) {
+                    Nv21.downsampleLuma(frame.mBytes, width, height, frame.mDownsampling);
+                    width = Nv21.downsampledSize(width, frame.mDownsampling);
+                    height = Nv21.downsampledSize(height, frame.mDownsampling);
+                }
+
+                outputFrame = new Frame.Builder()
+                        .setImageData(frame.mData, width, height, ImageFormat.NV21)
+                        .setId(frame.mFrameId)
+                        .setTimestampMillis(frame.mTimeMillis)
+                        .setRotation(mRotation)
+                        .build();
+
+                if (mWorkerPool != null) {
+                    // The worker hands the buffer back through onFrameDone once it is done.
+                    mWorkerPool.submit(outputFrame, frame);
+                    continue;
+                }
+
+                // Detection runs without holding anything the camera needs, which allows the
+                // camera to add pending frame(s) while we are running detection on the current
                 // frame.
 
+                mDetectionCount = -1;
+                long start = System.nanoTime();
                 try {
                     mDetector.receiveFrame(outputFrame);
                 } catch (Throwable t) {
                     Log.e(TAG, "Exception thrown from receiver.", t);
+                }
+
+                try {
+                    onFrameDetected(frame, mDetectionCount, System.nanoTime() - start);
                 } finally {
-                    mCamera.addCallbackBuffer(data.array());
+                    onFrameDone(frame);
+                }
+            }
+        }
+
+        /**
+         * Records the latency of a frame, and feeds the outcome of detection on it to the
+         * resolution cascade and the frame rate governor.
+         */
+        @Override
+        public void onFrameDetected(PreviewBuffer frame, int detectionCount, long detectNanos) {
+            mMetrics.onFrameDetected(frame);
+
+            FpsGovernor governor = mFpsGovernor;
+            if (governor != null) {
+                int[] range = governor.record(detectNanos, mMetrics.getReceivedCount(),
+                        mMetrics.getOverwrittenCount(), System.nanoTime());
+                if (range != null) {
+                    changePreviewFpsRange(range);
                 }
             }
+            if (detectionCount >= 0) {
+                mResolutionCascade.record(frame.mDownsampling, detectionCount > 0, detectNanos);
+            }
+        }
+
+        /**
+         * Returns the buffer of a frame that detection has completed on back to the camera.
+         */
+        @Override
+        public void onFrameDone(PreviewBuffer frame) {
+            returnBuffer(frame);
+        }
+
+        /**
+         * Hands a buffer back to the frame source to fill again, unless the frame source has
+         * been stopped since.
+         */
+        private void returnBuffer(PreviewBuffer frame) {
+            FrameSource frameSource = mFrameSource;
+            if (mBufferPool.returnToCamera(frame) && (frameSource != null)) {
+                frameSource.addBuffer(frame.mBytes);
+            }
+        }
+    }
+
+    /**
+     * Passes detections on to the processor supplied to the builder, noting how many items were
+     * detected in the frame for {@link FrameProcessingRunnable}.  The detector calls it on the
+     * processing thread, from within receiveFrame.
+     */
+    private class ObservingProcessor<T> implements Detector.Processor<T> {
+        private final Detector.Processor<T> mDelegate;
+
+        ObservingProcessor(Detector.Processor<T> delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public void receiveDetections(Detector.Detections<T> detections) {
+            mFrameProcessor.mDetectionCount = detections.getDetectedItems().size();
+            mDelegate.receiveDetections(detections);
+        }
+
+        @Override
+        public void release() {
+            mDelegate.release();
         }
     }
 }
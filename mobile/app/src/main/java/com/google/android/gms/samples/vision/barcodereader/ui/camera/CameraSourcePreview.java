@@ -29,8 +29,6 @@ import android.view.ViewGroup;
 
 import com.google.android.gms.common.images.Size;
 
-import java.io.IOException;
-
 public class CameraSourcePreview extends ViewGroup {
     private static final String TAG = "CameraSourcePreview";
 
@@ -38,7 +36,7 @@ public class CameraSourcePreview extends ViewGroup {
     private SurfaceView mSurfaceView;
     private boolean mStartRequested;
     private boolean mSurfaceAvailable;
-    private CameraSource mCameraSource;
+    private ScanCameraSource mCameraSource;
 
     private GraphicOverlay mOverlay;
 
@@ -54,7 +52,7 @@ public class CameraSourcePreview extends ViewGroup {
     }
 
     @RequiresPermission(Manifest.permission.CAMERA)
-    public void start(CameraSource cameraSource) throws IOException, SecurityException {
+    public void start(ScanCameraSource cameraSource) throws SecurityException {
         if (cameraSource == null) {
             stop();
         }
@@ -68,7 +66,7 @@ public class CameraSourcePreview extends ViewGroup {
     }
 
     @RequiresPermission(Manifest.permission.CAMERA)
-    public void start(CameraSource cameraSource, GraphicOverlay overlay) throws IOException, SecurityException {
+    public void start(ScanCameraSource cameraSource, GraphicOverlay overlay) throws SecurityException {
         mOverlay = overlay;
         start(cameraSource);
     }
@@ -87,26 +85,48 @@ public class CameraSourcePreview extends ViewGroup {
     }
 
     @RequiresPermission(Manifest.permission.CAMERA)
-    private void startIfReady() throws IOException, SecurityException {
+    private void startIfReady() throws SecurityException {
         if (mStartRequested && mSurfaceAvailable) {
-            mCameraSource.start(mSurfaceView.getHolder());
-            if (mOverlay != null) {
-                Size size = mCameraSource.getPreviewSize();
-                int min = Math.min(size.getWidth(), size.getHeight());
-                int max = Math.max(size.getWidth(), size.getHeight());
-                if (isPortraitMode()) {
-                    // Swap width and height sizes when in portrait, since it will be rotated by
-                    // 90 degrees
-                    mOverlay.setCameraInfo(min, max, mCameraSource.getCameraFacing());
-                } else {
-                    mOverlay.setCameraInfo(max, min, mCameraSource.getCameraFacing());
+            final ScanCameraSource cameraSource = mCameraSource;
+            cameraSource.start(mSurfaceView.getHolder(), new ScanCameraSource.StartCallback() {
+                @Override
+                public void onStarted() {
+                    onCameraStarted(cameraSource);
                 }
-                mOverlay.clear();
-            }
+
+                @Override
+                public void onStartFailed(Exception e) {
+                    Log.e(TAG, "Could not start camera source.", e);
+                }
+            });
             mStartRequested = false;
         }
     }
 
+    /**
+     * Lays the preview out for the size the camera turned out to use, and tells the overlay.
+     */
+    private void onCameraStarted(ScanCameraSource cameraSource) {
+        if (cameraSource != mCameraSource) {
+            return;
+        }
+        requestLayout();
+        if (mOverlay != null) {
+            Size size = cameraSource.getPreviewSize();
+            int min = Math.min(size.getWidth(), size.getHeight());
+            int max = Math.max(size.getWidth(), size.getHeight());
+            if (isPortraitMode()) {
+                // Swap width and height sizes when in portrait, since it will be rotated by
+                // 90 degrees
+                mOverlay.setCameraInfo(min, max, cameraSource.getCameraFacing());
+            } else {
+                mOverlay.setCameraInfo(max, min, cameraSource.getCameraFacing());
+            }
+            mOverlay.setScanWindow(cameraSource.getScanWindow());
+            mOverlay.clear();
+        }
+    }
+
     private class SurfaceCallback implements SurfaceHolder.Callback {
         @Override
         public void surfaceCreated(SurfaceHolder surface) {
@@ -115,8 +135,6 @@ public class CameraSourcePreview extends ViewGroup {
                 startIfReady();
             } catch (SecurityException se) {
                 Log.e(TAG,"Do not have permission to start the camera", se);
-            } catch (IOException e) {
-                Log.e(TAG, "Could not start camera source.", e);
             }
         }
 
@@ -171,8 +189,6 @@ public class CameraSourcePreview extends ViewGroup {
             startIfReady();
         } catch (SecurityException se) {
             Log.e(TAG,"Do not have permission to start the camera", se);
-        } catch (IOException e) {
-            Log.e(TAG, "Could not start camera source.", e);
         }
     }
 
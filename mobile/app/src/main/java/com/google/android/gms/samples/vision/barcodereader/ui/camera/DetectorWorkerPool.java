@@ -0,0 +1,345 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import android.util.Log;
+
+import com.google.android.gms.samples.vision.barcodereader.ui.camera.PreviewBufferPool.PreviewBuffer;
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs detection on consecutive frames in parallel, on one thread per detector.
+ * <p/>
+ * The frame processing thread acts as the dispatcher: it waits for an idle worker with
+ * {@link #awaitIdleWorker()}, takes the latest pending frame, and hands it over with
+ * {@link #submit(Frame, PreviewBuffer)}.  Waiting for a worker before taking the frame keeps the
+ * camera's latest-frame-wins behavior intact while every worker is busy.
+ * <p/>
+ * Each worker has its own detector, since a single detector serializes calls internally.  The
+ * detections of each frame are collected and delivered to the shared processor in the order the
+ * frames were dispatched, which is the order of their frame IDs, so that tracking downstream sees
+ * the same sequence it would from a single detector.  Delivery is serialized, so the processor is
+ * never called concurrently, and it happens outside the pool's lock: whichever worker finds the
+ * next result in order ready delivers it, along with any that follow, while the other workers
+ * carry on detecting.
+ */
+final class DetectorWorkerPool<T> {
+    private static final String TAG = "DetectorWorkerPool";
+
+    /**
+     * Called on a worker thread as detection on a frame completes.
+     */
+    interface FrameCallback {
+        /**
+         * Reports the outcome of detection on a frame, before its buffer is recycled.
+         *
+         * @param detectionCount the number of items detected, or -1 if detection failed
+         * @param detectNanos    how long detection took
+         */
+        void onFrameDetected(PreviewBuffer buffer, int detectionCount, long detectNanos);
+
+        /**
+         * Called once the buffer of a frame is no longer needed, so that it can be recycled.
+         */
+        void onFrameDone(PreviewBuffer buffer);
+    }
+
+    private final List<Worker> mWorkers;
+    private final Detector.Processor<T> mProcessor;
+    private FrameCallback mFrameCallback;
+
+    // This lock guards all of the member variables below.
+    private final Object mLock = new Object();
+    private boolean mActive;
+    private final ArrayDeque<Worker> mIdleWorkers;
+    private Worker mReservedWorker;
+
+    // Results of dispatched frames, indexed by dispatch sequence number modulo the window size.
+    // Frames are dispatched only while fewer than a window's worth of results are outstanding.
+    private final Detector.Detections<T>[] mResults;
+    private final boolean[] mCompleted;
+    private long mNextSequence;
+    private long mNextDelivery;
+
+    // Whether a worker is delivering results, in which case it also delivers any that complete
+    // meanwhile.
+    private boolean mDelivering;
+
+    /**
+     * Creates a pool with one worker per detector.  The processor of each detector is replaced,
+     * and all detections are delivered to the supplied processor instead.
+     */
+    @SuppressWarnings("unchecked")
+    DetectorWorkerPool(List<Detector<T>> detectors, Detector.Processor<T> processor) {
+        if (detectors.isEmpty()) {
+            throw new IllegalArgumentException("No detectors supplied.");
+        }
+
+        mProcessor = processor;
+        mWorkers = new ArrayList<>(detectors.size());
+        mIdleWorkers = new ArrayDeque<>(detectors.size());
+        for (Detector<T> detector : detectors) {
+            mWorkers.add(new Worker(detector));
+        }
+
+        int window = detectors.size() * 2;
+        mResults = new Detector.Detections[window];
+        mCompleted = new boolean[window];
+    }
+
+    /**
+     * Returns the number of workers in the pool.
+     */
+    int size() {
+        return mWorkers.size();
+    }
+
+    /**
+     * Starts the worker threads.
+     *
+     * @param callback called on a worker thread once detection on a frame has completed
+     */
+    void start(FrameCallback callback) {
+        synchronized (mLock) {
+            mFrameCallback = callback;
+            mActive = true;
+            mIdleWorkers.clear();
+            mReservedWorker = null;
+            Arrays.fill(mResults, null);
+            Arrays.fill(mCompleted, false);
+            mNextSequence = 0;
+            mNextDelivery = 0;
+            mDelivering = false;
+
+            for (Worker worker : mWorkers) {
+                mIdleWorkers.add(worker);
+                worker.start();
+            }
+        }
+    }
+
+    /**
+     * Marks the pool as inactive, and wakes the dispatcher if it is waiting on a worker.  The
+     * workers keep running until {@link #stop()} is called.
+     */
+    void deactivate() {
+        synchronized (mLock) {
+            mActive = false;
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops the worker threads and waits for them to finish the frames they are working on.  The
+     * dispatcher must have stopped submitting frames before this is called.
+     */
+    void stop() {
+        deactivate();
+        for (Worker worker : mWorkers) {
+            worker.stop();
+        }
+    }
+
+    /**
+     * Releases the detectors of all workers, along with the processor.  This is only safe to do
+     * after {@link #stop()}.
+     */
+    void release() {
+        for (Worker worker : mWorkers) {
+            worker.mDetector.release();
+        }
+        mProcessor.release();
+    }
+
+    /**
+     * Waits until a worker is idle and reserves it for the next call to
+     * {@link #submit(Frame, PreviewBuffer)}.  Only called from the dispatcher.
+     *
+     * @return false if the pool was deactivated or the thread interrupted while waiting
+     */
+    boolean awaitIdleWorker() {
+        synchronized (mLock) {
+            while (mActive && (mReservedWorker == null)) {
+                if (!mIdleWorkers.isEmpty() && (mNextSequence - mNextDelivery < mResults.length)) {
+                    mReservedWorker = mIdleWorkers.poll();
+                    break;
+                }
+
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            return mActive;
+        }
+    }
+
+    /**
+     * Hands a frame to the worker reserved by {@link #awaitIdleWorker()}.  Only called from the
+     * dispatcher.
+     */
+    void submit(Frame frame, PreviewBuffer buffer) {
+        Worker worker;
+        long sequence;
+        synchronized (mLock) {
+            worker = mReservedWorker;
+            mReservedWorker = null;
+            sequence = mNextSequence++;
+        }
+
+        worker.mFrame = frame;
+        worker.mBuffer = buffer;
+        worker.mSequence = sequence;
+
+        // The worker is idle, so its slot is empty and nothing is displaced.
+        worker.mJobs.offer(worker);
+    }
+
+    /**
+     * Records the detections of a dispatched frame, puts the worker back in the idle queue, and
+     * delivers all results that are now in order unless another worker is already delivering.
+     * The processor is called without holding the lock, so that a slow processor doesn't hold up
+     * the other workers and the dispatcher, and so that its callbacks can't deadlock against it.
+     */
+    private void complete(Worker worker, long sequence, Detector.Detections<T> detections) {
+        synchronized (mLock) {
+            int slot = (int) (sequence % mResults.length);
+            mResults[slot] = detections;
+            mCompleted[slot] = true;
+
+            mIdleWorkers.add(worker);
+            mLock.notifyAll();
+
+            if (mDelivering) {
+                return;
+            }
+            mDelivering = true;
+        }
+
+        while (true) {
+            Detector.Detections<T> next;
+            synchronized (mLock) {
+                int slot = (int) (mNextDelivery % mResults.length);
+                if (!mCompleted[slot]) {
+                    mDelivering = false;
+                    return;
+                }
+                next = mResults[slot];
+                mResults[slot] = null;
+                mCompleted[slot] = false;
+                mNextDelivery++;
+
+                // The window has room for another frame.
+                mLock.notifyAll();
+            }
+
+            // Frames whose detection failed have no detections, and are skipped.
+            if (next != null) {
+                try {
+                    mProcessor.receiveDetections(next);
+                } catch (Throwable t) {
+                    Log.e(TAG, "Exception thrown from processor.", t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs detection on the frames handed to it, one at a time.  It stands in as the processor of
+     * its own detector, so that it can collect the detections of each frame and pass them on in
+     * order.
+     */
+    private class Worker implements Runnable, Detector.Processor<T> {
+        private final Detector<T> mDetector;
+        private final FrameHandoff<Worker> mJobs = new FrameHandoff<>();
+        private Thread mThread;
+
+        // The job currently assigned to this worker.  Written by the dispatcher before the worker
+        // is handed off, and only read by this worker after that.
+        private Frame mFrame;
+        private PreviewBuffer mBuffer;
+        private long mSequence;
+
+        // Only touched on this worker's thread.
+        private Detector.Detections<T> mDetections;
+
+        Worker(Detector<T> detector) {
+            mDetector = detector;
+            mDetector.setProcessor(this);
+        }
+
+        void start() {
+            mJobs.setActive(true);
+            mThread = new Thread(this);
+            mThread.start();
+        }
+
+        void stop() {
+            mJobs.setActive(false);
+            if (mThread != null) {
+                try {
+                    mThread.join();
+                } catch (InterruptedException e) {
+                    Log.d(TAG, "Detector worker thread interrupted on stop.");
+                }
+                mThread = null;
+            }
+
+            // A frame handed over as the worker was stopping is never picked up.
+            if (mJobs.poll() != null) {
+                mFrameCallback.onFrameDone(mBuffer);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (mJobs.take() != null) {
+                Frame frame = mFrame;
+                PreviewBuffer buffer = mBuffer;
+                long sequence = mSequence;
+                mFrame = null;
+                mBuffer = null;
+
+                long start = System.nanoTime();
+                try {
+                    mDetector.receiveFrame(frame);
+                } catch (Throwable t) {
+                    Log.e(TAG, "Exception thrown from receiver.", t);
+                }
+                long detectNanos = System.nanoTime() - start;
+
+                Detector.Detections<T> detections = mDetections;
+                mDetections = null;
+
+                try {
+                    mFrameCallback.onFrameDetected(buffer,
+                            (detections != null) ? detections.getDetectedItems().size() : -1,
+                            detectNanos);
+                } finally {
+                    mFrameCallback.onFrameDone(buffer);
+                }
+                complete(this, sequence, detections);
+            }
+        }
+
+        @Override
+        public void receiveDetections(Detector.Detections<T> detections) {
+            mDetections = detections;
+        }
+
+        @Override
+        public void release() {
+            // The shared processor is released by the pool.
+        }
+    }
+}
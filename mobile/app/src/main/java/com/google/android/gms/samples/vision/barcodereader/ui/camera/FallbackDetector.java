@@ -0,0 +1,70 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+
+/**
+ * Detects with a primary detector while it is operational, and with a fallback detector while it
+ * isn't.  Play services detectors aren't operational until their native library has been
+ * downloaded, after which they become operational on their own; whether that has happened is
+ * checked every few seconds, rather than on every frame.
+ */
+final class FallbackDetector<T> extends Detector<T> {
+    private static final String TAG = "FallbackDetector";
+
+    private static final long RECHECK_INTERVAL_MILLIS = 5000;
+
+    private final Detector<T> mPrimary;
+    private final Detector<T> mFallback;
+
+    // Only touched by the thread detecting on frames.
+    private boolean mPrimaryOperational;
+    private long mCheckedAtMillis = -1;
+
+    FallbackDetector(Detector<T> primary, Detector<T> fallback) {
+        mPrimary = primary;
+        mFallback = fallback;
+    }
+
+    @Override
+    public SparseArray<T> detect(Frame frame) {
+        long now = SystemClock.elapsedRealtime();
+        if (!mPrimaryOperational
+                && ((mCheckedAtMillis < 0) || (now - mCheckedAtMillis >= RECHECK_INTERVAL_MILLIS))) {
+            mCheckedAtMillis = now;
+            mPrimaryOperational = mPrimary.isOperational();
+            Log.i(TAG, mPrimaryOperational ? "Detecting with the primary detector."
+                    : "Primary detector not operational, detecting with the fallback detector.");
+        }
+        return mPrimaryOperational ? mPrimary.detect(frame) : mFallback.detect(frame);
+    }
+
+    @Override
+    public boolean isOperational() {
+        return mPrimary.isOperational() || mFallback.isOperational();
+    }
+
+    @Override
+    public boolean setFocus(int id) {
+        return mPrimaryOperational ? mPrimary.setFocus(id) : mFallback.setFocus(id);
+    }
+
+    /**
+     * Releases the processor along with the primary detector.  The fallback may be shared by other
+     * fallback detectors, so whoever supplied it releases it, once all of them are released.
+     */
+    @Override
+    public void release() {
+        super.release();
+        mPrimary.release();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import android.hardware.Camera;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Adjusts the camera's preview frame rate to what the detector can actually keep up with.
+ * <p/>
+ * Frames the detector can't get to are overwritten in the pending slot, so the camera spends
+ * power filling buffers that nobody reads.  On the other hand, a phone whose detector has time to
+ * spare scans faster at a higher frame rate.  The governor looks at the mean detection time and
+ * the share of overwritten frames over a few seconds at a time, and steps the preview frame rate
+ * range down or up one supported range at a time.
+ * <p/>
+ * Thread safe; detection results may be recorded from any detector thread.
+ */
+final class FpsGovernor {
+    private static final int MIN_INDEX = Camera.Parameters.PREVIEW_FPS_MIN_INDEX;
+    private static final int MAX_INDEX = Camera.Parameters.PREVIEW_FPS_MAX_INDEX;
+
+    /**
+     * Frame rates above this gain nothing for scanning, so the governor never goes there.  In
+     * the camera's units of frames per 1000 seconds.
+     */
+    private static final int MAX_GOVERNED_FPS_SCALED = 30000;
+
+    /**
+     * Length of the window that each decision is based on.
+     */
+    private static final long WINDOW_NANOS = 2000000000L;
+
+    /**
+     * Minimum number of detected frames in a window for a decision.
+     */
+    private static final int MIN_WINDOW_FRAMES = 10;
+
+    /**
+     * The frame rate goes down if more than this share of frames is overwritten...
+     */
+    private static final float DROP_RATIO_HIGH = 0.3f;
+
+    /**
+     * ...and may go up if less than this share is.
+     */
+    private static final float DROP_RATIO_LOW = 0.05f;
+
+    /**
+     * The frame rate only goes up if the detectors could handle this much more than the next
+     * range's maximum.
+     */
+    private static final float HEADROOM = 1.25f;
+
+    // One range per distinct maximum frame rate, in increasing order.  For each maximum, the
+    // range with the highest minimum is kept, as selectPreviewFpsRange would pick.
+    private final List<int[]> mRanges;
+    private final int mWorkerCount;
+
+    // This lock guards all of the member variables below.
+    private final Object mLock = new Object();
+    private int mIndex;
+    private long mWindowStartNanos;
+    private long mWindowDetectNanos;
+    private int mWindowFrames;
+    private long mWindowReceivedStart;
+    private long mWindowOverwrittenStart;
+
+    /**
+     * @param supportedRanges the preview frame rate ranges supported by the camera
+     * @param initialIndex    the position among them of the range the camera was started with
+     * @param workerCount     the number of frames detected in parallel
+     */
+    FpsGovernor(List<int[]> supportedRanges, int initialIndex, int workerCount) {
+        mWorkerCount = workerCount;
+        int[] initialRange = supportedRanges.get(initialIndex);
+
+        List<int[]> ranges = new ArrayList<>();
+        for (int[] range : supportedRanges) {
+            if (range[MAX_INDEX] <= MAX_GOVERNED_FPS_SCALED
+                    || Arrays.equals(range, initialRange)) {
+                ranges.add(range);
+            }
+        }
+        Collections.sort(ranges, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                if (a[MAX_INDEX] != b[MAX_INDEX]) {
+                    return a[MAX_INDEX] < b[MAX_INDEX] ? -1 : 1;
+                }
+                return a[MIN_INDEX] < b[MIN_INDEX] ? 1 : (a[MIN_INDEX] > b[MIN_INDEX] ? -1 : 0);
+            }
+        });
+
+        mRanges = new ArrayList<>();
+        for (int[] range : ranges) {
+            int last = mRanges.size() - 1;
+            if ((last < 0) || (mRanges.get(last)[MAX_INDEX] != range[MAX_INDEX])) {
+                mRanges.add(range);
+            } else if (Arrays.equals(range, initialRange)) {
+                mRanges.set(last, range);
+            }
+        }
+
+        mIndex = 0;
+        for (int i = 0; i < mRanges.size(); ++i) {
+            if (Arrays.equals(mRanges.get(i), initialRange)) {
+                mIndex = i;
+            }
+        }
+        mWindowStartNanos = -1;
+    }
+
+    /**
+     * Records the detection time of a frame, and decides whether the frame rate should change.
+     *
+     * @param detectNanos      how long detection took
+     * @param receivedCount    the number of frames received from the camera so far
+     * @param overwrittenCount the number of frames overwritten before detection so far
+     * @param nowNanos         the current time
+     * @return the range to switch the camera to, or null to stay with the current one
+     */
+    @Nullable
+    int[] record(long detectNanos, long receivedCount, long overwrittenCount, long nowNanos) {
+        synchronized (mLock) {
+            if (mWindowStartNanos < 0) {
+                startWindow(receivedCount, overwrittenCount, nowNanos);
+            }
+
+            mWindowDetectNanos += detectNanos;
+            mWindowFrames++;
+            if ((nowNanos - mWindowStartNanos < WINDOW_NANOS)
+                    || (mWindowFrames < MIN_WINDOW_FRAMES)) {
+                return null;
+            }
+
+            long received = receivedCount - mWindowReceivedStart;
+            long overwritten = overwrittenCount - mWindowOverwrittenStart;
+            float dropRatio = (received > 0) ? (float) overwritten / received : 0;
+
+            // Frames per 1000 seconds that the detectors could take, as the camera counts them.
+            float capacity = mWorkerCount * 1e12f * mWindowFrames / mWindowDetectNanos;
+
+            int index = mIndex;
+            if ((index > 0) && ((dropRatio > DROP_RATIO_HIGH)
+                    || (capacity < mRanges.get(index)[MAX_INDEX]))) {
+                index--;
+            } else if ((index < mRanges.size() - 1) && (dropRatio < DROP_RATIO_LOW)
+                    && (capacity > HEADROOM * mRanges.get(index + 1)[MAX_INDEX])) {
+                index++;
+            }
+
+            // The next window starts afresh, so that it only sees frames at the new rate.
+            startWindow(receivedCount, overwrittenCount, nowNanos);
+            if (index == mIndex) {
+                return null;
+            }
+            mIndex = index;
+            return mRanges.get(index);
+        }
+    }
+
+    private void startWindow(long receivedCount, long overwrittenCount, long nowNanos) {
+        mWindowStartNanos = nowNanos;
+        mWindowDetectNanos = 0;
+        mWindowFrames = 0;
+        mWindowReceivedStart = receivedCount;
+        mWindowOverwrittenStart = overwrittenCount;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-slot, latest-frame-wins handoff between one producer (the camera callback) and one
+ * consumer (the frame processing thread).
+ * <p/>
+ * The slot is swapped with an atomic exchange, so the producer never blocks and never takes a
+ * monitor.  The consumer parks only when the slot is empty, and the producer unparks it only when
+ * it is actually parked, so a busy detector doesn't pay for a wake-up on every frame.
+ * <p/>
+ * Every item offered is returned to its owner exactly once: either by {@link #offer(Object)} when
+ * it is displaced by a newer item before being taken, by {@link #take()} to the consumer, or by
+ * {@link #poll()} when the slot is drained.
+ */
+final class FrameHandoff<T> {
+    private final AtomicReference<T> mPending = new AtomicReference<>();
+
+    private volatile Thread mConsumer;
+    private volatile boolean mWaiting;
+    private volatile boolean mActive = true;
+
+    /**
+     * Marks the handoff as active/not active.  Wakes the consumer if it is waiting, so that it can
+     * observe the change.
+     */
+    void setActive(boolean active) {
+        mActive = active;
+        LockSupport.unpark(mConsumer);
+    }
+
+    /**
+     * Publishes an item as the pending one.
+     *
+     * @return the previously pending item, which was never handed to the consumer and must be
+     * recycled by the caller, or null if the slot was empty
+     */
+    T offer(T item) {
+        T displaced = mPending.getAndSet(item);
+        if (mWaiting) {
+            LockSupport.unpark(mConsumer);
+        }
+        return displaced;
+    }
+
+    /**
+     * Removes and returns the pending item, waiting for one to be offered if the slot is empty.
+     *
+     * @return the pending item, or null once the handoff is no longer active or the calling
+     * thread is interrupted
+     */
+    T take() {
+        mConsumer = Thread.currentThread();
+
+        while (mActive) {
+            T item = mPending.getAndSet(null);
+            if (item != null) {
+                return item;
+            }
+
+            // Announce that we are about to park, then check once more.  A producer that missed
+            // the flag has already published its item, so the second exchange will see it.
+            mWaiting = true;
+            item = mPending.getAndSet(null);
+            if (item != null) {
+                mWaiting = false;
+                return item;
+            }
+
+            LockSupport.park(this);
+            mWaiting = false;
+
+            if (Thread.interrupted()) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes and returns the pending item without waiting, or null if the slot is empty.
+     */
+    T poll() {
+        return mPending.getAndSet(null);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import java.util.Locale;
+
+/**
+ * Snapshot of the timing of frames through the camera source's pipeline, for telling whether slow
+ * scans come from the camera, the detector, or further downstream.  See
+ * {@link CameraSource#getFrameMetrics()}.
+ * <p/>
+ * Each frame is timestamped when the camera delivers it, when the processing thread picks it up,
+ * and when the detector returns.
+ */
+public final class FrameMetrics {
+    /**
+     * Summary of one latency histogram.  Percentiles are accurate to a millisecond.
+     */
+    public static final class Latency {
+        private final long mCount;
+        private final float mMeanMillis;
+        private final float mMedianMillis;
+        private final float mP90Millis;
+        private final float mP99Millis;
+        private final float mMaxMillis;
+
+        Latency(long count, float meanMillis, float medianMillis, float p90Millis,
+                float p99Millis, float maxMillis) {
+            mCount = count;
+            mMeanMillis = meanMillis;
+            mMedianMillis = medianMillis;
+            mP90Millis = p90Millis;
+            mP99Millis = p99Millis;
+            mMaxMillis = maxMillis;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public float getMeanMillis() {
+            return mMeanMillis;
+        }
+
+        public float getMedianMillis() {
+            return mMedianMillis;
+        }
+
+        public float getP90Millis() {
+            return mP90Millis;
+        }
+
+        public float getP99Millis() {
+            return mP99Millis;
+        }
+
+        public float getMaxMillis() {
+            return mMaxMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "n=%d mean=%.1fms p50=%.0fms p90=%.0fms p99=%.0fms "
+                    + "max=%.1fms", mCount, mMeanMillis, mMedianMillis, mP90Millis, mP99Millis,
+                    mMaxMillis);
+        }
+    }
+
+    private final long mReceivedCount;
+    private final long mOverwrittenCount;
+    private final long mUnknownBufferCount;
+    private final Latency mQueueLatency;
+    private final Latency mDetectionLatency;
+    private final Latency mTotalLatency;
+
+    FrameMetrics(long receivedCount, long overwrittenCount, long unknownBufferCount,
+                 Latency queueLatency, Latency detectionLatency, Latency totalLatency) {
+        mReceivedCount = receivedCount;
+        mOverwrittenCount = overwrittenCount;
+        mUnknownBufferCount = unknownBufferCount;
+        mQueueLatency = queueLatency;
+        mDetectionLatency = detectionLatency;
+        mTotalLatency = totalLatency;
+    }
+
+    /**
+     * Returns the number of frames received from the camera.
+     */
+    public long getReceivedCount() {
+        return mReceivedCount;
+    }
+
+    /**
+     * Returns the number of pending frames that were replaced by a newer frame before the
+     * processing thread could pick them up.
+     */
+    public long getOverwrittenCount() {
+        return mOverwrittenCount;
+    }
+
+    /**
+     * Returns the number of frames skipped because their buffer wasn't one the camera source
+     * handed to the camera.
+     */
+    public long getUnknownBufferCount() {
+        return mUnknownBufferCount;
+    }
+
+    /**
+     * Returns the time from the camera callback to the processing thread picking the frame up.
+     */
+    public Latency getQueueLatency() {
+        return mQueueLatency;
+    }
+
+    /**
+     * Returns the time from the processing thread picking a frame up to the detector returning.
+     * With detector workers, this includes the handoff to the worker.
+     */
+    public Latency getDetectionLatency() {
+        return mDetectionLatency;
+    }
+
+    /**
+     * Returns the time from the camera callback to the detector returning.
+     */
+    public Latency getTotalLatency() {
+        return mTotalLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "received=" + mReceivedCount
+                + " overwritten=" + mOverwrittenCount
+                + " unknown=" + mUnknownBufferCount
+                + "\n  queue: " + mQueueLatency
+                + "\n  detection: " + mDetectionLatency
+                + "\n  total: " + mTotalLatency;
+    }
+}
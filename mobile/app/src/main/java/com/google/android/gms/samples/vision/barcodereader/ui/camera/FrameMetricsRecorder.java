@@ -0,0 +1,75 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import com.google.android.gms.samples.vision.barcodereader.ui.camera.PreviewBufferPool.PreviewBuffer;
+
+/**
+ * Collects the timing of frames through the camera source's pipeline.  The timestamps travel
+ * with each frame's preview buffer, and nothing is allocated until a snapshot is taken.
+ */
+final class FrameMetricsRecorder {
+    private final LatencyHistogram mQueueLatency = new LatencyHistogram();
+    private final LatencyHistogram mDetectionLatency = new LatencyHistogram();
+    private final LatencyHistogram mTotalLatency = new LatencyHistogram();
+
+    // Only written by the camera callback.
+    private volatile long mReceivedCount;
+    private volatile long mOverwrittenCount;
+    private volatile long mUnknownBufferCount;
+
+    /**
+     * Called from the camera callback as a frame arrives.
+     */
+    void onFrameReceived(PreviewBuffer frame) {
+        frame.mReceivedNanos = System.nanoTime();
+        mReceivedCount++;
+    }
+
+    /**
+     * Called from the camera callback when a pending frame is replaced before being picked up.
+     */
+    void onFrameOverwritten() {
+        mOverwrittenCount++;
+    }
+
+    /**
+     * Called from the camera callback when a frame arrives in a buffer the pool doesn't own.
+     */
+    void onUnknownBuffer() {
+        mUnknownBufferCount++;
+    }
+
+    /**
+     * Called from the processing thread as it picks a frame up.
+     */
+    void onFrameDequeued(PreviewBuffer frame) {
+        frame.mDequeuedNanos = System.nanoTime();
+        mQueueLatency.record(frame.mDequeuedNanos - frame.mReceivedNanos);
+    }
+
+    /**
+     * Called from the thread that ran detection on a frame, once the detector returns.
+     */
+    void onFrameDetected(PreviewBuffer frame) {
+        long now = System.nanoTime();
+        mDetectionLatency.record(now - frame.mDequeuedNanos);
+        mTotalLatency.record(now - frame.mReceivedNanos);
+    }
+
+    long getReceivedCount() {
+        return mReceivedCount;
+    }
+
+    long getOverwrittenCount() {
+        return mOverwrittenCount;
+    }
+
+    FrameMetrics snapshot() {
+        return new FrameMetrics(mReceivedCount, mOverwrittenCount, mUnknownBufferCount,
+                mQueueLatency.snapshot(), mDetectionLatency.snapshot(), mTotalLatency.snapshot());
+    }
+}
@@ -0,0 +1,45 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+/**
+ * Where {@link CameraSource} gets its NV21 frames from.  The frame source fills buffers that it is
+ * given, and hands each filled buffer to a receiver; the buffer is given back once the frame has
+ * been detected on or dropped.  A source without a free buffer skips frames until it gets one,
+ * just like the camera does.
+ * <p/>
+ * {@link CameraFrameSource} delivers the preview frames of a live camera, and
+ * {@link ReplayFrameSource} frames recorded earlier, so that the frame pipeline can run without a
+ * camera.
+ */
+public interface FrameSource {
+    /**
+     * Receives the frames of a frame source.
+     */
+    interface Receiver {
+        /**
+         * Called with a buffer that has just been filled with a frame.  Until the buffer is added
+         * back to the frame source, the source won't write to it.
+         */
+        void onFrame(byte[] data);
+    }
+
+    /**
+     * Starts delivering frames to the receiver, as soon as buffers are added to fill.
+     */
+    void start(Receiver receiver);
+
+    /**
+     * Adds a buffer for the frame source to fill with a frame.  Buffers may be added before the
+     * source is started, and are kept until it is stopped.
+     */
+    void addBuffer(byte[] buffer);
+
+    /**
+     * Stops delivering frames.  Once this returns, the receiver isn't called anymore.
+     */
+    void stop();
+}
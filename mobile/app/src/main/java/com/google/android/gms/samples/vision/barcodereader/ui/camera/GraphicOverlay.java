@@ -19,15 +19,20 @@ package com.google.android.gms.samples.vision.barcodereader.ui.camera;
 
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.View;
 
 import com.google.android.gms.vision.CameraSource;
 
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
-import java.util.Vector;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A view which renders a series of custom graphics to be overlayed on top of an associated preview
@@ -45,16 +50,71 @@ import java.util.Vector;
  * supplied value from the preview scale to the view scale.</li>
  * <li>{@link Graphic#translateX(float)} and {@link Graphic#translateY(float)} adjust the coordinate
  * from the preview's coordinate system to the view coordinate system.</li>
+ * <li>{@link Graphic#mapRect(RectF)} maps a whole box at once, through a matrix that is only
+ * recomputed when the preview or view size changes.</li>
  * </ol>
+ *
+ * Changes to graphics are collected and turned into at most one invalidation per display frame,
+ * through the {@link Choreographer}, however many barcodes the detector reports in between.  The
+ * invalidation only covers the union of where the changed graphics were last drawn and where they
+ * will be drawn next, for graphics that {@link Graphic#setDrawnBounds(RectF) report} that.
+ * <p/>
+ * Alternatively, the overlay can {@link #setSurface(OverlaySurfaceView) draw} on a surface of its
+ * own, from a render thread, at display rate.  The view then draws nothing, and graphics may
+ * {@link Graphic#isAnimated() animate} between changes.
  */
-public class GraphicOverlay<T extends GraphicOverlay.Graphic> extends View {
+public class GraphicOverlay<T extends GraphicOverlay.Graphic> extends View
+        implements Choreographer.FrameCallback {
     private final Object mLock = new Object();
     private int mPreviewWidth;
-    private float mWidthScaleFactor = 1.0f;
     private int mPreviewHeight;
-    private float mHeightScaleFactor = 1.0f;
     private int mFacing = CameraSource.CAMERA_FACING_BACK;
-    private Set<T> mGraphics = new HashSet<>();
+    // Graphics are added and removed by the detector thread and drawn by the UI thread, neither of
+    // which waits for the other.  The lock only guards the camera info and scan window.
+    private final SnapshotSet<T> mGraphics = new SnapshotSet<>();
+    private Rect mScanWindow;
+
+    private static final float SCAN_WINDOW_STROKE_WIDTH = 4.0f;
+    private final Paint mScanWindowPaint;
+    private final RectF mScanWindowRect = new RectF();
+
+    // The choreographer of the UI thread while the view is attached, and whether a frame callback
+    // is pending.  Graphics may change on any thread.
+    private volatile Choreographer mChoreographer;
+    private final AtomicBoolean mFrameScheduled = new AtomicBoolean();
+
+    // The surface the overlay draws on instead of the view, if any.
+    private volatile OverlaySurfaceView mSurface;
+
+    // The graphics as last drawn, or being drawn, published before the draw starts.  Only written
+    // by the thread that draws the overlay, and read on any thread to tell whether a graphic may
+    // still be drawn.
+    private volatile List<T> mDrawnGraphics = Collections.emptyList();
+
+    // The area to invalidate.  Only used on the UI thread, which draws the overlay unless it has a
+    // surface.
+    private final RectF mDirtyBounds = new RectF();
+    private final RectF mNextBounds = new RectF();
+    private final Rect mDirtyRect = new Rect();
+
+    // The transform of the view for the UI thread, which works out tap positions even while the
+    // overlay draws on a surface.
+    private final OverlayTransform mUiTransform = new OverlayTransform();
+
+    // The transform the graphics are drawn through.  Only used on the thread that draws the
+    // overlay, which updates it from the camera info at the start of each draw.
+    private final OverlayTransform mTransform = new OverlayTransform();
+    private final float[] mTransformValues = new float[9];
+    private final Matrix mPreviewToView = new Matrix();
+
+    // The draw in progress.  Only used on the thread that draws the overlay.
+    private long mFrameTimeNanos;
+    private boolean mAnimated;
+    private boolean mNextFrameRequested;
+
+    // Since the overlay was created.  Only written by the thread that draws the overlay.
+    private volatile int mRedrawCount;
+    private volatile long mTotalDrawTimeNanos;
 
     /**
      * Base class for a custom graphics object to be rendered within the graphic overlay.  Subclass
@@ -64,6 +124,14 @@ public class GraphicOverlay<T extends GraphicOverlay.Graphic> extends View {
     public static abstract class Graphic {
         private GraphicOverlay mOverlay;
 
+        // Set when the graphic changes, and cleared once the change has been invalidated.
+        private volatile boolean mDirty;
+
+        // The area covered by the last draw, if the graphic reported it.  Only used on the UI
+        // thread.
+        private final RectF mDrawnBounds = new RectF();
+        private boolean mDrawnBoundsKnown;
+
         public Graphic(GraphicOverlay overlay) {
             mOverlay = overlay;
         }
@@ -76,7 +144,11 @@ public class GraphicOverlay<T extends GraphicOverlay.Graphic> extends View {
          * the supplied value from the preview scale to the view scale.</li>
          * <li>{@link Graphic#translateX(float)} and {@link Graphic#translateY(float)} adjust the
          * coordinate from the preview's coordinate system to the view coordinate system.</li>
+         * <li>{@link Graphic#mapRect(RectF)} adjusts a whole box from the preview's coordinate
+         * system to the view coordinate system.</li>
          * </ol>
+         * This runs on the thread that draws the overlay, the UI thread unless the overlay has a
+         * surface of its own, for every redraw, so it should not allocate.
          *
          * @param canvas drawing canvas
          */
@@ -84,100 +156,191 @@ public class GraphicOverlay<T extends GraphicOverlay.Graphic> extends View {
 
         /**
          * Adjusts a horizontal value of the supplied value from the preview scale to the view
-         * scale.
+         * scale.  Only valid on the thread that draws the overlay.
          */
         public float scaleX(float horizontal) {
-            return horizontal * mOverlay.mWidthScaleFactor;
+            return mOverlay.mTransform.scaleX(horizontal);
         }
 
         /**
          * Adjusts a vertical value of the supplied value from the preview scale to the view scale.
+         * Only valid on the thread that draws the overlay.
          */
         public float scaleY(float vertical) {
-            return vertical * mOverlay.mHeightScaleFactor;
+            return mOverlay.mTransform.scaleY(vertical);
         }
 
         /**
          * Adjusts the x coordinate from the preview's coordinate system to the view coordinate
-         * system.
+         * system.  Only valid on the thread that draws the overlay.
          */
         public float translateX(float x) {
-            if (mOverlay.mFacing == CameraSource.CAMERA_FACING_FRONT) {
-                return mOverlay.getWidth() - scaleX(x);
-            } else {
-                return scaleX(x);
-            }
+            return mOverlay.mTransform.translateX(x);
         }
 
         /**
          * Adjusts the y coordinate from the preview's coordinate system to the view coordinate
-         * system.
+         * system.  Only valid on the thread that draws the overlay.
          */
         public float translateY(float y) {
-            return scaleY(y);
+            return mOverlay.mTransform.translateY(y);
+        }
+
+        /**
+         * Adjusts a box in place from the preview's coordinate system to the view coordinate
+         * system.  The edges are kept in order when the preview is mirrored.  Only valid on the
+         * thread that draws the overlay.
+         */
+        public void mapRect(RectF rect) {
+            mOverlay.mPreviewToView.mapRect(rect);
+        }
+
+        /**
+         * Writes the area, in view coordinates, that the graphic would cover if it were drawn
+         * now.  Called on the UI thread when the graphic has changed, to limit the area redrawn.
+         *
+         * @return false if the area isn't known, which redraws the whole overlay
+         */
+        public boolean getBounds(RectF bounds) {
+            return false;
+        }
+
+        /**
+         * Reports the area, in view coordinates, that {@link #draw(Canvas)} covered.  Graphics
+         * that don't report it redraw the whole overlay whenever they change.
+         */
+        protected void setDrawnBounds(RectF bounds) {
+            mDrawnBounds.set(bounds);
+            mDrawnBoundsKnown = true;
+        }
+
+        /**
+         * Returns the time of the display frame being drawn, as by {@link System#nanoTime()}.
+         * Only valid while drawing.
+         */
+        protected long getFrameTimeNanos() {
+            return mOverlay.mFrameTimeNanos;
         }
 
+        /**
+         * Returns whether the overlay is drawn at display rate, on a surface of its own, so that
+         * the graphic may move smoothly between changes rather than jump.  Only valid while
+         * drawing.
+         */
+        protected boolean isAnimated() {
+            return mOverlay.mAnimated;
+        }
+
+        /**
+         * Asks for the overlay to be drawn again on the next display frame, from {@link
+         * #draw(Canvas)}, while the graphic is still moving.  Only has an effect while animated.
+         */
+        protected void requestNextFrame() {
+            mOverlay.mNextFrameRequested = true;
+        }
+
+        /**
+         * Schedules the graphic to be redrawn on the next display frame.  May be called on any
+         * thread.
+         */
         public void postInvalidate() {
-            mOverlay.postInvalidate();
+            mDirty = true;
+            mOverlay.scheduleFrame();
         }
     }
 
     public GraphicOverlay(Context context, AttributeSet attrs) {
         super(context, attrs);
+
+        mScanWindowPaint = new Paint();
+        mScanWindowPaint.setColor(Color.WHITE);
+        mScanWindowPaint.setStyle(Paint.Style.STROKE);
+        mScanWindowPaint.setStrokeWidth(SCAN_WINDOW_STROKE_WIDTH);
     }
 
     /**
      * Removes all graphics from the overlay.
      */
     public void clear() {
-        synchronized (mLock) {
-            mGraphics.clear();
+        if (mGraphics.clear()) {
+            redraw();
         }
-        postInvalidate();
     }
 
     /**
-     * Adds a graphic to the overlay.
+     * Adds a graphic to the overlay, unless it is on the overlay already.
      */
     public void add(T graphic) {
-        synchronized (mLock) {
-            mGraphics.add(graphic);
+        if (mGraphics.add(graphic)) {
+            scheduleFrame();
         }
-        postInvalidate();
     }
 
     /**
-     * Removes a graphic from the overlay.
+     * Removes a graphic from the overlay, if it is on the overlay.
      */
     public void remove(T graphic) {
-        synchronized (mLock) {
-            mGraphics.remove(graphic);
+        if (mGraphics.remove(graphic)) {
+            scheduleFrame();
         }
-        postInvalidate();
     }
 
     /**
-     * Returns a copy (as a list) of the set of all active graphics.
-     * @return list of all active graphics.
+     * Returns a snapshot of all active graphics, which later changes to the overlay don't affect.
+     * @return unmodifiable list of all active graphics.
      */
     public List<T> getGraphics() {
-        synchronized (mLock) {
-            return new Vector(mGraphics);
-        }
+        return mGraphics.get();
     }
 
     /**
-     * Returns the horizontal scale factor.
+     * Returns whether a graphic may still be drawn, as it is on the overlay or was on it for the
+     * last draw, which may still be going on.  A graphic that was removed and is no longer drawn
+     * may be changed freely, for instance to reuse it.  May be called on any thread.
+     */
+    public boolean isDrawn(T graphic) {
+        return mGraphics.get().contains(graphic) || mDrawnGraphics.contains(graphic);
+    }
+
+    /**
+     * Returns the number of times the overlay has been drawn.
+     */
+    public int getRedrawCount() {
+        return mRedrawCount;
+    }
+
+    /**
+     * Returns the mean time each draw of the overlay took.
+     */
+    public float getMeanDrawTimeMillis() {
+        return (mRedrawCount > 0) ? mTotalDrawTimeNanos / 1e6f / mRedrawCount : 0;
+    }
+
+    /**
+     * Returns the horizontal scale factor.  Call on the UI thread.
      */
     public float getWidthScaleFactor() {
-        return mWidthScaleFactor;
+        updateUiTransform();
+        return mUiTransform.getWidthScaleFactor();
     }
 
     /**
-     * Returns the vertical scale factor.
+     * Returns the vertical scale factor.  Call on the UI thread.
      */
     public float getHeightScaleFactor() {
-        return mHeightScaleFactor;
+        updateUiTransform();
+        return mUiTransform.getHeightScaleFactor();
+    }
+
+    /**
+     * Brings the UI thread's transform up to date with the camera info and the size of the view,
+     * which the surface, if any, matches.
+     */
+    private void updateUiTransform() {
+        synchronized (mLock) {
+            mUiTransform.update(mPreviewWidth, mPreviewHeight, getWidth(), getHeight(),
+                    mFacing == CameraSource.CAMERA_FACING_FRONT);
+        }
     }
 
     /**
@@ -190,25 +353,198 @@ public class GraphicOverlay<T extends GraphicOverlay.Graphic> extends View {
             mPreviewHeight = previewHeight;
             mFacing = facing;
         }
-        postInvalidate();
+        redraw();
+    }
+
+    /**
+     * Sets the scan window to outline, in preview coordinates, or null to draw none.
+     */
+    public void setScanWindow(Rect scanWindow) {
+        synchronized (mLock) {
+            mScanWindow = scanWindow;
+        }
+        redraw();
+    }
+
+    /**
+     * Makes the overlay draw on a surface of its own, from the surface's render thread, rather
+     * than on this view from the UI thread.  Call on the UI thread, before graphics are added.
+     */
+    public void setSurface(OverlaySurfaceView surface) {
+        mSurface = surface;
+        surface.setOverlay(this);
+        invalidate();
+    }
+
+    /**
+     * Returns whether the overlay draws on a surface of its own.
+     */
+    public boolean hasSurface() {
+        return mSurface != null;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mChoreographer = Choreographer.getInstance();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        Choreographer choreographer = mChoreographer;
+        mChoreographer = null;
+        choreographer.removeFrameCallback(this);
+        mFrameScheduled.set(false);
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * Redraws the whole overlay.  May be called on any thread.
+     */
+    private void redraw() {
+        OverlaySurfaceView surface = mSurface;
+        if (surface != null) {
+            surface.requestRender();
+        } else {
+            postInvalidate();
+        }
+    }
+
+    /**
+     * Asks for a frame callback, unless one is pending already.  Changes made until then are
+     * invalidated together.  On a surface, the whole overlay is drawn on the next frame instead.
+     */
+    private void scheduleFrame() {
+        OverlaySurfaceView surface = mSurface;
+        if (surface != null) {
+            surface.requestRender();
+            return;
+        }
+        Choreographer choreographer = mChoreographer;
+        if ((choreographer != null) && mFrameScheduled.compareAndSet(false, true)) {
+            choreographer.postFrameCallback(this);
+        }
     }
 
     /**
-     * Draws the overlay with its associated graphic objects.
+     * Invalidates the area of the graphics that changed since the last frame, on the UI thread.
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        // Changes from here on schedule another frame.
+        mFrameScheduled.set(false);
+
+        List<T> graphics = mGraphics.get();
+        boolean membershipChanged = (graphics != mDrawnGraphics);
+        boolean whole = false;
+        mDirtyBounds.setEmpty();
+
+        if (membershipChanged) {
+            for (int i = 0; i < mDrawnGraphics.size(); ++i) {
+                Graphic graphic = mDrawnGraphics.get(i);
+                if (!graphics.contains(graphic)) {
+                    whole |= !addDrawnBounds(graphic);
+                }
+            }
+        }
+        for (int i = 0; i < graphics.size(); ++i) {
+            Graphic graphic = graphics.get(i);
+            boolean added = membershipChanged && !mDrawnGraphics.contains(graphic);
+            if (!graphic.mDirty && !added) {
+                continue;
+            }
+            // Cleared before the graphic is looked at, so that a later change marks it again.
+            graphic.mDirty = false;
+            if (!added) {
+                whole |= !addDrawnBounds(graphic);
+            }
+            if (graphic.getBounds(mNextBounds)) {
+                mDirtyBounds.union(mNextBounds);
+            } else {
+                whole = true;
+            }
+        }
+
+        if (whole) {
+            invalidate();
+        } else if (!mDirtyBounds.isEmpty()) {
+            mDirtyBounds.roundOut(mDirtyRect);
+            invalidate(mDirtyRect.left, mDirtyRect.top, mDirtyRect.right, mDirtyRect.bottom);
+        }
+    }
+
+    /**
+     * Adds the area a graphic covered when last drawn to the area to invalidate.
+     *
+     * @return false if the area isn't known
+     */
+    private boolean addDrawnBounds(Graphic graphic) {
+        if (!graphic.mDrawnBoundsKnown) {
+            return false;
+        }
+        mDirtyBounds.union(graphic.mDrawnBounds);
+        return true;
+    }
+
+    /**
+     * Draws the overlay with its associated graphic objects, unless it draws on a surface.
      */
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        if (mSurface == null) {
+            drawOverlay(canvas, System.nanoTime(), false);
+        }
+    }
+
+    /**
+     * Draws the scan window and the graphics.
+     *
+     * @param frameTimeNanos the time of the display frame being drawn
+     * @param animated       whether the overlay is drawn at display rate
+     * @return whether a graphic asked to be drawn again on the next display frame
+     */
+    boolean drawOverlay(Canvas canvas, long frameTimeNanos, boolean animated) {
+        long startNanos = System.nanoTime();
+        mFrameTimeNanos = frameTimeNanos;
+        mAnimated = animated;
+        mNextFrameRequested = false;
 
         synchronized (mLock) {
-            if ((mPreviewWidth != 0) && (mPreviewHeight != 0)) {
-                mWidthScaleFactor = (float) canvas.getWidth() / (float) mPreviewWidth;
-                mHeightScaleFactor = (float) canvas.getHeight() / (float) mPreviewHeight;
+            if (mTransform.update(mPreviewWidth, mPreviewHeight, canvas.getWidth(),
+                    canvas.getHeight(), mFacing == CameraSource.CAMERA_FACING_FRONT)) {
+                mTransform.getValues(mTransformValues);
+                mPreviewToView.setValues(mTransformValues);
             }
 
-            for (Graphic graphic : mGraphics) {
-                graphic.draw(canvas);
+            if (mScanWindow != null) {
+                // Mirroring swaps the left and right edges.
+                float left = mTransform.translateX(mScanWindow.left);
+                float right = mTransform.translateX(mScanWindow.right);
+                mScanWindowRect.set(Math.min(left, right),
+                        mTransform.translateY(mScanWindow.top),
+                        Math.max(left, right),
+                        mTransform.translateY(mScanWindow.bottom));
+                canvas.drawRect(mScanWindowRect, mScanWindowPaint);
             }
         }
+
+        // The snapshot is published before it is drawn, and only drawn if it was still current
+        // once published.  A graphic removed from the overlay after that is left out of the next
+        // snapshot, so isDrawn() sees every snapshot a graphic may be drawn from.
+        List<T> graphics;
+        do {
+            graphics = mGraphics.get();
+            mDrawnGraphics = graphics;
+        } while (graphics != mGraphics.get());
+        for (int i = 0; i < graphics.size(); ++i) {
+            Graphic graphic = graphics.get(i);
+            graphic.mDrawnBoundsKnown = false;
+            graphic.draw(canvas);
+        }
+
+        mRedrawCount++;
+        mTotalDrawTimeNanos += System.nanoTime() - startNanos;
+        return animated && mNextFrameRequested;
     }
 }
@@ -0,0 +1,84 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size histogram of latencies, with one bucket per millisecond up to
+ * {@link #MAX_TRACKED_MILLIS} and a final bucket for anything longer.  Recording is lock-free and
+ * allocates nothing, so it is safe to call on every frame from any thread.
+ */
+final class LatencyHistogram {
+    static final int MAX_TRACKED_MILLIS = 500;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(MAX_TRACKED_MILLIS + 1);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotalNanos = new AtomicLong();
+    private final AtomicLong mMaxNanos = new AtomicLong();
+
+    /**
+     * Records one latency.  Negative values, which can only come from a frame whose timestamps
+     * were never set, are ignored.
+     */
+    void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+
+        mBuckets.incrementAndGet((int) Math.min(nanos / 1000000, MAX_TRACKED_MILLIS));
+        mCount.incrementAndGet();
+        mTotalNanos.addAndGet(nanos);
+
+        long max = mMaxNanos.get();
+        while ((nanos > max) && !mMaxNanos.compareAndSet(max, nanos)) {
+            max = mMaxNanos.get();
+        }
+    }
+
+    /**
+     * Returns a summary of the latencies recorded so far.  Latencies recorded while this runs may
+     * or may not be included.
+     */
+    FrameMetrics.Latency snapshot() {
+        long count = 0;
+        long[] buckets = new long[mBuckets.length()];
+        for (int i = 0; i < buckets.length; ++i) {
+            buckets[i] = mBuckets.get(i);
+            count += buckets[i];
+        }
+
+        float meanMillis = (count > 0) ? mTotalNanos.get() / 1e6f / count : 0;
+        float maxMillis = mMaxNanos.get() / 1e6f;
+        return new FrameMetrics.Latency(count, meanMillis,
+                getPercentile(buckets, count, 0.50, maxMillis),
+                getPercentile(buckets, count, 0.90, maxMillis),
+                getPercentile(buckets, count, 0.99, maxMillis),
+                maxMillis);
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile, capped at the largest
+     * value seen.
+     */
+    private static float getPercentile(long[] buckets, long count, double fraction,
+                                       float maxMillis) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; ++i) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(i + 1, maxMillis);
+            }
+        }
+        return maxMillis;
+    }
+}
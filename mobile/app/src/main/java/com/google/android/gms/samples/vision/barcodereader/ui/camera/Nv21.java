@@ -0,0 +1,138 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Helpers for working on NV21 images in place.
+ * <p/>
+ * An NV21 image of width w and height h is a full resolution Y (luminance) plane of w * h bytes,
+ * followed by a half resolution plane of interleaved V and U (chrominance) samples, one pair for
+ * every 2x2 block of pixels, for another w * h / 2 bytes.
+ */
+final class Nv21 {
+    private static final byte NEUTRAL_CHROMA = (byte) 128;
+
+    private Nv21() {
+    }
+
+    /**
+     * Crops an NV21 image to the given window, in place.  The cropped image is written to the start
+     * of the same array, as an NV21 image of cropWidth x cropHeight.  Since every row moves towards
+     * the start of the array, no row is overwritten before it has been copied.
+     * <p/>
+     * Because chrominance is sampled once per 2x2 block, the window must be aligned to even
+     * coordinates and have an even size.
+     */
+    static void crop(byte[] data, int width, int height,
+                     int left, int top, int cropWidth, int cropHeight) {
+        if (((left | top | cropWidth | cropHeight) & 1) != 0
+                || left < 0 || top < 0 || cropWidth <= 0 || cropHeight <= 0
+                || left + cropWidth > width || top + cropHeight > height) {
+            throw new IllegalArgumentException("Invalid crop window: " + cropWidth + "x"
+                    + cropHeight + " at " + left + "," + top + " in " + width + "x" + height);
+        }
+
+        // Y plane, one row per pixel row.
+        for (int row = 0; row < cropHeight; ++row) {
+            System.arraycopy(data, (top + row) * width + left, data, row * cropWidth, cropWidth);
+        }
+
+        // Interleaved VU plane, one row per two pixel rows.  Each row holds one V and one U byte
+        // per two pixels, so the offsets and row length in bytes match those of the Y plane.
+        int srcPlane = width * height;
+        int dstPlane = cropWidth * cropHeight;
+        for (int row = 0; row < cropHeight / 2; ++row) {
+            System.arraycopy(data, srcPlane + (top / 2 + row) * width + left,
+                    data, dstPlane + row * cropWidth, cropWidth);
+        }
+    }
+
+    /**
+     * Packs the three planes of a YUV_420_888 image into an NV21 array of width x height.  The
+     * planes may have any row stride, and the chrominance planes any pixel stride, as reported by
+     * the camera; padding at the end of rows is dropped.  The buffers are read with absolute
+     * indices, so their positions are left alone.
+     *
+     * @param out an array of at least width * height * 3 / 2 bytes, which receives the image
+     */
+    static void fromYuv420(ByteBuffer y, int yRowStride,
+                           ByteBuffer u, ByteBuffer v, int uvRowStride, int uvPixelStride,
+                           int width, int height, byte[] out) {
+        if (((width | height) & 1) != 0 || width <= 0 || height <= 0
+                || out.length < width * height * 3 / 2) {
+            throw new IllegalArgumentException("Invalid NV21 image: " + width + "x" + height
+                    + " in " + out.length + " bytes");
+        }
+
+        // Y plane, one bulk copy per row.
+        ByteBuffer luma = y.duplicate();
+        for (int row = 0; row < height; ++row) {
+            luma.position(row * yRowStride);
+            luma.get(out, row * width, width);
+        }
+
+        // VU plane, one V and one U sample for every 2x2 block of pixels.
+        int dst = width * height;
+        for (int row = 0; row < height / 2; ++row) {
+            int src = row * uvRowStride;
+            for (int col = 0; col < width / 2; ++col) {
+                out[dst++] = v.get(src);
+                out[dst++] = u.get(src);
+                src += uvPixelStride;
+            }
+        }
+    }
+
+    /**
+     * Returns the size of an image dimension after downsampling by the given factor, rounded down
+     * to an even number so that the result is still a valid NV21 image.
+     */
+    static int downsampledSize(int size, int factor) {
+        return (size / factor) & ~1;
+    }
+
+    /**
+     * Downsamples an NV21 image by an integer factor, in place, keeping only its luminance.  Each
+     * output pixel is the mean of a factor x factor block of input pixels, which keeps the thin
+     * bars of a barcode from simply vanishing between samples.  The result is written to the start
+     * of the array as an NV21 image of the size given by {@link #downsampledSize(int, int)}, with
+     * neutral chrominance, so that detectors see it as grayscale.
+     * <p/>
+     * Every output pixel is written at or before the first input pixel of its block, so no input
+     * is overwritten before it has been read.
+     */
+    static void downsampleLuma(byte[] data, int width, int height, int factor) {
+        int outWidth = downsampledSize(width, factor);
+        int outHeight = downsampledSize(height, factor);
+        if (factor < 1 || outWidth == 0 || outHeight == 0) {
+            throw new IllegalArgumentException("Invalid downsampling of " + width + "x" + height
+                    + " by " + factor);
+        }
+
+        int blockSize = factor * factor;
+        for (int row = 0; row < outHeight; ++row) {
+            int srcRow = row * factor * width;
+            int dst = row * outWidth;
+            for (int col = 0; col < outWidth; ++col) {
+                int src = srcRow + col * factor;
+                int sum = 0;
+                for (int y = 0; y < factor; ++y) {
+                    for (int x = 0; x < factor; ++x) {
+                        sum += data[src + x] & 0xff;
+                    }
+                    src += width;
+                }
+                data[dst + col] = (byte) (sum / blockSize);
+            }
+        }
+
+        int chromaStart = outWidth * outHeight;
+        Arrays.fill(data, chromaStart, chromaStart + chromaStart / 2, NEUTRAL_CHROMA);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A transparent surface on top of the camera preview that a {@link GraphicOverlay} draws on, from
+ * a render thread of its own, instead of drawing itself on the UI thread.
+ * <p/>
+ * The surface is composited by the system apart from the app's views, so annotations don't take
+ * time from the UI thread, and from a web view sharing it.  The render thread draws on vsync, for
+ * as long as the graphics are moving between detections, and then idles until the overlay
+ * changes.  From Oreo on, the surface is drawn with a hardware canvas; before that, with a software
+ * one, still off the UI thread.
+ * <p/>
+ * Add the view to the same parent as the overlay, so that it is laid out on top of the preview in
+ * the same way, and pass it to {@link GraphicOverlay#setSurface(OverlaySurfaceView)}.
+ */
+public class OverlaySurfaceView extends SurfaceView implements SurfaceHolder.Callback {
+    private static final String TAG = "OverlaySurfaceView";
+
+    private volatile GraphicOverlay<?> mOverlay;
+
+    // Set up when the surface is created, and torn down when it is destroyed, on the UI thread.
+    private HandlerThread mRenderThread;
+    private Handler mRenderHandler;
+
+    // The choreographer of the render thread while the surface is valid, and whether a frame is
+    // pending.
+    private volatile Choreographer mChoreographer;
+    private final AtomicBoolean mFrameScheduled = new AtomicBoolean();
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            render(frameTimeNanos);
+        }
+    };
+
+    // Only written by the render thread.
+    private volatile int mFrameCount;
+    private volatile long mTotalFrameTimeNanos;
+
+    public OverlaySurfaceView(Context context) {
+        super(context);
+        getHolder().setFormat(PixelFormat.TRANSLUCENT);
+        getHolder().addCallback(this);
+        // Above the camera preview's surface, and below the window.
+        setZOrderMediaOverlay(true);
+    }
+
+    void setOverlay(GraphicOverlay<?> overlay) {
+        mOverlay = overlay;
+        requestRender();
+    }
+
+    /**
+     * Asks for the overlay to be drawn on the next vsync, unless a frame is pending already.  May
+     * be called on any thread.
+     */
+    void requestRender() {
+        Choreographer choreographer = mChoreographer;
+        if ((choreographer != null) && mFrameScheduled.compareAndSet(false, true)) {
+            choreographer.postFrameCallback(mFrameCallback);
+        }
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        mRenderThread = new HandlerThread("OverlayRender");
+        mRenderThread.start();
+        mRenderHandler = new Handler(mRenderThread.getLooper());
+        mRenderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mFrameScheduled.set(false);
+                mChoreographer = Choreographer.getInstance();
+                requestRender();
+            }
+        });
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        requestRender();
+    }
+
+    /**
+     * Stops the render thread, which must no longer draw once this returns.
+     */
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        mChoreographer = null;
+        mRenderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            }
+        });
+        mRenderThread.quitSafely();
+        try {
+            mRenderThread.join();
+        } catch (InterruptedException e) {
+            Log.d(TAG, "Render thread interrupted on surface destruction.");
+            Thread.currentThread().interrupt();
+        }
+        mRenderThread = null;
+        mRenderHandler = null;
+    }
+
+    /**
+     * Returns the number of frames rendered so far.
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    @Override
+    public String toString() {
+        int frames = mFrameCount;
+        return String.format(Locale.US, "Overlay surface: %d frames, mean frame time %.2f ms",
+                frames, (frames > 0) ? mTotalFrameTimeNanos / 1e6f / frames : 0);
+    }
+
+    private void render(long frameTimeNanos) {
+        // Requests from here on schedule another frame.
+        mFrameScheduled.set(false);
+        GraphicOverlay<?> overlay = mOverlay;
+        if ((overlay == null) || (mChoreographer == null)) {
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        SurfaceHolder holder = getHolder();
+        Canvas canvas = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
+                ? holder.lockHardwareCanvas() : holder.lockCanvas();
+        if (canvas == null) {
+            return;
+        }
+        boolean moving;
+        try {
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            moving = overlay.drawOverlay(canvas, frameTimeNanos, true);
+        } finally {
+            holder.unlockCanvasAndPost(canvas);
+        }
+
+        mFrameCount++;
+        mTotalFrameTimeNanos += System.nanoTime() - startNanos;
+        if (moving) {
+            requestRender();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+/**
+ * Maps preview frame coordinates to the coordinates of the view that the preview fills, scaling
+ * them up to the view size and mirroring them for the front-facing camera.  This is the math behind
+ * {@link GraphicOverlay.Graphic#translateX(float)} and friends and behind the overlay's
+ * preview-to-view matrix, kept free of Android classes.
+ * <p/>
+ * Updated and read on the thread that draws the overlay.
+ */
+final class OverlayTransform {
+    private float mWidthScaleFactor = 1.0f;
+    private float mHeightScaleFactor = 1.0f;
+    private boolean mMirrored;
+    private int mViewWidth;
+
+    /**
+     * Updates the transform for the current preview and view sizes.  The scale factors are only
+     * changed once the preview size is known.
+     *
+     * @param mirrored whether the preview is mirrored, as it is for the front-facing camera
+     * @return whether the transform changed
+     */
+    boolean update(int previewWidth, int previewHeight, int viewWidth, int viewHeight,
+                   boolean mirrored) {
+        float widthScaleFactor = mWidthScaleFactor;
+        float heightScaleFactor = mHeightScaleFactor;
+        if ((previewWidth != 0) && (previewHeight != 0)) {
+            widthScaleFactor = (float) viewWidth / (float) previewWidth;
+            heightScaleFactor = (float) viewHeight / (float) previewHeight;
+        }
+        if ((widthScaleFactor == mWidthScaleFactor) && (heightScaleFactor == mHeightScaleFactor)
+                && (viewWidth == mViewWidth) && (mirrored == mMirrored)) {
+            return false;
+        }
+        mWidthScaleFactor = widthScaleFactor;
+        mHeightScaleFactor = heightScaleFactor;
+        mViewWidth = viewWidth;
+        mMirrored = mirrored;
+        return true;
+    }
+
+    /**
+     * Writes the transform as the nine values of a 3x3 affine matrix in row-major order, as taken
+     * by {@link android.graphics.Matrix#setValues(float[])}.
+     */
+    void getValues(float[] values) {
+        values[0] = mMirrored ? -mWidthScaleFactor : mWidthScaleFactor;
+        values[1] = 0;
+        values[2] = mMirrored ? mViewWidth : 0;
+        values[3] = 0;
+        values[4] = mHeightScaleFactor;
+        values[5] = 0;
+        values[6] = 0;
+        values[7] = 0;
+        values[8] = 1;
+    }
+
+    float getWidthScaleFactor() {
+        return mWidthScaleFactor;
+    }
+
+    float getHeightScaleFactor() {
+        return mHeightScaleFactor;
+    }
+
+    /**
+     * Adjusts a horizontal value from the preview scale to the view scale.
+     */
+    float scaleX(float horizontal) {
+        return horizontal * mWidthScaleFactor;
+    }
+
+    /**
+     * Adjusts a vertical value from the preview scale to the view scale.
+     */
+    float scaleY(float vertical) {
+        return vertical * mHeightScaleFactor;
+    }
+
+    /**
+     * Adjusts an x coordinate from the preview's coordinate system to the view's.
+     */
+    float translateX(float x) {
+        return mMirrored ? mViewWidth - scaleX(x) : scaleX(x);
+    }
+
+    /**
+     * Adjusts a y coordinate from the preview's coordinate system to the view's.
+     */
+    float translateY(float y) {
+        return scaleY(y);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Fixed-size pool of camera preview buffers.
+ * <p/>
+ * Each buffer is owned by exactly one party at a time: the camera, which fills it with the next
+ * preview image; the pending slot, where it waits to be picked up by the processing thread; or the
+ * detector, which is running on it.  Transitions between these states are checked, so a buffer
+ * can't be handed back to the camera twice or recycled while it is being detected on.
+ * <p/>
+ * Buffers received from the camera are looked up by identity without hashing.  Each buffer is
+ * allocated a few bytes larger than the image it holds, and its index in the pool is stored in
+ * those trailing bytes, which the camera never writes to.
+ * <p/>
+ * The pool counts how often the camera is left without any buffer to fill.  While starved, the
+ * camera silently drops preview frames, so a non-zero count means the pool is too small for the
+ * detector on this device.
+ */
+final class PreviewBufferPool {
+    static final int OWNER_CAMERA = 0;
+    static final int OWNER_PENDING = 1;
+    static final int OWNER_DETECTOR = 2;
+
+    /**
+     * The minimum number of buffers: one for the camera to fill, one pending and one being
+     * detected on.
+     */
+    static final int MIN_CAPACITY = 3;
+
+    /**
+     * The number of bytes appended to each buffer to hold its index.
+     */
+    private static final int TAG_SIZE = 4;
+
+    /**
+     * A preview buffer, along with the metadata of the frame it currently holds.  The metadata is
+     * written by the camera callback before the frame is handed off for processing, and is only
+     * read by the processing thread after that handoff.  The processing thread in turn records
+     * how the frame was prepared for detection before handing it to a detector worker.
+     */
+    static final class PreviewBuffer {
+        final int mIndex;
+        final byte[] mBytes;
+        final ByteBuffer mData;
+
+        int mFrameId;
+        long mTimeMillis;
+        int mDownsampling = 1;
+
+        // Pipeline timestamps, from System.nanoTime().
+        long mReceivedNanos;
+        long mDequeuedNanos;
+
+        private PreviewBuffer(int index, byte[] bytes, ByteBuffer data) {
+            mIndex = index;
+            mBytes = bytes;
+            mData = data;
+        }
+    }
+
+    // Only replaced while no frames are being processed.
+    private volatile PreviewBuffer[] mBuffers = new PreviewBuffer[0];
+    private volatile AtomicIntegerArray mOwners = new AtomicIntegerArray(0);
+    private final AtomicInteger mCameraOwned = new AtomicInteger();
+
+    // Only written by the camera callback.
+    private volatile int mStarvationCount;
+
+    /**
+     * Replaces the buffers in the pool with new ones large enough for the given image size.  All
+     * of the new buffers start out owned by the camera, and must be added to it by the caller.
+     *
+     * @param capacity  the number of buffers to allocate
+     * @param imageSize the size in bytes of one preview image
+     */
+    void allocate(int capacity, int imageSize) {
+        if (capacity < MIN_CAPACITY) {
+            throw new IllegalArgumentException("Invalid preview buffer count: " + capacity);
+        }
+
+        PreviewBuffer[] buffers = new PreviewBuffer[capacity];
+        for (int i = 0; i < capacity; ++i) {
+            // Creating the byte array this way and wrapping it, as opposed to using .allocate(),
+            // should guarantee that there will be an array to work with.
+            byte[] byteArray = new byte[imageSize + TAG_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(byteArray);
+            if (!buffer.hasArray() || (buffer.array() != byteArray)) {
+                // I don't think that this will ever happen.  But if it does, then we wouldn't be
+                // passing the preview content to the underlying detector later.
+                throw new IllegalStateException("Failed to create valid buffer for camera source.");
+            }
+
+            buffer.putInt(imageSize, i);
+            buffers[i] = new PreviewBuffer(i, byteArray, buffer);
+        }
+
+        mOwners = new AtomicIntegerArray(capacity);
+        mCameraOwned.set(capacity);
+        mBuffers = buffers;
+    }
+
+    /**
+     * Drops all of the buffers in the pool.
+     */
+    void clear() {
+        mBuffers = new PreviewBuffer[0];
+        mOwners = new AtomicIntegerArray(0);
+        mCameraOwned.set(0);
+    }
+
+    /**
+     * Returns the number of buffers in the pool.
+     */
+    int size() {
+        return mBuffers.length;
+    }
+
+    /**
+     * Returns the buffer at the given index.
+     */
+    PreviewBuffer get(int index) {
+        return mBuffers[index];
+    }
+
+    /**
+     * Returns the pool buffer backed by the given byte array, or null if the array doesn't belong
+     * to this pool.
+     */
+    PreviewBuffer find(byte[] data) {
+        PreviewBuffer[] buffers = mBuffers;
+        if (data == null || data.length < TAG_SIZE) {
+            return null;
+        }
+
+        int tag = data.length - TAG_SIZE;
+        int index = ((data[tag] & 0xff) << 24)
+                | ((data[tag + 1] & 0xff) << 16)
+                | ((data[tag + 2] & 0xff) << 8)
+                | (data[tag + 3] & 0xff);
+
+        if (index < 0 || index >= buffers.length || buffers[index].mBytes != data) {
+            return null;
+        }
+        return buffers[index];
+    }
+
+    /**
+     * Moves a buffer just received from the camera into the pending slot.
+     *
+     * @return false if the camera didn't own the buffer
+     */
+    boolean moveToPending(PreviewBuffer buffer) {
+        if (!transfer(buffer, OWNER_CAMERA, OWNER_PENDING)) {
+            return false;
+        }
+
+        if (mCameraOwned.decrementAndGet() == 0) {
+            mStarvationCount++;
+        }
+        return true;
+    }
+
+    /**
+     * Moves a buffer taken from the pending slot over to the detector.
+     *
+     * @return false if the buffer wasn't pending
+     */
+    boolean moveToDetector(PreviewBuffer buffer) {
+        return transfer(buffer, OWNER_PENDING, OWNER_DETECTOR);
+    }
+
+    /**
+     * Marks a pending or detected buffer as owned by the camera again.  The caller is responsible
+     * for actually adding it back to the camera.
+     *
+     * @return false if the camera already owned the buffer
+     */
+    boolean returnToCamera(PreviewBuffer buffer) {
+        if (!transfer(buffer, OWNER_PENDING, OWNER_CAMERA)
+                && !transfer(buffer, OWNER_DETECTOR, OWNER_CAMERA)) {
+            return false;
+        }
+
+        mCameraOwned.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Returns the current owner of a buffer; one of {@link #OWNER_CAMERA},
+     * {@link #OWNER_PENDING} or {@link #OWNER_DETECTOR}.
+     */
+    int getOwner(PreviewBuffer buffer) {
+        return mOwners.get(buffer.mIndex);
+    }
+
+    /**
+     * Returns the number of buffers currently owned by the camera.
+     */
+    int getCameraOwnedCount() {
+        return mCameraOwned.get();
+    }
+
+    /**
+     * Returns the number of times the camera was left without a buffer to fill.
+     */
+    int getStarvationCount() {
+        return mStarvationCount;
+    }
+
+    private boolean transfer(PreviewBuffer buffer, int from, int to) {
+        PreviewBuffer[] buffers = mBuffers;
+        return buffer.mIndex < buffers.length
+                && buffers[buffer.mIndex] == buffer
+                && mOwners.compareAndSet(buffer.mIndex, from, to);
+    }
+}
@@ -0,0 +1,309 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replays NV21 frames recorded earlier, so that the frame pipeline of {@link CameraSource} can be
+ * run and measured without a camera.
+ * <p/>
+ * A recording is a directory with one file per frame, named after the time the frame was captured
+ * in milliseconds and the size of the frame, like 1250_1600x1024.nv21.  All frames of a recording
+ * have the same size.  Frames are replayed in the order of their timestamps, either at the pace
+ * they were recorded at, or as fast as buffers are handed back.  At the recorded pace, the first
+ * frame waits for a buffer and the pace is kept from then on, and a later frame that is due while
+ * no buffer is free is skipped, as the camera would skip it.  As fast as
+ * possible, every frame waits for a free buffer instead; frames the detector can't keep up with
+ * are still overwritten while pending, as they would be with a faster camera.
+ * <p/>
+ * Each frame is read straight from its file into the buffer it is delivered in, on a thread of
+ * its own.  This has no Android dependencies, so it can also be run on the JVM.
+ */
+public final class ReplayFrameSource implements FrameSource {
+    private static final Pattern FRAME_FILE = Pattern.compile("(\\d+)_(\\d+)x(\\d+)\\.nv21");
+
+    private final File[] mFiles;
+    private final long[] mTimestampsMillis;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mRotation;
+    private final boolean mRealTime;
+
+    private final BlockingQueue<byte[]> mFreeBuffers = new LinkedBlockingQueue<>();
+
+    private Thread mThread;
+    private volatile CountDownLatch mFinished = new CountDownLatch(0);
+
+    // Only written by the replay thread.
+    private volatile int mDeliveredCount;
+    private volatile int mSkippedCount;
+    private volatile long mElapsedNanos;
+    private volatile IOException mError;
+
+    private ReplayFrameSource(File[] files, long[] timestampsMillis, int width, int height,
+                              int rotation, boolean realTime) {
+        mFiles = files;
+        mTimestampsMillis = timestampsMillis;
+        mWidth = width;
+        mHeight = height;
+        mRotation = rotation;
+        mRealTime = realTime;
+    }
+
+    /**
+     * Opens the recording in a directory.
+     *
+     * @param directory the directory the frames were recorded to
+     * @param rotation  the number of quarter turns clockwise that make the frames upright, as in
+     *                  {@link com.google.android.gms.vision.Frame.Metadata#getRotation()}
+     * @param realTime  whether to replay the frames at the pace they were recorded at, rather than
+     *                  as fast as possible
+     * @throws IOException if the directory holds no frames, or frames of different sizes
+     */
+    public static ReplayFrameSource open(File directory, int rotation, boolean realTime)
+            throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Unable to list recorded frames in " + directory);
+        }
+
+        List<RecordedFrame> frames = new ArrayList<>();
+        for (File file : files) {
+            Matcher matcher = FRAME_FILE.matcher(file.getName());
+            if (matcher.matches()) {
+                frames.add(new RecordedFrame(file, Long.parseLong(matcher.group(1)),
+                        Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3))));
+            }
+        }
+        if (frames.isEmpty()) {
+            throw new IOException("No recorded frames in " + directory);
+        }
+        Collections.sort(frames, new Comparator<RecordedFrame>() {
+            @Override
+            public int compare(RecordedFrame a, RecordedFrame b) {
+                return (a.mTimeMillis < b.mTimeMillis) ? -1
+                        : ((a.mTimeMillis == b.mTimeMillis) ? 0 : 1);
+            }
+        });
+
+        int width = frames.get(0).mWidth;
+        int height = frames.get(0).mHeight;
+        File[] sortedFiles = new File[frames.size()];
+        long[] timestampsMillis = new long[frames.size()];
+        for (int i = 0; i < frames.size(); ++i) {
+            RecordedFrame frame = frames.get(i);
+            if ((frame.mWidth != width) || (frame.mHeight != height)) {
+                throw new IOException("Recorded frames differ in size: " + frame.mFile.getName());
+            }
+            if (frame.mFile.length() < getFrameSize(width, height)) {
+                throw new IOException("Recorded frame is truncated: " + frame.mFile.getName());
+            }
+            sortedFiles[i] = frame.mFile;
+            timestampsMillis[i] = frame.mTimeMillis;
+        }
+
+        return new ReplayFrameSource(sortedFiles, timestampsMillis, width, height, rotation,
+                realTime);
+    }
+
+    /**
+     * Returns the width of the recorded frames.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Returns the height of the recorded frames.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Returns the number of quarter turns clockwise that make the recorded frames upright.
+     */
+    public int getRotation() {
+        return mRotation;
+    }
+
+    /**
+     * Returns the number of frames in the recording.
+     */
+    public int getFrameCount() {
+        return mFiles.length;
+    }
+
+    /**
+     * Returns the number of frames delivered since the replay was last started.
+     */
+    public int getDeliveredCount() {
+        return mDeliveredCount;
+    }
+
+    /**
+     * Returns the number of frames skipped for lack of a free buffer since the replay was last
+     * started.  Only frames replayed at the recorded pace are ever skipped.
+     */
+    public int getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    /**
+     * Waits for the last frame of the recording to have been delivered or skipped.
+     *
+     * @return false if the timeout passed first
+     * @throws IOException if a recorded frame could not be read, which ends the replay early
+     */
+    public boolean awaitFinished(long timeout, TimeUnit unit)
+            throws InterruptedException, IOException {
+        if (!mFinished.await(timeout, unit)) {
+            return false;
+        }
+        if (mError != null) {
+            throw mError;
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void start(final Receiver receiver) {
+        if (mThread != null) {
+            throw new IllegalStateException("The replay has already been started.");
+        }
+
+        mDeliveredCount = 0;
+        mSkippedCount = 0;
+        mElapsedNanos = 0;
+        mError = null;
+        mFinished = new CountDownLatch(1);
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                replay(receiver);
+            }
+        }, "FrameReplay");
+        mThread.start();
+    }
+
+    @Override
+    public void addBuffer(byte[] buffer) {
+        if (buffer.length < getFrameSize(mWidth, mHeight)) {
+            throw new IllegalArgumentException("Buffer too small for a frame: " + buffer.length);
+        }
+        mFreeBuffers.offer(buffer);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (mThread == null) {
+            return;
+        }
+
+        mThread.interrupt();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                mThread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        mThread = null;
+        mFreeBuffers.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "Replayed " + mDeliveredCount + " of " + mFiles.length + " frames in "
+                + TimeUnit.NANOSECONDS.toMillis(mElapsedNanos) + " ms, " + mSkippedCount
+                + " skipped without a free buffer";
+    }
+
+    private void replay(Receiver receiver) {
+        long startNanos = System.nanoTime();
+        int frameSize = getFrameSize(mWidth, mHeight);
+        try {
+            for (int i = 0; i < mFiles.length; ++i) {
+                byte[] buffer;
+                if (mRealTime && (i > 0)) {
+                    long dueNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(
+                            mTimestampsMillis[i] - mTimestampsMillis[0]);
+                    TimeUnit.NANOSECONDS.sleep(dueNanos - System.nanoTime());
+                    buffer = mFreeBuffers.poll();
+                } else {
+                    buffer = mFreeBuffers.take();
+                    if (mRealTime) {
+                        // The recorded pace starts with the first frame, whenever it gets a
+                        // buffer, rather than skipping it when started before buffers are added.
+                        startNanos = System.nanoTime();
+                    }
+                }
+
+                if (buffer == null) {
+                    mSkippedCount++;
+                    continue;
+                }
+
+                RandomAccessFile in = new RandomAccessFile(mFiles[i], "r");
+                try {
+                    in.readFully(buffer, 0, frameSize);
+                } finally {
+                    in.close();
+                }
+
+                mDeliveredCount++;
+                receiver.onFrame(buffer);
+            }
+        } catch (InterruptedException e) {
+            // Stopped before the end of the recording.
+        } catch (IOException e) {
+            mError = e;
+        } finally {
+            mElapsedNanos = System.nanoTime() - startNanos;
+            mFinished.countDown();
+        }
+    }
+
+    private static int getFrameSize(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    /**
+     * A frame file found in a recording, along with what its name says about it.
+     */
+    private static final class RecordedFrame {
+        final File mFile;
+        final long mTimeMillis;
+        final int mWidth;
+        final int mHeight;
+
+        RecordedFrame(File file, long timeMillis, int width, int height) {
+            mFile = file;
+            mTimeMillis = timeMillis;
+            mWidth = width;
+            mHeight = height;
+        }
+    }
+}
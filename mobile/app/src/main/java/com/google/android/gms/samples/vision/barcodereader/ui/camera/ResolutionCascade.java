@@ -0,0 +1,126 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Chooses the resolution that each frame is detected at.
+ * <p/>
+ * Barcodes held up to the camera usually decode fine from a quarter or half resolution grayscale
+ * image, which is far cheaper to search than the full frame.  So detection starts at the lowest
+ * tier, and only moves up a tier after several frames in a row fail to decode.  A hit keeps the
+ * current tier.  After a run of misses at full resolution, there is most likely nothing to decode,
+ * and the cascade starts over from the lowest tier.
+ * <p/>
+ * Every detected frame is counted against its tier, whether or not the cascade is enabled, so the
+ * hit rate and decode time of each tier can be compared.
+ */
+final class ResolutionCascade {
+    /**
+     * Downsampling factors of the tiers, from the lowest resolution up to full resolution.
+     */
+    private static final int[] DOWNSAMPLING = {4, 2, 1};
+
+    /**
+     * Consecutive frames without detections before moving up a tier.
+     */
+    static final int MISSES_BEFORE_ESCALATION = 5;
+
+    private volatile boolean mEnabled;
+
+    // This lock guards the escalation state below.  The tier itself is also read without it.
+    private final Object mLock = new Object();
+    private volatile int mTier;
+    private int mMisses;
+
+    private final AtomicLongArray mFrames = new AtomicLongArray(DOWNSAMPLING.length);
+    private final AtomicLongArray mHits = new AtomicLongArray(DOWNSAMPLING.length);
+    private final AtomicLongArray mDecodeNanos = new AtomicLongArray(DOWNSAMPLING.length);
+
+    void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Starts over from the lowest tier.  The statistics are kept.
+     */
+    void reset() {
+        synchronized (mLock) {
+            mTier = 0;
+            mMisses = 0;
+        }
+    }
+
+    /**
+     * Returns the downsampling factor to detect the next frame at; 1 for full resolution.
+     */
+    int getDownsampling() {
+        return mEnabled ? DOWNSAMPLING[mTier] : 1;
+    }
+
+    /**
+     * Records the outcome of detection on a frame, and moves to another tier if warranted.
+     *
+     * @param downsampling the downsampling factor the frame was detected at
+     * @param hit          whether anything was detected
+     * @param decodeNanos  how long detection took
+     */
+    void record(int downsampling, boolean hit, long decodeNanos) {
+        int tier = getTier(downsampling);
+        mFrames.incrementAndGet(tier);
+        if (hit) {
+            mHits.incrementAndGet(tier);
+        }
+        mDecodeNanos.addAndGet(tier, decodeNanos);
+
+        if (!mEnabled) {
+            return;
+        }
+
+        synchronized (mLock) {
+            // With several detector workers, frames dispatched before the last change of tier
+            // are still coming in.  They say nothing about the current tier.
+            if (tier != mTier) {
+                return;
+            }
+
+            if (hit) {
+                mMisses = 0;
+            } else if (++mMisses >= MISSES_BEFORE_ESCALATION) {
+                mMisses = 0;
+                mTier = (mTier + 1) % DOWNSAMPLING.length;
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of the statistics of each tier, from the lowest resolution up.
+     */
+    List<TierStats> getStats() {
+        List<TierStats> stats = new ArrayList<>(DOWNSAMPLING.length);
+        for (int tier = 0; tier < DOWNSAMPLING.length; ++tier) {
+            stats.add(new TierStats(DOWNSAMPLING[tier],
+                    mFrames.get(tier), mHits.get(tier), mDecodeNanos.get(tier)));
+        }
+        return stats;
+    }
+
+    private static int getTier(int downsampling) {
+        for (int tier = 0; tier < DOWNSAMPLING.length; ++tier) {
+            if (DOWNSAMPLING[tier] == downsampling) {
+                return tier;
+            }
+        }
+        throw new IllegalArgumentException("Unknown downsampling factor: " + downsampling);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import android.Manifest;
+import android.graphics.Rect;
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresPermission;
+import android.view.SurfaceHolder;
+
+import com.google.android.gms.common.images.Size;
+
+/**
+ * A camera that shows its preview on a surface while streaming frames to a detector.  This is
+ * what {@link CameraSourcePreview} and the capture activity need from a camera source, whichever
+ * camera API is behind it.
+ * <p/>
+ * {@link CameraSource} implements it on top of the original camera API, and {@link Camera2Source}
+ * on top of camera2.
+ */
+public interface ScanCameraSource {
+    /**
+     * Told whether the camera could be started.
+     */
+    interface StartCallback {
+        /**
+         * Called on the main thread once the camera has started, after which the preview size
+         * and scan window are known.
+         */
+        @MainThread
+        void onStarted();
+
+        /**
+         * Called on the main thread if the camera or the surface holder could not be used.
+         */
+        @MainThread
+        void onStartFailed(Exception e);
+    }
+
+    /**
+     * Opens the camera and starts sending preview frames to the detector.  The supplied surface
+     * holder is used for the preview so frames can be displayed to the user.  This may return
+     * before the camera has started, which is reported to the callback.
+     */
+    @RequiresPermission(Manifest.permission.CAMERA)
+    void start(SurfaceHolder surfaceHolder, StartCallback callback);
+
+    /**
+     * Closes the camera and stops sending frames to the detector.  The camera source may be
+     * started again afterwards.  This may return before the camera is closed.
+     */
+    void stop();
+
+    /**
+     * Stops the camera and releases the resources of the camera and the detector.
+     */
+    void release();
+
+    /**
+     * Returns the size of the preview frames, in camera image coordinates, or null if the camera
+     * hasn't been started.
+     */
+    @Nullable
+    Size getPreviewSize();
+
+    /**
+     * Returns the selected camera; one of {@link CameraSource#CAMERA_FACING_BACK} or
+     * {@link CameraSource#CAMERA_FACING_FRONT}.
+     */
+    int getCameraFacing();
+
+    /**
+     * Returns the window that detection is restricted to, in upright preview coordinates, or
+     * null if detection runs on the whole frame.
+     */
+    @Nullable
+    Rect getScanWindow();
+
+    /**
+     * Zooms in for a scale factor above 1, and out for one below 1.
+     *
+     * @return the resulting zoom level, on a scale specific to the implementation
+     */
+    int doZoom(float scale);
+}
@@ -0,0 +1,137 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+/**
+ * Cheap check that keeps frames without a chance of decoding away from the detector.
+ * <p/>
+ * While the card is moving, or the lens is still hunting for focus, the preview is blurred and
+ * the detector spends its time on frames it can't decode.  Sharpness is estimated by the variance
+ * of the Laplacian of the luminance, sampled on a sparse grid: edges give a large response, and
+ * blur flattens it.
+ * <p/>
+ * The score depends on the scene and the lighting, so there is no fixed threshold.  A frame is
+ * skipped when it is markedly less sharp than the recent average.  A few frames are always let
+ * through after a run of skips, so that a scene that stays soft is still detected on now and then.
+ * <p/>
+ * Only called from the frame processing thread.
+ */
+final class SharpnessGate {
+    /**
+     * Distance in pixels between samples, in both directions.
+     */
+    static final int GRID_STEP = 4;
+
+    /**
+     * A frame is skipped if its score is below this fraction of the recent average.
+     */
+    private static final double THRESHOLD_RATIO = 0.6;
+
+    /**
+     * Weight of each new score in the recent average.
+     */
+    private static final double SMOOTHING = 0.1;
+
+    /**
+     * Frames that are always accepted after a reset, while the average settles.
+     */
+    private static final int WARM_UP_FRAMES = 5;
+
+    /**
+     * Consecutive frames that may be skipped before one is let through regardless.
+     */
+    private static final int MAX_CONSECUTIVE_SKIPS = 4;
+
+    private double mAverage;
+    private int mWarmUp;
+    private int mConsecutiveSkips;
+
+    // Written only by the processing thread, and read from anywhere.
+    private volatile long mFrameCount;
+    private volatile long mSkipCount;
+
+    SharpnessGate() {
+        reset();
+    }
+
+    /**
+     * Forgets the recent average, for instance when the camera restarts.  The counts are kept.
+     */
+    void reset() {
+        mAverage = 0;
+        mWarmUp = WARM_UP_FRAMES;
+        mConsecutiveSkips = 0;
+    }
+
+    /**
+     * Scores the luminance plane at the start of the given array, and decides whether the frame
+     * is sharp enough to detect on.
+     *
+     * @return false if the frame should be skipped
+     */
+    boolean accept(byte[] luma, int width, int height) {
+        double score = measure(luma, width, height);
+        mFrameCount++;
+
+        boolean accept;
+        if (mWarmUp > 0) {
+            mWarmUp--;
+            mAverage = (mAverage == 0) ? score : mAverage + SMOOTHING * (score - mAverage);
+            accept = true;
+        } else {
+            accept = (score >= THRESHOLD_RATIO * mAverage)
+                    || (mConsecutiveSkips >= MAX_CONSECUTIVE_SKIPS);
+            mAverage += SMOOTHING * (score - mAverage);
+        }
+
+        if (accept) {
+            mConsecutiveSkips = 0;
+        } else {
+            mConsecutiveSkips++;
+            mSkipCount++;
+        }
+        return accept;
+    }
+
+    /**
+     * Returns the fraction of frames that were skipped.
+     */
+    float getSkipRatio() {
+        long frames = mFrameCount;
+        return (frames > 0) ? (float) mSkipCount / frames : 0;
+    }
+
+    /**
+     * Returns the variance of the 4-neighbor Laplacian of the luminance plane, sampled every
+     * {@link #GRID_STEP} pixels in each direction.
+     */
+    static double measure(byte[] luma, int width, int height) {
+        long sum = 0;
+        long sumOfSquares = 0;
+        int count = 0;
+
+        for (int y = 1; y < height - 1; y += GRID_STEP) {
+            int row = y * width;
+            for (int x = 1; x < width - 1; x += GRID_STEP) {
+                int center = row + x;
+                int laplacian = 4 * (luma[center] & 0xff)
+                        - (luma[center - 1] & 0xff)
+                        - (luma[center + 1] & 0xff)
+                        - (luma[center - width] & 0xff)
+                        - (luma[center + width] & 0xff);
+                sum += laplacian;
+                sumOfSquares += laplacian * laplacian;
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+        double mean = (double) sum / count;
+        return (double) sumOfSquares / count - mean * mean;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A small set of items that is read far more often than its membership changes, as the graphics of
+ * the overlay are drawn on every redraw while barcodes only come and go now and then.
+ * <p/>
+ * Readers get an immutable snapshot, which they can index into without locking and without
+ * creating an iterator.  Writers copy the current snapshot and swap the copy in with a compare and
+ * set, retrying if another writer got there first, and only when membership actually changes.
+ * Neither readers nor writers ever block.  Unlike a {@link
+ * java.util.concurrent.CopyOnWriteArrayList}, a reader holds on to one snapshot for a whole pass,
+ * so its size can't change under it, and writers don't take a lock.
+ */
+final class SnapshotSet<T> {
+    private final AtomicReference<List<T>> mSnapshot =
+            new AtomicReference<>(Collections.<T>emptyList());
+
+    /**
+     * Returns the current members, in the order they were added.  The list never changes.
+     */
+    List<T> get() {
+        return mSnapshot.get();
+    }
+
+    /**
+     * Adds an item unless it is a member already.
+     *
+     * @return whether the item was added
+     */
+    boolean add(T item) {
+        while (true) {
+            List<T> current = mSnapshot.get();
+            if (current.contains(item)) {
+                return false;
+            }
+            List<T> next = new ArrayList<>(current.size() + 1);
+            next.addAll(current);
+            next.add(item);
+            if (mSnapshot.compareAndSet(current, Collections.unmodifiableList(next))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes an item if it is a member.
+     *
+     * @return whether the item was removed
+     */
+    boolean remove(T item) {
+        while (true) {
+            List<T> current = mSnapshot.get();
+            if (!current.contains(item)) {
+                return false;
+            }
+            List<T> next = new ArrayList<>(current);
+            next.remove(item);
+            if (mSnapshot.compareAndSet(current, Collections.unmodifiableList(next))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes all items.
+     *
+     * @return whether there were any
+     */
+    boolean clear() {
+        return !mSnapshot.getAndSet(Collections.<T>emptyList()).isEmpty();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import java.util.Locale;
+
+/**
+ * Detection statistics for one resolution tier of the camera source.  See
+ * {@link CameraSource#getResolutionTierStats()}.
+ */
+public final class TierStats {
+    private final int mDownsampling;
+    private final long mFrameCount;
+    private final long mHitCount;
+    private final long mDecodeNanos;
+
+    TierStats(int downsampling, long frameCount, long hitCount, long decodeNanos) {
+        mDownsampling = downsampling;
+        mFrameCount = frameCount;
+        mHitCount = hitCount;
+        mDecodeNanos = decodeNanos;
+    }
+
+    /**
+     * Returns the factor that frames of this tier are downsampled by; 1 for full resolution.
+     */
+    public int getDownsampling() {
+        return mDownsampling;
+    }
+
+    /**
+     * Returns the number of frames detected at this tier.
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Returns the number of frames at this tier in which something was detected.
+     */
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Returns the fraction of frames at this tier in which something was detected.
+     */
+    public float getHitRate() {
+        return (mFrameCount > 0) ? (float) mHitCount / mFrameCount : 0;
+    }
+
+    /**
+     * Returns the mean time the detector took per frame at this tier, in milliseconds.
+     */
+    public float getMeanDecodeMillis() {
+        return (mFrameCount > 0) ? mDecodeNanos / 1e6f / mFrameCount : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "1/%d resolution: %d frames, %.1f%% hits, %.2f ms/frame",
+                mDownsampling, mFrameCount, getHitRate() * 100, getMeanDecodeMillis());
+    }
+}
@@ -7,12 +7,17 @@ package org.qccoders.qcvoc;
 
 import android.Manifest;
 import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
+import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.design.widget.Snackbar;
 import android.support.v4.app.ActivityCompat;
+import android.support.v4.content.LocalBroadcastManager;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.util.Log;
@@ -24,6 +29,8 @@ import android.webkit.WebViewClient;
 import android.widget.ProgressBar;
 import android.widget.Toast;
 
+import com.google.android.gms.samples.vision.barcodereader.BarcodeCaptureActivity;
+
 import org.qccoders.qcvoc.features.BarcodeHandler;
 import org.qccoders.qcvoc.features.CodeHandler;
 import org.qccoders.qcvoc.features.PhotoHandler;
@@ -41,6 +48,14 @@ public class MainActivity extends AppCompatActivity {
     private BarcodeHandler barcodeHandler = new BarcodeHandler(this);
     private PhotoHandler photoHandler = new PhotoHandler(this);
 
+    // receives the barcodes of a continuous scan while the scanner is still open.
+    private BroadcastReceiver barcodeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            webview.evaluateJavascript(barcodeHandler.returnBarcode(intent), null);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -69,19 +84,20 @@ public class MainActivity extends AppCompatActivity {
                     return true;
                 }
 
-                String query = request.getUrl().getQuery();
+                // Commands come as a parameter without a value, such as ?scan&callback=...,
+                // which getQueryParameter returns as an empty string.
+                Uri url = request.getUrl();
+                String callback = url.getQueryParameter("callback");
 
-                if (query != null) {
-                    String queryCommand = query.substring(0, query.indexOf('&'));
-                    String callback = query.substring(query.indexOf('=') + 1);
-
-                    if (queryCommand.equals("scan")) {
-                        barcodeHandler.scanBarcode(callback);
-                        return true;
-                    } else if (queryCommand.equals("acquirePhoto")) {
-                        takePhotoWithPermission(callback);
-                        return true;
-                    }
+                if (url.getQueryParameter("scan") != null) {
+                    barcodeHandler.scanBarcode(callback,
+                            url.getQueryParameter("profile"),
+                            "true".equals(url.getQueryParameter("continuous")),
+                            "camera2".equals(url.getQueryParameter("camera")));
+                    return true;
+                } else if (url.getQueryParameter("acquirePhoto") != null) {
+                    takePhotoWithPermission(callback);
+                    return true;
                 }
 
                 return !Utilities.urlIsTrusted(request.getUrl().toString());
@@ -91,6 +107,15 @@ public class MainActivity extends AppCompatActivity {
         webview.getSettings().setJavaScriptEnabled(true);
         webview.getSettings().setDomStorageEnabled(true);
         webview.loadUrl(prodUrl);
+
+        LocalBroadcastManager.getInstance(this).registerReceiver(barcodeReceiver,
+                new IntentFilter(BarcodeCaptureActivity.BarcodeScanned));
+    }
+
+    @Override
+    protected void onDestroy() {
+        LocalBroadcastManager.getInstance(this).unregisterReceiver(barcodeReceiver);
+        super.onDestroy();
     }
 
     public void takePhotoWithPermission(String callback) {
@@ -121,10 +146,26 @@ public class MainActivity extends AppCompatActivity {
 
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
-       if (requestCode == BARCODE_REQUEST && resultCode == Activity.RESULT_OK) {
-            webview.evaluateJavascript(barcodeHandler.returnBarcode(data), null);
-        } else if (requestCode == PHOTO_REQUEST && resultCode == Activity.RESULT_OK) {
-            webview.evaluateJavascript(photoHandler.returnPhoto(), null);
+        if (requestCode == BARCODE_REQUEST) {
+            if (resultCode == Activity.RESULT_OK && data != null) {
+                webview.evaluateJavascript(barcodeHandler.returnBarcode(data), null);
+            } else if (resultCode == Activity.RESULT_CANCELED) {
+                // Also how a continuous scan ends, after its barcodes were delivered.
+                Log.d("MainActivity", getString(R.string.barcode_failure));
+            } else {
+                String message = getString(R.string.barcode_error, "result " + resultCode);
+                Log.w("MainActivity", message);
+                Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+            }
+        } else if (requestCode == PHOTO_REQUEST) {
+            if (resultCode == Activity.RESULT_OK) {
+                webview.evaluateJavascript(photoHandler.returnPhoto(), null);
+            } else if (resultCode == Activity.RESULT_CANCELED) {
+                Log.d("MainActivity", "Photo capture cancelled");
+            } else {
+                Log.w("MainActivity", "Photo capture failed with result " + resultCode);
+                Toast.makeText(this, "Unable to take a photo", Toast.LENGTH_LONG).show();
+            }
         }
     }
 
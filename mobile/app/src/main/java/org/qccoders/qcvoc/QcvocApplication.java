@@ -0,0 +1,21 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package org.qccoders.qcvoc;
+
+import android.app.Application;
+
+import com.google.android.gms.samples.vision.barcodereader.SharedBarcodeDetector;
+
+public class QcvocApplication extends Application {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Get the barcode detector ready while the web app loads, so that the first scan
+        // doesn't have to wait for it.
+        SharedBarcodeDetector.warmUp(this);
+    }
+}
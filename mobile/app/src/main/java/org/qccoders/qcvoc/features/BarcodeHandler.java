@@ -8,11 +8,14 @@ package org.qccoders.qcvoc.features;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.google.android.gms.samples.vision.barcodereader.BarcodeCaptureActivity;
 import com.google.android.gms.vision.barcode.Barcode;
 
+import org.qccoders.qcvoc.shared.Callbacks;
+
 import static org.qccoders.qcvoc.shared.Constants.BARCODE_REQUEST;
 
 public class BarcodeHandler {
@@ -23,11 +26,16 @@ public class BarcodeHandler {
         this.mContext = mContext;
     }
 
-    public void scanBarcode(String callback) {
+    public void scanBarcode(String callback, String profile, boolean continuous,
+                            boolean useCamera2) {
         this.callback = callback;
 
         Intent intent = new Intent(mContext, BarcodeCaptureActivity.class);
         intent.putExtra(BarcodeCaptureActivity.AutoFocus, true);
+        intent.putExtra(BarcodeCaptureActivity.ScanRequestedAt, SystemClock.elapsedRealtime());
+        intent.putExtra(BarcodeCaptureActivity.ScanProfileName, profile);
+        intent.putExtra(BarcodeCaptureActivity.Continuous, continuous);
+        intent.putExtra(BarcodeCaptureActivity.UseCamera2, useCamera2);
 
         ((Activity) mContext).startActivityForResult(intent, BARCODE_REQUEST);
     }
@@ -35,6 +43,6 @@ public class BarcodeHandler {
     public String returnBarcode(Intent data) {
         Barcode barcode = data.getParcelableExtra(BarcodeCaptureActivity.BarcodeObject);
         Log.d("BarcodeHandler", barcode.displayValue);
-        return callback + "('" + barcode.displayValue + "')";
+        return Callbacks.call(callback, barcode.displayValue);
     }
 }
@@ -19,12 +19,16 @@ import android.util.Base64;
 import android.util.Log;
 import android.widget.Toast;
 
+import org.qccoders.qcvoc.shared.Callbacks;
+
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 
 import static org.qccoders.qcvoc.shared.Constants.PHOTO_REQUEST;
 
 public class PhotoHandler {
+    private static final String JPEG_MIME_TYPE = "image/jpeg";
+
     private Context mContext;
     private Uri mPhotoUri;
     private String callback;
@@ -73,10 +77,11 @@ public class PhotoHandler {
         ByteArrayOutputStream stream = new ByteArrayOutputStream();
         bitmap.compress(Bitmap.CompressFormat.JPEG, 70, stream);
         byte[] byteArray = stream.toByteArray();
-        String photo = "data:image/jpeg;base64," + Base64.encodeToString(byteArray, Base64.NO_WRAP);
+        String base64 = Base64.encodeToString(byteArray, Base64.NO_WRAP);
 
-        Log.d("MainActivity", "Photo of size " + photo.length() + " bytes taken");
-        return callback + "('" + photo + "')";
+        Log.d("MainActivity", "Photo of size "
+                + Callbacks.dataUriLength(JPEG_MIME_TYPE, base64) + " bytes taken");
+        return Callbacks.callWithDataUri(callback, JPEG_MIME_TYPE, base64);
 
     }
 
@@ -0,0 +1,59 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package org.qccoders.qcvoc.shared;
+
+/**
+ * Builds the javascript that hands a result back to the web app, as a call to the callback it
+ * named, like inputBarcode('1234').  A photo makes for a string of a few hundred kilobytes, so
+ * each call is built in a single buffer of the right size.
+ */
+public class Callbacks {
+    private static final String CALL_START = "('";
+    private static final String CALL_END = "')";
+    private static final String DATA_URI_START = "data:";
+    private static final String BASE64_START = ";base64,";
+
+    /**
+     * Returns a call to the callback with a string argument.
+     */
+    public static String call(String callback, String argument) {
+        return new StringBuilder(callback.length() + CALL_START.length() + argument.length()
+                + CALL_END.length())
+                .append(callback)
+                .append(CALL_START)
+                .append(argument)
+                .append(CALL_END)
+                .toString();
+    }
+
+    /**
+     * Returns a call to the callback with a data URI argument, like
+     * inputPhoto('data:image/jpeg;base64,...').
+     *
+     * @param mimeType the type of the data, like image/jpeg
+     * @param base64   the data, encoded in base64
+     */
+    public static String callWithDataUri(String callback, String mimeType, String base64) {
+        return new StringBuilder(callback.length() + CALL_START.length()
+                + dataUriLength(mimeType, base64) + CALL_END.length())
+                .append(callback)
+                .append(CALL_START)
+                .append(DATA_URI_START)
+                .append(mimeType)
+                .append(BASE64_START)
+                .append(base64)
+                .append(CALL_END)
+                .toString();
+    }
+
+    /**
+     * Returns the length of the data URI of base64 encoded data.
+     */
+    public static int dataUriLength(String mimeType, String base64) {
+        return DATA_URI_START.length() + mimeType.length() + BASE64_START.length()
+                + base64.length();
+    }
+}
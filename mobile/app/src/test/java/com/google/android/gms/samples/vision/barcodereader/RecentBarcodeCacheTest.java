@@ -0,0 +1,76 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecentBarcodeCacheTest {
+    private static final long TTL = 5000;
+
+    @Test
+    public void dropsRepeatsWithinTimeToLive() {
+        RecentBarcodeCache cache = new RecentBarcodeCache(4, TTL);
+        assertTrue(cache.offer("1001", 0));
+        assertFalse(cache.offer("1001", 100));
+        assertFalse(cache.offer("1001", TTL));
+        assertTrue(cache.offer("1002", TTL));
+    }
+
+    @Test
+    public void reportsAgainOnceExpired() {
+        RecentBarcodeCache cache = new RecentBarcodeCache(4, TTL);
+        assertTrue(cache.offer("1001", 0));
+        assertTrue(cache.offer("1001", TTL));
+        assertFalse(cache.offer("1001", TTL + 1));
+    }
+
+    @Test
+    public void seeingAgainExtendsTimeToLive() {
+        RecentBarcodeCache cache = new RecentBarcodeCache(4, TTL);
+        assertTrue(cache.offer("1001", 0));
+
+        // A card held in view for longer than the time to live is still only reported once.
+        for (long now = 1000; now <= 3 * TTL; now += 1000) {
+            assertFalse(cache.offer("1001", now));
+        }
+        assertTrue(cache.offer("1001", 4 * TTL));
+    }
+
+    @Test
+    public void evictsLeastRecentlySeenWhenFull() {
+        RecentBarcodeCache cache = new RecentBarcodeCache(3, TTL);
+        assertTrue(cache.offer("1001", 0));
+        assertTrue(cache.offer("1002", 1));
+        assertTrue(cache.offer("1003", 2));
+
+        // Seeing 1001 again makes 1002 the least recently seen.
+        assertFalse(cache.offer("1001", 3));
+        assertTrue(cache.offer("1004", 4));
+        assertEquals(3, cache.size());
+
+        assertTrue(cache.offer("1002", 5));
+        assertFalse(cache.offer("1001", 6));
+        assertFalse(cache.offer("1004", 7));
+    }
+
+    @Test
+    public void sizeStaysBounded() {
+        RecentBarcodeCache cache = new RecentBarcodeCache(16, TTL);
+        for (int i = 0; i < 10000; ++i) {
+            assertTrue(cache.offer(Integer.toString(i), i));
+            assertTrue(cache.size() <= 16);
+        }
+        assertEquals(16, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertTrue(cache.offer("9999", 10000));
+    }
+}
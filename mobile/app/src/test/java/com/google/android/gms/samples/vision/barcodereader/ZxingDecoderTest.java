@@ -0,0 +1,117 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader;
+
+import com.google.android.gms.vision.barcode.Barcode;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.oned.Code128Writer;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that {@link ZxingDecoder} reads a card barcode in the scan window of a frame, in any
+ * orientation, and only in the formats it is asked for.  The decode time is measured by the
+ * ZxingDecoderBenchmark of the benchmarks module.
+ */
+public class ZxingDecoderTest {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 512;
+    private static final String CARD = "QC0012345";
+
+    @Test
+    public void decodesUprightFrame() throws WriterException {
+        ZxingDecoder decoder = new ZxingDecoder(
+                ZxingBarcodeDetector.toZxingFormats(Barcode.CODE_39 | Barcode.CODE_128));
+        Result result = decoder.decode(createCard(new Random(1)), WIDTH, HEIGHT, 0);
+
+        assertNotNull(result);
+        assertEquals(CARD, result.getText());
+        assertEquals(BarcodeFormat.CODE_128, result.getBarcodeFormat());
+    }
+
+    @Test
+    public void decodesRotatedFrames() throws WriterException {
+        ZxingDecoder decoder = new ZxingDecoder(Collections.singletonList(BarcodeFormat.CODE_128));
+        byte[] frame = createCard(new Random(2));
+
+        // A frame that needs rotation r is the upright image turned back by r quarter turns.
+        int width = WIDTH;
+        int height = HEIGHT;
+        for (int rotation = 1; rotation < 4; ++rotation) {
+            frame = rotateCounterClockwise(frame, width, height);
+            int swap = width;
+            width = height;
+            height = swap;
+
+            Result result = decoder.decode(frame, width, height, rotation);
+            assertNotNull("rotation " + rotation, result);
+            assertEquals(CARD, result.getText());
+        }
+    }
+
+    @Test
+    public void ignoresOtherFormats() throws WriterException {
+        ZxingDecoder decoder = new ZxingDecoder(Collections.singletonList(BarcodeFormat.QR_CODE));
+        assertNull(decoder.decode(createCard(new Random(3)), WIDTH, HEIGHT, 0));
+    }
+
+    @Test
+    public void mapsFormatsBothWays() {
+        assertEquals(Arrays.asList(BarcodeFormat.CODE_128, BarcodeFormat.CODE_39),
+                ZxingBarcodeDetector.toZxingFormats(Barcode.CODE_39 | Barcode.CODE_128));
+        assertEquals(13, ZxingBarcodeDetector.toZxingFormats(Barcode.ALL_FORMATS).size());
+        for (BarcodeFormat format : ZxingBarcodeDetector.toZxingFormats(Barcode.ALL_FORMATS)) {
+            assertEquals(Collections.singletonList(format), ZxingBarcodeDetector.toZxingFormats(
+                    ZxingBarcodeDetector.toBarcodeFormat(format)));
+        }
+        assertEquals(0, ZxingBarcodeDetector.toBarcodeFormat(BarcodeFormat.MAXICODE));
+    }
+
+    /**
+     * Returns an NV21 frame with a Code 128 card barcode in its middle, on a gray background with
+     * a bit of sensor noise.
+     */
+    private static byte[] createCard(Random random) throws WriterException {
+        BitMatrix bars = new Code128Writer().encode(CARD, BarcodeFormat.CODE_128, 800, 200);
+        int left = (WIDTH - bars.getWidth()) / 2;
+        int top = (HEIGHT - bars.getHeight()) / 2;
+
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                int bx = x - left;
+                int by = y - top;
+                boolean bar = bx >= 0 && by >= 0 && bx < bars.getWidth() && by < bars.getHeight()
+                        && bars.get(bx, by);
+                int luma = (bar ? 40 : 200) + random.nextInt(21) - 10;
+                frame[y * WIDTH + x] = (byte) luma;
+            }
+        }
+        return frame;
+    }
+
+    private static byte[] rotateCounterClockwise(byte[] luma, int width, int height) {
+        byte[] rotated = new byte[width * height];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                // (x, y) ends up at (y, width - 1 - x), in rows of height pixels.
+                rotated[(width - 1 - x) * height + y] = luma[y * width + x];
+            }
+        }
+        return rotated;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CameraProfileTest {
+    private static final String FINGERPRINT = "google/sargo/sargo:9/PQ3B/1:user/release-keys";
+
+    private File mFile;
+
+    @Before
+    public void createFile() throws IOException {
+        mFile = File.createTempFile("camera", ".profile");
+        assertTrue(mFile.delete());
+    }
+
+    @After
+    public void deleteFile() {
+        mFile.delete();
+    }
+
+    @Test
+    public void readsWhatWasWritten() throws IOException {
+        CameraProfile written = new CameraProfile(FINGERPRINT, 0, 0, 90, 1600, 1024, 15000);
+        written.setSizes(1600, 1200, 4032, 3024);
+        written.setFpsRanges(0,
+                Arrays.asList(new int[]{15000, 15000}, new int[]{7500, 30000}));
+        written.setModes(Arrays.asList("auto", "continuous-picture"),
+                Arrays.asList("off", "torch"));
+        written.write(mFile);
+
+        CameraProfile read = CameraProfile.read(mFile);
+        assertTrue(read.matches(FINGERPRINT, 0, 1600, 1024, 15000));
+        assertEquals(0, read.getCameraId());
+        assertEquals(0, read.getFacing());
+        assertEquals(90, read.getOrientation());
+        assertEquals(1600, read.getPreviewWidth());
+        assertEquals(1200, read.getPreviewHeight());
+        assertTrue(read.hasPictureSize());
+        assertEquals(4032, read.getPictureWidth());
+        assertEquals(3024, read.getPictureHeight());
+        assertArrayEquals(new int[]{15000, 15000}, read.getFpsRange());
+        assertEquals(0, read.getFpsRangeIndex());
+        assertEquals(2, read.getSupportedFpsRanges().size());
+        assertArrayEquals(new int[]{7500, 30000}, read.getSupportedFpsRanges().get(1));
+        assertEquals(Arrays.asList("auto", "continuous-picture"), read.getFocusModes());
+        assertEquals(Arrays.asList("off", "torch"), read.getFlashModes());
+        assertFalse(mFile.getPath() + ".tmp", new File(mFile.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void keepsCamerasWithoutFlashOrPictureSize() throws IOException {
+        CameraProfile written = new CameraProfile(FINGERPRINT, 1, 1, 270, 640, 480, 30000);
+        written.setSizes(640, 480, 0, 0);
+        written.setFpsRanges(0,
+                Collections.singletonList(new int[]{30000, 30000}));
+        written.setModes(Collections.singletonList("fixed"), null);
+        written.write(mFile);
+
+        CameraProfile read = CameraProfile.read(mFile);
+        assertFalse(read.hasPictureSize());
+        assertTrue(read.getFlashModes().isEmpty());
+    }
+
+    @Test
+    public void onlyMatchesTheSameSystemAndRequest() {
+        CameraProfile profile = new CameraProfile(FINGERPRINT, 0, 0, 90, 1600, 1024, 15000);
+
+        assertFalse(profile.matches(FINGERPRINT.replace("PQ3B", "PQ3C"), 0, 1600, 1024, 15000));
+        assertFalse(profile.matches(FINGERPRINT, 1, 1600, 1024, 15000));
+        assertFalse(profile.matches(FINGERPRINT, 0, 1024, 768, 15000));
+        assertFalse(profile.matches(FINGERPRINT, 0, 1600, 1024, 30000));
+    }
+
+    @Test
+    public void missingProfileReadsAsNone() throws IOException {
+        assertNull(CameraProfile.read(mFile));
+    }
+
+    @Test
+    public void olderLayoutReadsAsNone() throws IOException {
+        FileOutputStream out = new FileOutputStream(mFile);
+        out.write(new byte[]{0, 0, 0, 0});
+        out.close();
+
+        assertNull(CameraProfile.read(mFile));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedProfileFailsToRead() throws IOException {
+        FileOutputStream out = new FileOutputStream(mFile);
+        out.write(new byte[]{0, 0, 0, 2, 0});
+        out.close();
+
+        CameraProfile.read(mFile);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FpsGovernorTest {
+    private static final long FAST_DETECT_NANOS = 10000000L;
+    private static final long SLOW_DETECT_NANOS = 200000000L;
+
+    private long mNowNanos;
+    private long mReceived;
+    private long mOverwritten;
+
+    @Test
+    public void stepsDownFromAnInitialRangeAboveTheGovernedMaximum() {
+        List<int[]> supported = Arrays.asList(
+                new int[]{15000, 15000}, new int[]{7500, 30000}, new int[]{30000, 60000});
+        FpsGovernor governor = new FpsGovernor(supported, 2, 1);
+
+        assertArrayEquals(new int[]{7500, 30000}, runWindow(governor, SLOW_DETECT_NANOS, 0.5f));
+    }
+
+    @Test
+    public void startsFromTheRangeOfAProfileReadBack() throws IOException {
+        // Every range read back is a new array, equal to but not the one it was written from.
+        CameraProfile written = new CameraProfile("fingerprint", 0, 0, 90, 1600, 1024, 30000);
+        written.setFpsRanges(2, Arrays.asList(new int[]{15000, 15000}, new int[]{7500, 30000},
+                new int[]{30000, 30000}));
+        File file = File.createTempFile("camera", ".profile");
+        CameraProfile read;
+        try {
+            written.write(file);
+            read = CameraProfile.read(file);
+        } finally {
+            assertTrue(file.delete());
+        }
+
+        FpsGovernor governor =
+                new FpsGovernor(read.getSupportedFpsRanges(), read.getFpsRangeIndex(), 1);
+
+        assertArrayEquals(new int[]{15000, 15000}, runWindow(governor, SLOW_DETECT_NANOS, 0.5f));
+        assertArrayEquals(new int[]{30000, 30000}, runWindow(governor, FAST_DETECT_NANOS, 0));
+    }
+
+    @Test
+    public void keepsTheInitialRangeAmongThoseWithTheSameMaximum() {
+        List<int[]> supported = Arrays.asList(
+                new int[]{10000, 10000}, new int[]{7500, 30000}, new int[]{15000, 30000});
+        FpsGovernor governor = new FpsGovernor(supported, 1, 1);
+
+        assertArrayEquals(new int[]{10000, 10000}, runWindow(governor, SLOW_DETECT_NANOS, 0));
+        assertArrayEquals(new int[]{7500, 30000}, runWindow(governor, FAST_DETECT_NANOS, 0));
+    }
+
+    @Test
+    public void staysPutWhileTheDetectorKeepsUp() {
+        List<int[]> supported = Arrays.asList(new int[]{15000, 15000}, new int[]{30000, 30000});
+        FpsGovernor governor = new FpsGovernor(supported, 1, 1);
+
+        assertNull(runWindow(governor, FAST_DETECT_NANOS, 0));
+    }
+
+    /**
+     * Records one full decision window of frames that each took detectNanos, with the given share
+     * of frames overwritten, and returns the governor's decision at its end, if it made one.
+     */
+    private int[] runWindow(FpsGovernor governor, long detectNanos, float dropRatio) {
+        int[] decision = null;
+        for (int frame = 0; (frame <= 20) && (decision == null); ++frame) {
+            mReceived += 10;
+            mOverwritten += Math.round(10 * dropRatio);
+            decision = governor.record(detectNanos, mReceived, mOverwritten, mNowNanos);
+            mNowNanos += 100000000L;
+        }
+        return decision;
+    }
+}
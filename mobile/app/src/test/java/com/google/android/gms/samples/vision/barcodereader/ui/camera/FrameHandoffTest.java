@@ -0,0 +1,133 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the latest-frame-wins semantics of {@link FrameHandoff}.  Its timing against the monitor
+ * based handoff it replaced is measured by HandoffBenchmark in the benchmarks module.
+ */
+public class FrameHandoffTest {
+    private static final int ITEM_COUNT = 10000;
+
+    @Test
+    public void newerItemDisplacesPendingOne() {
+        FrameHandoff<String> handoff = new FrameHandoff<>();
+        assertNull(handoff.offer("a"));
+        assertEquals("a", handoff.offer("b"));
+        assertEquals("b", handoff.take());
+        assertNull(handoff.poll());
+    }
+
+    @Test
+    public void pollDrainsTheSlot() {
+        FrameHandoff<String> handoff = new FrameHandoff<>();
+        handoff.offer("a");
+        assertEquals("a", handoff.poll());
+        assertNull(handoff.poll());
+    }
+
+    @Test
+    public void takeReturnsNullOnceInactive() {
+        FrameHandoff<String> handoff = new FrameHandoff<>();
+        handoff.offer("a");
+        handoff.setActive(false);
+        assertNull(handoff.take());
+        assertEquals("a", handoff.poll());
+    }
+
+    @Test
+    public void takeWaitsForAnOffer() throws InterruptedException {
+        final FrameHandoff<String> handoff = new FrameHandoff<>();
+        final AtomicReference<String> taken = new AtomicReference<>();
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                taken.set(handoff.take());
+            }
+        });
+        consumer.start();
+
+        handoff.offer("a");
+        consumer.join();
+        assertSame("a", taken.get());
+    }
+
+    @Test
+    public void setActiveWakesWaitingConsumer() throws InterruptedException {
+        final FrameHandoff<String> handoff = new FrameHandoff<>();
+        final AtomicReference<String> taken = new AtomicReference<>("none");
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                taken.set(handoff.take());
+            }
+        });
+        consumer.start();
+
+        handoff.setActive(false);
+        consumer.join();
+        assertNull(taken.get());
+    }
+
+    /**
+     * However the producer and consumer interleave, every item comes back exactly once: taken by
+     * the consumer, displaced by a newer one, or drained at the end.
+     */
+    @Test
+    public void everyItemComesBackExactlyOnce() throws InterruptedException {
+        final FrameHandoff<Integer> handoff = new FrameHandoff<>();
+        final List<Integer> taken = new ArrayList<>();
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Integer item;
+                while ((item = handoff.take()) != null) {
+                    taken.add(item);
+                }
+            }
+        });
+        consumer.start();
+
+        List<Integer> displaced = new ArrayList<>();
+        for (int i = 0; i < ITEM_COUNT; ++i) {
+            Integer item = handoff.offer(i);
+            if (item != null) {
+                displaced.add(item);
+            }
+        }
+        handoff.setActive(false);
+        consumer.join();
+        Integer pending = handoff.poll();
+        if (pending != null) {
+            displaced.add(pending);
+        }
+
+        Set<Integer> returned = new HashSet<>(taken);
+        for (Integer item : displaced) {
+            assertTrue("returned twice: " + item, returned.add(item));
+        }
+        assertEquals(ITEM_COUNT, taken.size() + displaced.size());
+        assertEquals(ITEM_COUNT, returned.size());
+
+        // The consumer only ever sees newer items than the last it took.
+        for (int i = 1; i < taken.size(); ++i) {
+            assertTrue(taken.get(i) > taken.get(i - 1));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class Nv21Test {
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 2;
+
+    // The NV21 image every layout below describes: Y 1..8, then V 20 and U 10, V 21 and U 11.
+    private static final byte[] EXPECTED = {1, 2, 3, 4, 5, 6, 7, 8, 20, 10, 21, 11};
+
+    @Test
+    public void packsPlanarChroma() {
+        ByteBuffer y = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        ByteBuffer u = ByteBuffer.wrap(new byte[]{10, 11});
+        ByteBuffer v = ByteBuffer.wrap(new byte[]{20, 21});
+
+        byte[] out = new byte[WIDTH * HEIGHT * 3 / 2];
+        Nv21.fromYuv420(y, WIDTH, u, v, 2, 1, WIDTH, HEIGHT, out);
+
+        assertArrayEquals(EXPECTED, out);
+    }
+
+    @Test
+    public void packsInterleavedChromaAndDropsRowPadding() {
+        // Rows padded to a stride of 6, and U and V views into one interleaved VU plane, the way
+        // most devices lay out their preview images.  The last row stops short of a full stride.
+        ByteBuffer y = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 0, 0, 5, 6, 7, 8});
+        byte[] vu = {20, 10, 21, 11};
+        ByteBuffer v = ByteBuffer.wrap(vu, 0, 3).slice();
+        ByteBuffer u = ByteBuffer.wrap(vu, 1, 3).slice();
+
+        byte[] out = new byte[WIDTH * HEIGHT * 3 / 2];
+        Nv21.fromYuv420(y, 6, u, v, 6, 2, WIDTH, HEIGHT, out);
+
+        assertArrayEquals(EXPECTED, out);
+        assertEquals(0, y.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddSizes() {
+        Nv21.fromYuv420(ByteBuffer.allocate(9), 3, ByteBuffer.allocate(2), ByteBuffer.allocate(2),
+                2, 1, 3, 3, new byte[14]);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReplayFrameSourceTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 32;
+    private static final int FRAME_SIZE = WIDTH * HEIGHT * 3 / 2;
+
+    private File mRecording;
+
+    @Before
+    public void createRecording() throws IOException {
+        mRecording = File.createTempFile("recording", "");
+        assertTrue(mRecording.delete() && mRecording.mkdir());
+    }
+
+    @After
+    public void deleteRecording() {
+        File[] files = mRecording.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mRecording.delete();
+    }
+
+    @Test
+    public void deliversFramesInTimestampOrder() throws Exception {
+        // Written out of order, and with timestamps that don't sort as strings.
+        record(900, 3);
+        record(50, 0);
+        record(1000, 4);
+        record(100, 1);
+        record(500, 2);
+
+        final ReplayFrameSource replay = ReplayFrameSource.open(mRecording, 1, false);
+        assertEquals(WIDTH, replay.getWidth());
+        assertEquals(HEIGHT, replay.getHeight());
+        assertEquals(1, replay.getRotation());
+        assertEquals(5, replay.getFrameCount());
+
+        final List<Integer> delivered = new ArrayList<>();
+        replay.start(new FrameSource.Receiver() {
+            @Override
+            public void onFrame(byte[] data) {
+                delivered.add((int) data[0]);
+                replay.addBuffer(data);
+            }
+        });
+        replay.addBuffer(new byte[FRAME_SIZE + 4]);
+
+        assertTrue(replay.awaitFinished(5, TimeUnit.SECONDS));
+        replay.stop();
+        assertEquals(5, replay.getDeliveredCount());
+        assertEquals(0, replay.getSkippedCount());
+        for (int i = 0; i < delivered.size(); ++i) {
+            assertEquals(i, (int) delivered.get(i));
+        }
+    }
+
+    @Test
+    public void keepsRecordedPace() throws Exception {
+        for (int i = 0; i < 4; ++i) {
+            record(1000 + i * 40, i);
+        }
+
+        final ReplayFrameSource replay = ReplayFrameSource.open(mRecording, 0, true);
+        final long[] receivedNanos = new long[4];
+        replay.start(new FrameSource.Receiver() {
+            @Override
+            public void onFrame(byte[] data) {
+                receivedNanos[data[0]] = System.nanoTime();
+                replay.addBuffer(data);
+            }
+        });
+        replay.addBuffer(new byte[FRAME_SIZE]);
+
+        assertTrue(replay.awaitFinished(5, TimeUnit.SECONDS));
+        replay.stop();
+        assertEquals(4, replay.getDeliveredCount());
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(receivedNanos[3] - receivedNanos[0]);
+        assertTrue("replayed in " + elapsedMillis + "ms", elapsedMillis >= 115);
+    }
+
+    @Test
+    public void skipsFramesDueWithoutFreeBuffer() throws Exception {
+        for (int i = 0; i < 4; ++i) {
+            record(i * 10, i);
+        }
+
+        // The only buffer is never handed back, as with a detector that is stuck.
+        ReplayFrameSource replay = ReplayFrameSource.open(mRecording, 0, true);
+        replay.addBuffer(new byte[FRAME_SIZE]);
+        replay.start(new FrameSource.Receiver() {
+            @Override
+            public void onFrame(byte[] data) {
+            }
+        });
+
+        assertTrue(replay.awaitFinished(5, TimeUnit.SECONDS));
+        replay.stop();
+        assertEquals(1, replay.getDeliveredCount());
+        assertEquals(3, replay.getSkippedCount());
+    }
+
+    @Test
+    public void stopsWhileWaitingForBuffer() throws Exception {
+        record(0, 0);
+        record(10, 1);
+
+        ReplayFrameSource replay = ReplayFrameSource.open(mRecording, 0, false);
+        replay.start(new FrameSource.Receiver() {
+            @Override
+            public void onFrame(byte[] data) {
+            }
+        });
+        replay.addBuffer(new byte[FRAME_SIZE]);
+
+        // The second frame waits for a buffer that never comes back, until the replay is stopped.
+        assertFalse(replay.awaitFinished(100, TimeUnit.MILLISECONDS));
+        replay.stop();
+        assertTrue(replay.awaitFinished(0, TimeUnit.MILLISECONDS));
+        assertEquals(1, replay.getDeliveredCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFramesOfDifferentSizes() throws IOException {
+        record(0, 0);
+        write(new File(mRecording, "10_32x32.nv21"), new byte[32 * 32 * 3 / 2]);
+        ReplayFrameSource.open(mRecording, 0, false);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsEmptyRecording() throws IOException {
+        write(new File(mRecording, "notes.txt"), new byte[1]);
+        ReplayFrameSource.open(mRecording, 0, false);
+    }
+
+    /**
+     * Records a frame whose first byte is the given value.
+     */
+    private void record(long timeMillis, int value) throws IOException {
+        byte[] frame = new byte[FRAME_SIZE];
+        frame[0] = (byte) value;
+        write(new File(mRecording, timeMillis + "_" + WIDTH + "x" + HEIGHT + ".nv21"), frame);
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+}
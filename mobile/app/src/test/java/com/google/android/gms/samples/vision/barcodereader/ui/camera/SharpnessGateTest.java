@@ -0,0 +1,137 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link SharpnessGate} tells a sharp barcode from a blurred one, at the size of the
+ * scan window at the capture activity's preview size.  Its cost per frame is measured by
+ * SharpnessGateBenchmark in the benchmarks module.
+ */
+public class SharpnessGateTest {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 512;
+
+    @Test
+    public void skipsBlurredFrames() {
+        byte[] sharp = createBarcode(new Random(2));
+        byte[] blurred = blur(sharp, 4);
+
+        assertTrue(SharpnessGate.measure(sharp, WIDTH, HEIGHT)
+                > 2 * SharpnessGate.measure(blurred, WIDTH, HEIGHT));
+
+        SharpnessGate gate = new SharpnessGate();
+        for (int i = 0; i < 20; ++i) {
+            assertTrue(gate.accept(sharp, WIDTH, HEIGHT));
+        }
+        assertFalse(gate.accept(blurred, WIDTH, HEIGHT));
+        assertTrue(gate.accept(sharp, WIDTH, HEIGHT));
+        assertTrue(gate.getSkipRatio() > 0);
+    }
+
+    @Test
+    public void sharperFramesScoreHigher() {
+        byte[] sharp = createBarcode(new Random(4));
+        double previous = SharpnessGate.measure(sharp, WIDTH, HEIGHT);
+        for (int radius = 1; radius <= 4; ++radius) {
+            double score = SharpnessGate.measure(blur(sharp, radius), WIDTH, HEIGHT);
+            assertTrue("radius " + radius + ": " + score + " vs " + previous, score < previous);
+            previous = score;
+        }
+    }
+
+    @Test
+    public void flatFramesScoreZero() {
+        byte[] flat = new byte[WIDTH * HEIGHT];
+        Arrays.fill(flat, (byte) 128);
+        assertEquals(0, SharpnessGate.measure(flat, WIDTH, HEIGHT), 0);
+    }
+
+    @Test
+    public void letsFramesThroughWhenAllAreBlurred() {
+        byte[] sharp = createBarcode(new Random(3));
+        byte[] blurred = blur(sharp, 4);
+
+        SharpnessGate gate = new SharpnessGate();
+        for (int i = 0; i < 20; ++i) {
+            gate.accept(sharp, WIDTH, HEIGHT);
+        }
+
+        int accepted = 0;
+        for (int i = 0; i < 50; ++i) {
+            if (gate.accept(blurred, WIDTH, HEIGHT)) {
+                accepted++;
+            }
+        }
+        assertTrue("accepted " + accepted, accepted >= 10);
+    }
+
+    /**
+     * Creates a luminance plane of random dark and light bars, like a 1D barcode, on a mid-gray
+     * background with a little noise.
+     */
+    private static byte[] createBarcode(Random random) {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        int[] column = new int[WIDTH];
+        boolean dark = true;
+        for (int x = WIDTH / 8; x < WIDTH * 7 / 8; ) {
+            int bar = 2 + random.nextInt(8);
+            for (int i = 0; i < bar && x < WIDTH; ++i, ++x) {
+                column[x] = dark ? 30 : 220;
+            }
+            dark = !dark;
+        }
+
+        for (int y = 0; y < HEIGHT; ++y) {
+            boolean inCode = (y > HEIGHT / 4) && (y < HEIGHT * 3 / 4);
+            for (int x = 0; x < WIDTH; ++x) {
+                int value = (inCode && column[x] != 0) ? column[x] : 128;
+                luma[y * WIDTH + x] = (byte) (value + random.nextInt(5) - 2);
+            }
+        }
+        return luma;
+    }
+
+    /**
+     * Applies a box blur of the given radius in both directions.
+     */
+    private static byte[] blur(byte[] luma, int radius) {
+        byte[] horizontal = new byte[luma.length];
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                int sum = 0;
+                int count = 0;
+                for (int i = Math.max(0, x - radius); i <= Math.min(WIDTH - 1, x + radius); ++i) {
+                    sum += luma[y * WIDTH + i] & 0xff;
+                    count++;
+                }
+                horizontal[y * WIDTH + x] = (byte) (sum / count);
+            }
+        }
+
+        byte[] blurred = new byte[luma.length];
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                int sum = 0;
+                int count = 0;
+                for (int i = Math.max(0, y - radius); i <= Math.min(HEIGHT - 1, y + radius); ++i) {
+                    sum += horizontal[i * WIDTH + x] & 0xff;
+                    count++;
+                }
+                blurred[y * WIDTH + x] = (byte) (sum / count);
+            }
+        }
+        return blurred;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotSetTest {
+    private static final int WRITERS = 2;
+    private static final int ITEMS_PER_WRITER = 2000;
+
+    @Test
+    public void addsEachItemOnce() {
+        SnapshotSet<String> set = new SnapshotSet<>();
+        assertTrue(set.add("a"));
+        assertTrue(set.add("b"));
+        List<String> snapshot = set.get();
+
+        assertFalse(set.add("a"));
+        assertSame(snapshot, set.get());
+        assertEquals(Arrays.asList("a", "b"), set.get());
+    }
+
+    @Test
+    public void removesOnlyMembers() {
+        SnapshotSet<String> set = new SnapshotSet<>();
+        set.add("a");
+        List<String> snapshot = set.get();
+
+        assertFalse(set.remove("b"));
+        assertSame(snapshot, set.get());
+        assertTrue(set.remove("a"));
+        assertTrue(set.get().isEmpty());
+        assertFalse(set.clear());
+    }
+
+    @Test
+    public void snapshotsDontChange() {
+        SnapshotSet<String> set = new SnapshotSet<>();
+        set.add("a");
+        List<String> snapshot = set.get();
+        set.add("b");
+        set.remove("a");
+        assertTrue(set.clear());
+
+        assertEquals(Arrays.asList("a"), snapshot);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshotsCantBeModified() {
+        SnapshotSet<String> set = new SnapshotSet<>();
+        set.add("a");
+        set.get().add("b");
+    }
+
+    /**
+     * Two writers, like detector threads, each add their own items in order and then remove them
+     * in the same order, while a reader, like the UI thread, keeps going through snapshots.
+     * Every snapshot must be a set that existed at some point: of each writer's items, it holds
+     * a run of consecutive ones, and those runs only ever move forward.
+     */
+    @Test
+    public void snapshotsAreNeverTornOrOutOfOrder() throws Exception {
+        final SnapshotSet<Integer> set = new SnapshotSet<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch writersDone = new CountDownLatch(WRITERS);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread[] threads = new Thread[WRITERS + 1];
+        for (int t = 0; t < WRITERS; ++t) {
+            final int first = t * ITEMS_PER_WRITER;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    awaitStart(start);
+                    for (int i = 0; i < ITEMS_PER_WRITER; ++i) {
+                        set.add(first + i);
+                    }
+                    for (int i = 0; i < ITEMS_PER_WRITER; ++i) {
+                        set.remove(first + i);
+                    }
+                    writersDone.countDown();
+                }
+            }, "Writer" + t);
+        }
+        threads[WRITERS] = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                awaitStart(start);
+                // For each writer, the run of its items seen last, as [from, to).
+                int[] from = new int[WRITERS];
+                int[] to = new int[WRITERS];
+                do {
+                    List<Integer> snapshot = set.get();
+                    String error = checkSnapshot(snapshot, from, to);
+                    if (error != null) {
+                        failure.compareAndSet(null, new AssertionError(error + ": " + snapshot));
+                        return;
+                    }
+                } while (writersDone.getCount() > 0);
+            }
+        }, "Reader");
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        assertTrue(set.get().isEmpty());
+    }
+
+    /**
+     * Checks a snapshot against the runs of items seen in the previous one, and updates them.
+     *
+     * @return what is wrong with the snapshot, or null if nothing is
+     */
+    private static String checkSnapshot(List<Integer> snapshot, int[] from, int[] to) {
+        int[] lowest = new int[WRITERS];
+        int[] highest = new int[WRITERS];
+        int[] count = new int[WRITERS];
+        Arrays.fill(lowest, Integer.MAX_VALUE);
+        Arrays.fill(highest, -1);
+        HashSet<Integer> seen = new HashSet<>();
+        for (Integer item : snapshot) {
+            if (!seen.add(item)) {
+                return "Duplicate " + item;
+            }
+            int writer = item / ITEMS_PER_WRITER;
+            int index = item % ITEMS_PER_WRITER;
+            lowest[writer] = Math.min(lowest[writer], index);
+            highest[writer] = Math.max(highest[writer], index);
+            count[writer]++;
+        }
+
+        for (int w = 0; w < WRITERS; ++w) {
+            if (count[w] == 0) {
+                // Either nothing was added yet, or everything was removed already.
+                continue;
+            }
+            if (highest[w] - lowest[w] + 1 != count[w]) {
+                return "Writer " + w + " has a gap";
+            }
+            if (lowest[w] < from[w] || highest[w] + 1 < to[w]) {
+                return "Writer " + w + " went back";
+            }
+            from[w] = lowest[w];
+            to[w] = highest[w] + 1;
+        }
+        return null;
+    }
+
+    private static void awaitStart(CountDownLatch start) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.oned.Code128Writer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Random;
+
+/**
+ * Decoding a card barcode with the ZXing fallback decoder, in the scan window of a frame at the
+ * capture activity's preview size, as the fallback detector does while the play services
+ * detector isn't operational.  Looking for the two card formats is measured next to looking for every format ZXing knows, and
+ * a frame held in portrait next to an upright one, which has to be turned before decoding.
+ */
+@State(Scope.Thread)
+public class ZxingDecoderBenchmark {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 512;
+    private static final String CARD = "QC0012345";
+
+    private ZxingDecoder mCodeDecoder;
+    private ZxingDecoder mAllFormatsDecoder;
+    private byte[] mUpright;
+    private byte[] mPortrait;
+
+    @Setup
+    public void setUp() throws WriterException {
+        mCodeDecoder = new ZxingDecoder(
+                Arrays.asList(BarcodeFormat.CODE_128, BarcodeFormat.CODE_39));
+        mAllFormatsDecoder = new ZxingDecoder(EnumSet.allOf(BarcodeFormat.class));
+
+        // A Code 128 card on a gray background with a bit of sensor noise.
+        BitMatrix bars = new Code128Writer().encode(CARD, BarcodeFormat.CODE_128, 800, 200);
+        int left = (WIDTH - bars.getWidth()) / 2;
+        int top = (HEIGHT - bars.getHeight()) / 2;
+        Random random = new Random(1);
+        mUpright = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                int bx = x - left;
+                int by = y - top;
+                boolean bar = bx >= 0 && by >= 0 && bx < bars.getWidth() && by < bars.getHeight()
+                        && bars.get(bx, by);
+                mUpright[y * WIDTH + x] = (byte) ((bar ? 40 : 200) + random.nextInt(21) - 10);
+            }
+        }
+
+        // The same card as a portrait frame needing a quarter turn clockwise: pixel (x, y) of
+        // the upright image is at (y, WIDTH - 1 - x), in rows of HEIGHT pixels.
+        mPortrait = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                mPortrait[(WIDTH - 1 - x) * HEIGHT + y] = mUpright[y * WIDTH + x];
+            }
+        }
+
+        if (decodeUpright() == null || decodePortrait() == null
+                || decodeUprightAllFormats() == null) {
+            throw new IllegalStateException("The benchmark card doesn't decode.");
+        }
+    }
+
+    @Benchmark
+    public Result decodeUpright() {
+        return mCodeDecoder.decode(mUpright, WIDTH, HEIGHT, 0);
+    }
+
+    @Benchmark
+    public Result decodePortrait() {
+        return mCodeDecoder.decode(mPortrait, HEIGHT, WIDTH, 1);
+    }
+
+    @Benchmark
+    public Result decodeUprightAllFormats() {
+        return mAllFormatsDecoder.decode(mUpright, WIDTH, HEIGHT, 0);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+/**
+ * A frame handoff between the camera callback and the processing thread of {@link CameraSource},
+ * as the handoff benchmarks drive it: either {@link FrameHandoff}, or the monitor based handoff
+ * it replaced.
+ */
+abstract class Handoff<T> {
+    /**
+     * Creates an active handoff.
+     *
+     * @param kind "atomic" for {@link FrameHandoff}, or "monitor" for the previous implementation
+     */
+    static <T> Handoff<T> create(String kind) {
+        if (kind.equals("atomic")) {
+            return new Atomic<>();
+        } else if (kind.equals("monitor")) {
+            return new Monitor<>();
+        }
+        throw new IllegalArgumentException("Unknown handoff: " + kind);
+    }
+
+    abstract T offer(T item);
+
+    abstract T take();
+
+    abstract T poll();
+
+    abstract void setActive(boolean active);
+
+    /**
+     * The previous implementation, as it was in {@link CameraSource}'s frame processing runnable.
+     */
+    private static class Monitor<T> extends Handoff<T> {
+        private final Object mLock = new Object();
+        private boolean mActive = true;
+        private T mPending;
+
+        @Override
+        T offer(T item) {
+            synchronized (mLock) {
+                T displaced = mPending;
+                mPending = item;
+                mLock.notifyAll();
+                return displaced;
+            }
+        }
+
+        @Override
+        T take() {
+            synchronized (mLock) {
+                while (mActive && (mPending == null)) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        return null;
+                    }
+                }
+
+                if (!mActive) {
+                    return null;
+                }
+                T item = mPending;
+                mPending = null;
+                return item;
+            }
+        }
+
+        @Override
+        T poll() {
+            synchronized (mLock) {
+                T item = mPending;
+                mPending = null;
+                return item;
+            }
+        }
+
+        @Override
+        void setActive(boolean active) {
+            synchronized (mLock) {
+                mActive = active;
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    private static class Atomic<T> extends Handoff<T> {
+        private final FrameHandoff<T> mHandoff = new FrameHandoff<>();
+
+        Atomic() {
+            mHandoff.setActive(true);
+        }
+
+        @Override
+        T offer(T item) {
+            return mHandoff.offer(item);
+        }
+
+        @Override
+        T take() {
+            return mHandoff.take();
+        }
+
+        @Override
+        T poll() {
+            return mHandoff.poll();
+        }
+
+        @Override
+        void setActive(boolean active) {
+            mHandoff.setActive(active);
+        }
+    }
+}
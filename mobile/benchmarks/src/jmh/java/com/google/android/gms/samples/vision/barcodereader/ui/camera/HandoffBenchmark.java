@@ -0,0 +1,60 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The frame handoff between the camera callback and the processing thread of
+ * {@link CameraSource}, comparing {@link FrameHandoff} against the monitor based handoff it
+ * replaced.  The uncontended case is one offer and take, as when detection keeps up with the
+ * camera; the contended case has the camera thread offering while the processing thread takes
+ * whatever is pending.
+ * <p/>
+ * The processing thread takes with poll here, since a blocking take could keep the benchmark from
+ * ending its iterations, so neither case ever parks.  {@link HandoffLatencyBenchmark} measures
+ * the wake-up of a parked processing thread, and the frames dropped.
+ */
+@State(Scope.Group)
+public class HandoffBenchmark {
+    @Param({"atomic", "monitor"})
+    public String handoff;
+
+    private Handoff<Object> mHandoff;
+    private final Object mFrame = new Object();
+
+    @Setup
+    public void setUp() {
+        mHandoff = Handoff.create(handoff);
+    }
+
+    @Benchmark
+    @Group("uncontended")
+    public Object offerAndTake() {
+        mHandoff.offer(mFrame);
+        return mHandoff.take();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public Object offer() {
+        return mHandoff.offer(mFrame);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public Object poll() {
+        return mHandoff.poll();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handoff latency and dropped frames of {@link FrameHandoff} against the monitor based handoff it
+ * replaced, with a processing thread that blocks in take, as {@link CameraSource}'s does.
+ * <p/>
+ * wakeUp samples the time from offering a frame until the processing thread, parked in take
+ * beforehand, has it.  cameraFrames offers frames at a steady pace to a processing thread that
+ * takes longer than that to detect each one, and counts the frames displaced from the slot before
+ * they were taken, which the camera gets back unread.
+ */
+public class HandoffLatencyBenchmark {
+    // Work between two camera frames, and work to detect one, in Blackhole.consumeCPU tokens.
+    private static final long FRAME_INTERVAL_TOKENS = 2000;
+    private static final long DETECT_TOKENS = 5000;
+
+    /**
+     * A processing thread that takes frames until the handoff is no longer active, working on
+     * each for the given number of tokens.
+     */
+    private abstract static class ProcessingThread {
+        Handoff<Object> mHandoff;
+        Thread mThread;
+
+        void start(String kind, final long detectTokens) {
+            mHandoff = Handoff.create(kind);
+            mThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Object frame;
+                    while ((frame = mHandoff.take()) != null) {
+                        Blackhole.consumeCPU(detectTokens);
+                        onTaken(frame);
+                    }
+                }
+            }, "Processing");
+            mThread.start();
+        }
+
+        abstract void onTaken(Object frame);
+
+        void stop() throws InterruptedException {
+            mHandoff.setActive(false);
+            mThread.join();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Parked extends ProcessingThread {
+        @Param({"atomic", "monitor"})
+        public String handoff;
+
+        final Object[] mFrames = {new Object(), new Object()};
+        int mNext;
+        volatile Object mTaken;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            start(handoff, 0);
+        }
+
+        /**
+         * Waits for the processing thread to be parked or waiting, outside of the measurement.
+         */
+        @Setup(Level.Invocation)
+        public void awaitParked() {
+            while (mThread.getState() != Thread.State.WAITING) {
+                Thread.yield();
+            }
+        }
+
+        @Override
+        void onTaken(Object frame) {
+            mTaken = frame;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            stop();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Detecting extends ProcessingThread {
+        @Param({"atomic", "monitor"})
+        public String handoff;
+
+        final Object mFrame = new Object();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            start(handoff, DETECT_TOKENS);
+        }
+
+        @Override
+        void onTaken(Object frame) {
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            stop();
+        }
+    }
+
+    /**
+     * The frames offered and displaced in each iteration, reported next to the throughput.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class FrameCounts {
+        public long offered;
+        public long displaced;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            offered = 0;
+            displaced = 0;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object wakeUp(Parked state) {
+        Object frame = state.mFrames[state.mNext ^= 1];
+        state.mTaken = null;
+        state.mHandoff.offer(frame);
+        Object taken;
+        while ((taken = state.mTaken) == null) {
+            // Spin, so that the time measured is the processing thread's wake-up.
+        }
+        return taken;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void cameraFrames(Detecting state, FrameCounts counts) {
+        counts.offered++;
+        if (state.mHandoff.offer(state.mFrame) != null) {
+            counts.displaced++;
+        }
+        Blackhole.consumeCPU(FRAME_INTERVAL_TOKENS);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Cropping a preview frame to the scan window and downsampling it, as the processing thread of
+ * {@link CameraSource} does to each frame before detection.  Both work in place, so the frame is
+ * reused from one operation to the next; the amount of work doesn't depend on its content.
+ */
+@State(Scope.Thread)
+public class Nv21Benchmark {
+    @Param({"1600x1024", "1024x768"})
+    public String previewSize;
+
+    // The card scan window, as a fraction of the upright frame: wide and short in portrait, so
+    // narrow and tall in camera image coordinates.
+    private static final float WINDOW_WIDTH = 0.35f;
+    private static final float WINDOW_HEIGHT = 0.8f;
+
+    private int mWidth;
+    private int mHeight;
+    private int mCropLeft;
+    private int mCropTop;
+    private int mCropWidth;
+    private int mCropHeight;
+    private byte[] mFrame;
+
+    @Setup
+    public void setUp() {
+        String[] size = previewSize.split("x");
+        mWidth = Integer.parseInt(size[0]);
+        mHeight = Integer.parseInt(size[1]);
+
+        int marginX = ((int) (mWidth * (1 - WINDOW_WIDTH) / 2)) & ~1;
+        int marginY = ((int) (mHeight * (1 - WINDOW_HEIGHT) / 2)) & ~1;
+        mCropLeft = marginX;
+        mCropTop = marginY;
+        mCropWidth = mWidth - 2 * marginX;
+        mCropHeight = mHeight - 2 * marginY;
+
+        mFrame = new byte[mWidth * mHeight * 3 / 2];
+        new Random(1).nextBytes(mFrame);
+    }
+
+    @Benchmark
+    public byte[] crop() {
+        Nv21.crop(mFrame, mWidth, mHeight, mCropLeft, mCropTop, mCropWidth, mCropHeight);
+        return mFrame;
+    }
+
+    @Benchmark
+    public byte[] downsampleByTwo() {
+        Nv21.downsampleLuma(mFrame, mWidth, mHeight, 2);
+        return mFrame;
+    }
+
+    @Benchmark
+    public byte[] downsampleByFour() {
+        Nv21.downsampleLuma(mFrame, mWidth, mHeight, 4);
+        return mFrame;
+    }
+
+    @Benchmark
+    public byte[] cropAndDownsampleByFour() {
+        Nv21.crop(mFrame, mWidth, mHeight, mCropLeft, mCropTop, mCropWidth, mCropHeight);
+        Nv21.downsampleLuma(mFrame, mCropWidth, mCropHeight, 4);
+        return mFrame;
+    }
+}
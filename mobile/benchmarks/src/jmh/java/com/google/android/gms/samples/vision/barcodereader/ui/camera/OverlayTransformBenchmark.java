@@ -0,0 +1,54 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Mapping a box from preview to view coordinates through
+ * {@link GraphicOverlay.Graphic#translateX(float)} and
+ * {@link GraphicOverlay.Graphic#translateY(float)}, as the overlay does for its scan window on every
+ * draw.  Barcode graphics map their boxes through the overlay's matrix instead, which is only
+ * rebuilt when {@link OverlayTransform#update} reports a change.
+ */
+@State(Scope.Thread)
+public class OverlayTransformBenchmark {
+    @Param({"false", "true"})
+    public boolean mirrored;
+
+    private final OverlayTransform mTransform = new OverlayTransform();
+    private final float[] mBox = new float[4];
+    private float mLeft = 412;
+    private float mTop = 230;
+    private float mRight = 880;
+    private float mBottom = 356;
+
+    @Setup
+    public void setUp() {
+        // A 1024x1600 upright preview on a 1080x1920 screen.
+        mTransform.update(1024, 1600, 1080, 1920, mirrored);
+    }
+
+    @Benchmark
+    public float[] translateBox() {
+        mBox[0] = mTransform.translateX(mLeft);
+        mBox[1] = mTransform.translateY(mTop);
+        mBox[2] = mTransform.translateX(mRight);
+        mBox[3] = mTransform.translateY(mBottom);
+        return mBox;
+    }
+
+    @Benchmark
+    public OverlayTransform updateAndTranslateBox() {
+        mTransform.update(1024, 1600, 1080, 1920, mirrored);
+        translateBox();
+        return mTransform;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import com.google.android.gms.samples.vision.barcodereader.ui.camera.PreviewBufferPool.PreviewBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Looking up the preview buffer that the camera hands back a byte array in, with
+ * {@link PreviewBufferPool#find(byte[])} against the byte array to buffer hash map it replaced, and
+ * the full round trip of a buffer through the pool's ownership states for each frame.
+ */
+@State(Scope.Thread)
+public class PreviewBufferLookupBenchmark {
+    // A 1600x1024 NV21 frame, as in the card scan profile.
+    private static final int IMAGE_SIZE = 1600 * 1024 * 3 / 2;
+
+    @Param({"4", "8"})
+    public int bufferCount;
+
+    private final PreviewBufferPool mPool = new PreviewBufferPool();
+    private final Map<byte[], PreviewBuffer> mMap = new HashMap<>();
+    private byte[][] mArrays;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mPool.allocate(bufferCount, IMAGE_SIZE);
+        mArrays = new byte[bufferCount][];
+        for (int i = 0; i < bufferCount; ++i) {
+            PreviewBuffer buffer = mPool.get(i);
+            mArrays[i] = buffer.mBytes;
+            mMap.put(buffer.mBytes, buffer);
+        }
+    }
+
+    private byte[] nextArray() {
+        byte[] array = mArrays[mNext];
+        mNext = (mNext + 1) % mArrays.length;
+        return array;
+    }
+
+    @Benchmark
+    public PreviewBuffer findInPool() {
+        return mPool.find(nextArray());
+    }
+
+    @Benchmark
+    public PreviewBuffer findInHashMap() {
+        return mMap.get(nextArray());
+    }
+
+    @Benchmark
+    public boolean roundTrip() {
+        PreviewBuffer buffer = mPool.find(nextArray());
+        return mPool.moveToPending(buffer)
+                && mPool.moveToDetector(buffer)
+                && mPool.returnToCamera(buffer);
+    }
+}
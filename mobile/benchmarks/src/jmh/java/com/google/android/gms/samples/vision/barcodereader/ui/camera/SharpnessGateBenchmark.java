@@ -0,0 +1,67 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package com.google.android.gms.samples.vision.barcodereader.ui.camera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Scoring the sharpness of a frame the size of the scan window at the capture activity's preview
+ * size, as the processing thread of {@link CameraSource} does before detection, next to a single
+ * read of every pixel for scale.  That read is a lower bound for any detector; the barcode
+ * detector itself takes tens of milliseconds per frame at this size on the devices we use, so the
+ * gate must stay well under a millisecond.
+ */
+@State(Scope.Thread)
+public class SharpnessGateBenchmark {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 512;
+
+    private byte[] mLuma;
+
+    @Setup
+    public void setUp() {
+        // Random dark and light bars, like a 1D barcode, on a mid-gray background with a little
+        // noise.  The cost doesn't depend on the content, but this keeps the scores realistic.
+        Random random = new Random(1);
+        int[] column = new int[WIDTH];
+        boolean dark = true;
+        for (int x = WIDTH / 8; x < WIDTH * 7 / 8; ) {
+            int bar = 2 + random.nextInt(8);
+            for (int i = 0; i < bar && x < WIDTH; ++i, ++x) {
+                column[x] = dark ? 30 : 220;
+            }
+            dark = !dark;
+        }
+
+        mLuma = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; ++y) {
+            boolean inCode = (y > HEIGHT / 4) && (y < HEIGHT * 3 / 4);
+            for (int x = 0; x < WIDTH; ++x) {
+                int value = (inCode && column[x] != 0) ? column[x] : 128;
+                mLuma[y * WIDTH + x] = (byte) (value + random.nextInt(5) - 2);
+            }
+        }
+    }
+
+    @Benchmark
+    public double measure() {
+        return SharpnessGate.measure(mLuma, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    public long readEveryPixel() {
+        long sum = 0;
+        for (int i = 0; i < WIDTH * HEIGHT; ++i) {
+            sum += mLuma[i] & 0xff;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package org.qccoders.qcvoc.features;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * The pixel work of {@code PhotoHandler.transformPhoto}, on ARGB pixel arrays in place of
+ * bitmaps, since bitmaps need Android.  The photo is cropped to a centered square, scaled down to
+ * 300x300 by nearest neighbor (as createScaledBitmap does without filtering) and rotated a quarter
+ * turn clockwise.
+ * <p/>
+ * Each step makes a new pixel array, as each of transformPhoto's Bitmap.createBitmap and
+ * createScaledBitmap calls makes a new bitmap.
+ */
+@State(Scope.Thread)
+public class PhotoTransformBenchmark {
+    private static final int OUTPUT_SIZE = 300;
+
+    @Param({"4032x3024", "1920x1080"})
+    public String photoSize;
+
+    private int mWidth;
+    private int mHeight;
+    private int[] mPhoto;
+
+    @Setup
+    public void setUp() {
+        String[] size = photoSize.split("x");
+        mWidth = Integer.parseInt(size[0]);
+        mHeight = Integer.parseInt(size[1]);
+
+        mPhoto = new int[mWidth * mHeight];
+        Random random = new Random(1);
+        for (int i = 0; i < mPhoto.length; ++i) {
+            mPhoto[i] = random.nextInt();
+        }
+    }
+
+    @Benchmark
+    public int[] transformPhoto() {
+        int side = Math.min(mWidth, mHeight);
+        int left = mWidth / 2 - side / 2;
+        int top = mHeight / 2 - side / 2;
+
+        // Crop to square.
+        int[] square = new int[side * side];
+        for (int y = 0; y < side; ++y) {
+            System.arraycopy(mPhoto, (top + y) * mWidth + left, square, y * side, side);
+        }
+
+        // Scale down.
+        int[] scaled = new int[OUTPUT_SIZE * OUTPUT_SIZE];
+        for (int y = 0; y < OUTPUT_SIZE; ++y) {
+            int srcRow = sample(y, side) * side;
+            for (int x = 0; x < OUTPUT_SIZE; ++x) {
+                scaled[y * OUTPUT_SIZE + x] = square[srcRow + sample(x, side)];
+            }
+        }
+
+        // Rotate a quarter turn clockwise: (x, y) ends up at (size - 1 - y, x).
+        int[] rotated = new int[OUTPUT_SIZE * OUTPUT_SIZE];
+        for (int y = 0; y < OUTPUT_SIZE; ++y) {
+            for (int x = 0; x < OUTPUT_SIZE; ++x) {
+                rotated[x * OUTPUT_SIZE + (OUTPUT_SIZE - 1 - y)] = scaled[y * OUTPUT_SIZE + x];
+            }
+        }
+        return rotated;
+    }
+
+    /**
+     * Returns the source coordinate that a nearest neighbor scale of a square of the given side
+     * down to the output size samples for an output coordinate.
+     */
+    private static int sample(int coordinate, int side) {
+        return (int) (((long) coordinate * side + side / 2) / OUTPUT_SIZE);
+    }
+}
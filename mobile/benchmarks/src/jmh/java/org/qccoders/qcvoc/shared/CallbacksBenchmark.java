@@ -0,0 +1,68 @@
+/*
+    Copyright (c) QC Coders. All rights reserved. Licensed under the GPLv3 license. See LICENSE file
+    in the project root for full license information.
+*/
+
+package org.qccoders.qcvoc.shared;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Building the javascript that hands a barcode or a photo back to the web app, as
+ * {@code BarcodeHandler.returnBarcode} and {@code PhotoHandler.returnPhoto} do, against the plain
+ * string concatenation they used before.  The photo is a 300x300 JPEG, which is about 30KB, or
+ * 40KB in base64.
+ * <p/>
+ * Note that string concatenation compiles differently on the JVM since Java 9 than it does for
+ * Android, so the concatenation numbers are only indicative of what the app did.
+ */
+@State(Scope.Thread)
+public class CallbacksBenchmark {
+    private static final String BASE64_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    private static final int PHOTO_BASE64_LENGTH = 40 * 1024;
+
+    private String mCallback;
+    private String mBarcode;
+    private String mBase64;
+
+    @Setup
+    public void setUp() {
+        // Not constants, so that the compiler can't fold the concatenations.
+        mCallback = new String("window.inputBarcodeScanner");
+        mBarcode = new String("QC0012345");
+
+        Random random = new Random(1);
+        char[] base64 = new char[PHOTO_BASE64_LENGTH];
+        for (int i = 0; i < base64.length; ++i) {
+            base64[i] = BASE64_ALPHABET.charAt(random.nextInt(BASE64_ALPHABET.length()));
+        }
+        mBase64 = new String(base64);
+    }
+
+    @Benchmark
+    public String barcode() {
+        return Callbacks.call(mCallback, mBarcode);
+    }
+
+    @Benchmark
+    public String barcodeConcatenated() {
+        return mCallback + "('" + mBarcode + "')";
+    }
+
+    @Benchmark
+    public String photo() {
+        return Callbacks.callWithDataUri(mCallback, "image/jpeg", mBase64);
+    }
+
+    @Benchmark
+    public String photoConcatenated() {
+        String photo = "data:image/jpeg;base64," + mBase64;
+        return mCallback + "('" + photo + "')";
+    }
+}
@@ -11,9 +11,9 @@ export const isAndroidAttached = () => {
     return navigator.userAgent.includes('Android');
 };
 
-export const initiateMobileScan = (callback) => {
+export const initiateMobileScan = (callback, profile, continuous) => {
     if (isAndroidAttached()) {
-        initiateAndroidScan(callback);
+        initiateAndroidScan(callback, profile, continuous);
     }
 };
 
@@ -23,8 +23,11 @@ export const initiateMobilePhotoAcquisition = (callback) => {
     }
 };
 
-export const initiateAndroidScan = (callback) => {
-    redirectToQuery('?scan&callback=' + callback);
+export const initiateAndroidScan = (callback, profile, continuous) => {
+    let query = '?scan&callback=' + callback;
+    if (profile) query += '&profile=' + profile;
+    if (continuous) query += '&continuous=true';
+    redirectToQuery(query);
 };
 
 export const initiateAndroidPhotoAcquisition = (callback) => {
@@ -199,7 +199,7 @@ class Scanner extends Component {
 
     scan = () => {
         if (isMobileAttached()) {
-            initiateMobileScan("window.inputBarcodeScanner");
+            initiateMobileScan("window.inputBarcodeScanner", "card", true);
         }
         else {
             this.setState({ scanDialog: { open: true }});
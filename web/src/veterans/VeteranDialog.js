@@ -112,7 +112,7 @@ class VeteranDialog extends Component {
 
     handleScanClick = () => {
         if (isMobileAttached()) {
-            initiateMobileScan("window.inputBarcodeVeteranDialog");
+            initiateMobileScan("window.inputBarcodeVeteranDialog", "card");
         }
     }
 